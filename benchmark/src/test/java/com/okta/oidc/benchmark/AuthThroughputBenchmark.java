@@ -0,0 +1,322 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.okta.oidc.OIDCConfig;
+import com.okta.oidc.Okta;
+import com.okta.oidc.RequestCallback;
+import com.okta.oidc.ResultCallback;
+import com.okta.oidc.Tokens;
+import com.okta.oidc.clients.AuthClient;
+import com.okta.oidc.clients.SyncAuthClient;
+import com.okta.oidc.clients.sessions.SessionClient;
+import com.okta.oidc.clients.sessions.SyncSessionClient;
+import com.okta.oidc.net.HttpClientImpl;
+import com.okta.oidc.net.params.TokenTypeHint;
+import com.okta.oidc.net.response.IntrospectInfo;
+import com.okta.oidc.results.Result;
+import com.okta.oidc.util.AuthorizationException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * End-to-end throughput of the clients against {@link MockAuthorizationServer}. Every worker owns
+ * its clients, storage and http client, like separate apps would, and runs a full session per
+ * round: sign in, refresh, user info, introspect, revoke and sign out.
+ * Reports requests per second and latency histograms per operation.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class AuthThroughputBenchmark {
+    private static final String SESSION_TOKEN = "benchmark-session-token";
+    private static final long CALL_TIMEOUT_SECONDS = 30;
+
+    private MockAuthorizationServer mServer;
+    private OIDCConfig mConfig;
+    private Context mContext;
+    private int mConcurrency;
+    private int mRounds;
+    private final Map<String, LatencyHistogram> mHistograms = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue("Benchmarks are disabled, run with -Pbenchmark",
+                Boolean.getBoolean("okta.benchmark"));
+        mConcurrency = Integer.getInteger("okta.benchmark.concurrency", 4);
+        mRounds = Integer.getInteger("okta.benchmark.rounds", 50);
+        mContext = RuntimeEnvironment.getApplication();
+        mServer = new MockAuthorizationServer();
+        mServer.start();
+        mConfig = new OIDCConfig.Builder()
+                .clientId(BenchmarkValues.CLIENT_ID)
+                .redirectUri(BenchmarkValues.REDIRECT_URI)
+                .endSessionRedirectUri(BenchmarkValues.REDIRECT_URI)
+                .scopes("openid", "profile", "offline_access")
+                .discoveryUri(mServer.getIssuer())
+                .create();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mServer != null) {
+            mServer.shutdown();
+        }
+    }
+
+    @Test
+    public void syncClients() throws Exception {
+        report("sync", run(this::syncSession));
+    }
+
+    @Test
+    public void asyncClients() throws Exception {
+        report("async", run(this::asyncSession));
+    }
+
+    private long run(Worker worker) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(mConcurrency);
+        List<Future<?>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < mConcurrency; i++) {
+            futures.add(executor.submit(() -> {
+                worker.run();
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        executor.shutdown();
+        return elapsed;
+    }
+
+    private void syncSession() throws InterruptedException {
+        SyncAuthClient client = new Okta.SyncAuthBuilder()
+                .withConfig(mConfig)
+                .withContext(mContext)
+                .withStorage(new InMemoryStorage())
+                .withEncryptionManager(new SoftwareEncryptionManager())
+                .withOktaHttpClient(new HttpClientImpl())
+                .setRequireHardwareBackedKeyStore(false)
+                .create();
+        SyncSessionClient session = client.getSessionClient();
+        for (int i = 0; i < mRounds; i++) {
+            measure("signIn", () -> client.signIn(SESSION_TOKEN, null).isSuccess());
+            measure("refreshToken", () -> session.refreshToken() != null);
+            measure("userInfo", () -> session.getUserProfile() != null);
+            measure("introspect", () -> session.introspectToken(
+                    session.getTokens().getAccessToken(), TokenTypeHint.ACCESS_TOKEN).isActive());
+            measure("revoke", () -> session.revokeToken(session.getTokens().getRefreshToken()));
+            measure("signOut", () -> client.signOut() == SyncAuthClient.SUCCESS);
+        }
+    }
+
+    private void asyncSession() throws InterruptedException {
+        AuthClient client = new Okta.AuthBuilder()
+                .withConfig(mConfig)
+                .withContext(mContext)
+                .withStorage(new InMemoryStorage())
+                .withEncryptionManager(new SoftwareEncryptionManager())
+                .withOktaHttpClient(new HttpClientImpl())
+                .withCallbackExecutor(Runnable::run)
+                .setRequireHardwareBackedKeyStore(false)
+                .create();
+        SessionClient session = client.getSessionClient();
+        for (int i = 0; i < mRounds; i++) {
+            measure("signIn", () -> this.<Result>await(callback ->
+                    client.signIn(SESSION_TOKEN, null, callback)).isSuccess());
+            measure("refreshToken", () -> this.<Tokens>await(session::refreshToken) != null);
+            measure("userInfo", () -> await(session::getUserProfile) != null);
+            measure("introspect", () -> {
+                String accessToken = session.getTokens().getAccessToken();
+                return this.<IntrospectInfo>await(callback -> session.introspectToken(
+                        accessToken, TokenTypeHint.ACCESS_TOKEN, callback)).isActive();
+            });
+            measure("revoke", () -> {
+                String refreshToken = session.getTokens().getRefreshToken();
+                return this.<Boolean>await(callback ->
+                        session.revokeToken(refreshToken, callback));
+            });
+            measure("signOut", () -> {
+                SignOutCallback callback = new SignOutCallback();
+                client.signOut(callback);
+                return callback.await() == AuthClient.SUCCESS;
+            });
+        }
+    }
+
+    private void measure(String operation, Operation call) throws InterruptedException {
+        LatencyHistogram histogram;
+        synchronized (mHistograms) {
+            histogram = mHistograms.get(operation);
+            if (histogram == null) {
+                histogram = new LatencyHistogram(operation);
+                mHistograms.put(operation, histogram);
+            }
+        }
+        long start = System.nanoTime();
+        boolean success;
+        try {
+            success = call.run();
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            success = false;
+        }
+        if (success) {
+            histogram.record(System.nanoTime() - start);
+        } else {
+            histogram.recordError();
+        }
+    }
+
+    private <T> T await(AsyncOperation<T> operation) throws Exception {
+        AwaitCallback<T> callback = new AwaitCallback<>();
+        operation.run(callback);
+        return callback.await();
+    }
+
+    private void report(String name, long elapsedNanos) throws IOException {
+        StringBuilder report = new StringBuilder();
+        int total = 0;
+        int errors = 0;
+        report.append(String.format("%s clients, concurrency %d, %d rounds, %d server requests%n",
+                name, mConcurrency, mRounds, mServer.getRequestCount()));
+        for (LatencyHistogram histogram : mHistograms.values()) {
+            report.append(histogram.report(elapsedNanos));
+            total += histogram.getCount();
+            errors += histogram.getErrors();
+        }
+        report.append(String.format("total: %d operations in %d ms, %.1f ops/s%n", total,
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                total / (elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1))));
+        System.out.print(report);
+
+        File file = new File(System.getProperty("okta.benchmark.throughput",
+                "build/reports/throughput"), name + ".txt");
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create " + parent);
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                StandardCharsets.UTF_8)) {
+            writer.write(report.toString());
+        }
+        assertEquals("Operations failed, see " + file, 0, errors);
+    }
+
+    private interface Worker {
+        void run() throws Exception;
+    }
+
+    private interface Operation {
+        boolean run() throws Exception;
+    }
+
+    private interface AsyncOperation<T> {
+        void run(RequestCallback<T, AuthorizationException> callback);
+    }
+
+    private static final class AwaitCallback<T>
+            implements RequestCallback<T, AuthorizationException> {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private T mResult;
+        private AuthorizationException mException;
+
+        @Override
+        public void onSuccess(@NonNull T result) {
+            mResult = result;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(String error, AuthorizationException exception) {
+            mException = exception != null ? exception
+                    : new AuthorizationException(error, null);
+            mLatch.countDown();
+        }
+
+        T await() throws Exception {
+            if (!mLatch.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for callback");
+            }
+            if (mException != null) {
+                throw mException;
+            }
+            return mResult;
+        }
+    }
+
+    private static final class SignOutCallback
+            implements ResultCallback<Integer, AuthorizationException> {
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private int mStatus = AuthClient.FAILED_ALL;
+
+        @Override
+        public void onSuccess(@NonNull Integer result) {
+            mStatus = result;
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onCancel() {
+            mLatch.countDown();
+        }
+
+        @Override
+        public void onError(@Nullable String msg, @Nullable AuthorizationException exception) {
+            mLatch.countDown();
+        }
+
+        int await() throws InterruptedException {
+            if (!mLatch.await(CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Timed out waiting for sign out");
+            }
+            return mStatus;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares two JMH json reports. A benchmark regresses when its score is worse than the baseline
+ * by more than the allowed threshold. "Worse" depends on the mode: higher time per operation for
+ * average/sample time, lower operations per time unit for throughput.
+ */
+final class BenchmarkBaseline {
+    private static final String THROUGHPUT = "thrpt";
+    private static final double PERCENT = 100.0;
+
+    private final Map<String, Score> mScores;
+
+    private BenchmarkBaseline(Map<String, Score> scores) {
+        mScores = scores;
+    }
+
+    static BenchmarkBaseline load(File report) throws IOException {
+        Map<String, Score> scores = new HashMap<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(report),
+                StandardCharsets.UTF_8)) {
+            JsonArray results = JsonParser.parseReader(reader).getAsJsonArray();
+            for (JsonElement element : results) {
+                JsonObject result = element.getAsJsonObject();
+                JsonObject metric = result.getAsJsonObject("primaryMetric");
+                scores.put(getName(result), new Score(result.get("mode").getAsString(),
+                        metric.get("score").getAsDouble(),
+                        metric.get("scoreUnit").getAsString()));
+            }
+        }
+        return new BenchmarkBaseline(scores);
+    }
+
+    /**
+     * Returns a description of every benchmark in {@code current} which regressed against this
+     * baseline by more than {@code thresholdPercent}.
+     */
+    List<String> findRegressions(BenchmarkBaseline current, double thresholdPercent) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Score> entry : current.mScores.entrySet()) {
+            Score baseline = mScores.get(entry.getKey());
+            Score score = entry.getValue();
+            if (baseline == null || !baseline.mUnit.equals(score.mUnit)
+                    || baseline.mScore == 0) {
+                continue;
+            }
+            double change = (score.mScore - baseline.mScore) / baseline.mScore * PERCENT;
+            double regression = THROUGHPUT.equals(score.mMode) ? -change : change;
+            if (regression > thresholdPercent) {
+                regressions.add(String.format(Locale.US, "%s: %.3f -> %.3f %s (%.1f%% worse)",
+                        entry.getKey(), baseline.mScore, score.mScore, score.mUnit, regression));
+            }
+        }
+        return regressions;
+    }
+
+    private static String getName(JsonObject result) {
+        StringBuilder name = new StringBuilder(result.get("benchmark").getAsString());
+        JsonObject params = result.getAsJsonObject("params");
+        if (params != null) {
+            for (Map.Entry<String, JsonElement> param : params.entrySet()) {
+                name.append(':').append(param.getKey()).append('=')
+                        .append(param.getValue().getAsString());
+            }
+        }
+        return name.toString();
+    }
+
+    private static final class Score {
+        private final String mMode;
+        private final double mScore;
+        private final String mUnit;
+
+        Score(String mode, double score, String unit) {
+            mMode = mode;
+            mScore = score;
+            mUnit = unit;
+        }
+    }
+}
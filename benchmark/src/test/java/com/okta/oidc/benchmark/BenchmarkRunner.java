@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.format.OutputFormat;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.openjdk.jmh.runner.options.VerboseMode;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the JMH suites of this module. The benchmarks run in the test JVM (no forks) so the
+ * Robolectric sandbox provides the Android framework classes the library depends on; a forked
+ * JVM would not have it. Results are written as JMH json, which can be fed back as a baseline
+ * to catch regressions. Without forks the scores vary between runs, so regressions are only
+ * reported in the JMH output unless {@code okta.benchmark.failOnRegression} is set.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class BenchmarkRunner {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+    private static final int ITERATION_SECONDS = 1;
+
+    @Test
+    public void runBenchmarks() throws Exception {
+        assumeTrue("Benchmarks are disabled, run with -Pbenchmark",
+                Boolean.getBoolean("okta.benchmark"));
+        File results = new File(System.getProperty("okta.benchmark.results",
+                "build/reports/jmh/results.json"));
+        File parent = results.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IllegalStateException("Unable to create " + parent);
+        }
+
+        Options options = new OptionsBuilder()
+                .include(System.getProperty("okta.benchmark.include", ".*Benchmark.*"))
+                .forks(0)
+                .warmupIterations(WARMUP_ITERATIONS)
+                .warmupTime(TimeValue.seconds(ITERATION_SECONDS))
+                .measurementIterations(MEASUREMENT_ITERATIONS)
+                .measurementTime(TimeValue.seconds(ITERATION_SECONDS))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(results.getAbsolutePath())
+                .build();
+        OutputFormat output = OutputFormatFactory.createFormatInstance(System.out,
+                VerboseMode.NORMAL);
+        new Runner(options, output).run();
+
+        String baseline = System.getProperty("okta.benchmark.baseline", "");
+        if (!baseline.isEmpty()) {
+            double threshold = Double.parseDouble(
+                    System.getProperty("okta.benchmark.threshold", "10"));
+            List<String> regressions = BenchmarkBaseline.load(new File(baseline))
+                    .findRegressions(BenchmarkBaseline.load(results), threshold);
+            String message = "Performance regressions against " + baseline + ":\n"
+                    + String.join("\n", regressions);
+            if (Boolean.getBoolean("okta.benchmark.failOnRegression")) {
+                assertTrue(message, regressions.isEmpty());
+            } else if (!regressions.isEmpty()) {
+                output.println(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Fixtures shared by the benchmarks. Values are shaped like real Okta responses so the
+ * measured work is representative.
+ */
+public final class BenchmarkValues {
+    public static final String ISSUER = "https://example.okta.com/oauth2/default";
+    public static final String CLIENT_ID = "0oa1benchmarkclient";
+    public static final String REDIRECT_URI = "com.okta.example:/callback";
+    public static final String NONCE = "benchmark-nonce";
+    public static final String REFRESH_TOKEN = "a9VpZDRCeFh3Nkk2VdYa9VpZDRCeFh3Nkk2VdY";
+    public static final String CODE_VERIFIER =
+            "JpNRvIpoOQjFxJOiImctVRHs2hLFvHAoJyjahTYdRCtmQxZMVtoyv3ExjlNbYQtnWTDeOvQIn1i1rd3Ks9";
+
+    private BenchmarkValues() {
+        throw new IllegalStateException("This type is not intended to be instantiated");
+    }
+
+    public static String getJwt(String subject) {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .claim(Claims.AUDIENCE, Collections.singletonList(CLIENT_ID))
+                .claim("nonce", NONCE)
+                .claim("email", subject + "@example.com")
+                .claim("name", "Benchmark User")
+                .claim("preferred_username", subject + "@example.com")
+                .claim("amr", Collections.singletonList("pwd"))
+                .setIssuer(ISSUER)
+                .setSubject(subject)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.HOURS.toMillis(1)))
+                .signWith(keyPair.getPrivate(), SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+    public static String getTokenResponseJson(String accessToken, String idToken) {
+        return "{" +
+                "\"access_token\":\"" + accessToken + "\"," +
+                "\"token_type\":\"Bearer\"," +
+                "\"expires_in\":\"3600\"," +
+                "\"scope\":\"openid profile email offline_access\"," +
+                "\"refresh_token\":\"" + REFRESH_TOKEN + "\"," +
+                "\"id_token\":\"" + idToken + "\"" +
+                "}";
+    }
+
+    public static String getTokenResponseJson() {
+        return getTokenResponseJson(getJwt("access"), getJwt("00u1benchmark"));
+    }
+
+    public static Map<String, String> getTokenPostParameters() {
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("client_id", CLIENT_ID);
+        parameters.put("grant_type", "authorization_code");
+        parameters.put("redirect_uri", REDIRECT_URI);
+        parameters.put("code", "Vf5nAuN0ZyyUcpBf8pGx");
+        parameters.put("code_verifier", CODE_VERIFIER);
+        parameters.put("nonce", NONCE);
+        return parameters;
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import android.util.Base64;
+
+import com.okta.oidc.util.CodecUtil;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CodecUtil} with the framework encoders it replaced on the encryption paths.
+ * Run with the GC profiler, gc.alloc.rate.norm is the number of bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CodecBenchmark {
+    //A RSA 2048 block, the size of one encrypted chunk.
+    private static final int CHUNK_SIZE = 256;
+    private static final int HASH_SIZE = 32;
+
+    private byte[] mChunk;
+    private byte[] mHash;
+    private String mEncodedChunk;
+    private StringBuilder mBuilder;
+    private byte[] mBuffer;
+
+    @Setup
+    public void setUp() {
+        SecureRandom random = new SecureRandom();
+        mChunk = new byte[CHUNK_SIZE];
+        random.nextBytes(mChunk);
+        mHash = new byte[HASH_SIZE];
+        random.nextBytes(mHash);
+        mEncodedChunk = Base64.encodeToString(mChunk, Base64.NO_WRAP);
+        mBuilder = new StringBuilder(mEncodedChunk.length());
+        mBuffer = new byte[CHUNK_SIZE];
+    }
+
+    @Benchmark
+    public String frameworkEncode() {
+        return Base64.encodeToString(mChunk, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public int codecEncode() {
+        mBuilder.setLength(0);
+        CodecUtil.appendBase64(mChunk, 0, mChunk.length, mBuilder, 0);
+        return mBuilder.length();
+    }
+
+    @Benchmark
+    public byte[] frameworkDecode() {
+        return Base64.decode(mEncodedChunk, Base64.NO_WRAP);
+    }
+
+    @Benchmark
+    public int codecDecode() {
+        return CodecUtil.decodeBase64(mEncodedChunk, 0, mEncodedChunk.length(), mBuffer, 0);
+    }
+
+    @Benchmark
+    public String formatHex() {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : mHash) {
+            sb.append(String.format("%02X", b));
+        }
+        return sb.toString();
+    }
+
+    @Benchmark
+    public String codecHex() {
+        return CodecUtil.toHex(mHash);
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.okta.oidc.storage.OktaStorage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link OktaStorage} kept in memory so the repository benchmarks measure the library work
+ * (hashing, encryption, serialization) rather than disk I/O.
+ */
+public class InMemoryStorage implements OktaStorage {
+    private final Map<String, String> mData = new ConcurrentHashMap<>();
+
+    @Override
+    public void save(@NonNull String key, @NonNull String value) {
+        mData.put(key, value);
+    }
+
+    @Nullable
+    @Override
+    public String get(@NonNull String key) {
+        return mData.get(key);
+    }
+
+    @Override
+    public void delete(@NonNull String key) {
+        mData.remove(key);
+    }
+}
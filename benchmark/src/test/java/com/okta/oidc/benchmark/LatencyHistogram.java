@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the latency of a single operation. Samples are kept so exact percentiles can be
+ * reported, the histogram groups them in fixed millisecond buckets for a quick visual read.
+ */
+final class LatencyHistogram {
+    private static final long[] BUCKETS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000};
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BAR_WIDTH = 40;
+    private static final double PERCENTILE_50 = 0.5;
+    private static final double PERCENTILE_90 = 0.9;
+    private static final double PERCENTILE_99 = 0.99;
+
+    private final String mName;
+    private long[] mSamples = new long[INITIAL_CAPACITY];
+    private int mCount;
+    private int mErrors;
+
+    LatencyHistogram(String name) {
+        mName = name;
+    }
+
+    synchronized void record(long nanos) {
+        if (mCount == mSamples.length) {
+            mSamples = Arrays.copyOf(mSamples, mSamples.length * 2);
+        }
+        mSamples[mCount++] = nanos;
+    }
+
+    synchronized void recordError() {
+        mErrors++;
+    }
+
+    synchronized int getCount() {
+        return mCount;
+    }
+
+    synchronized int getErrors() {
+        return mErrors;
+    }
+
+    /**
+     * Formats the report of this operation.
+     *
+     * @param elapsedNanos wall time of the run the samples were taken in, used for throughput.
+     */
+    synchronized String report(long elapsedNanos) {
+        StringBuilder report = new StringBuilder();
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        report.append(String.format(Locale.US, "%s: %d ok, %d errors, %.1f req/s%n",
+                mName, mCount, mErrors, seconds > 0 ? mCount / seconds : 0));
+        if (mCount == 0) {
+            return report.toString();
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long sample : sorted) {
+            total += sample;
+        }
+        report.append(String.format(Locale.US,
+                "  mean %.2f ms, p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                toMillis(total / mCount), toMillis(percentile(sorted, PERCENTILE_50)),
+                toMillis(percentile(sorted, PERCENTILE_90)),
+                toMillis(percentile(sorted, PERCENTILE_99)), toMillis(sorted[mCount - 1])));
+
+        int[] counts = new int[BUCKETS_MS.length + 1];
+        for (long sample : sorted) {
+            int bucket = 0;
+            while (bucket < BUCKETS_MS.length
+                    && sample > TimeUnit.MILLISECONDS.toNanos(BUCKETS_MS[bucket])) {
+                bucket++;
+            }
+            counts[bucket]++;
+        }
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) {
+                continue;
+            }
+            String label = i < BUCKETS_MS.length ? "<= " + BUCKETS_MS[i] + " ms"
+                    : "> " + BUCKETS_MS[BUCKETS_MS.length - 1] + " ms";
+            int width = Math.max(1, counts[i] * BAR_WIDTH / mCount);
+            char[] bar = new char[width];
+            Arrays.fill(bar, '#');
+            report.append(String.format(Locale.US, "  %10s | %-" + BAR_WIDTH + "s %d%n", label,
+                    new String(bar), counts[i]));
+        }
+        return report.toString();
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
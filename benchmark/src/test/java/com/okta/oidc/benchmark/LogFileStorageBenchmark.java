@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import com.okta.oidc.storage.LogFileStorage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes one record into a {@link LogFileStorage} that already holds a number of records.
+ * The cost should not depend on the number of records.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogFileStorageBenchmark {
+    @Param({"10", "1000"})
+    public int records;
+
+    private File mFile;
+    private LogFileStorage mStorage;
+    private String mValue;
+
+    @Setup
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("LogFileStorageBenchmark", null);
+        mFile.delete();
+        mStorage = new LogFileStorage(mFile);
+        mValue = BenchmarkValues.getTokenResponseJson();
+        for (int i = 0; i < records; i++) {
+            mStorage.save("record" + i, mValue);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        mFile.delete();
+    }
+
+    @Benchmark
+    public void save() {
+        mStorage.save("record0", mValue);
+    }
+
+    @Benchmark
+    public String get() {
+        return mStorage.get("record0");
+    }
+}
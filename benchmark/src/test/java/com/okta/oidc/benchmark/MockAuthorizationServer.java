@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URLDecoder;
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.tls.HandshakeCertificates;
+import okhttp3.tls.HeldCertificate;
+
+/**
+ * In-process authorization server emulating the Okta endpoints used by the library: discovery,
+ * /authorize (session token flow), /token, /userinfo, /introspect, /revoke and /logout.
+ * Unlike the queue based MockEndPoint of the library tests, responses are computed per request
+ * so any number of concurrent clients can be served.
+ */
+public class MockAuthorizationServer {
+    private static final String AUTH_SERVER_PATH = "/oauth2/default";
+    private static final String DISCOVERY_PATH =
+            AUTH_SERVER_PATH + "/.well-known/openid-configuration";
+    private static final String AUTHORIZE_PATH = AUTH_SERVER_PATH + "/v1/authorize";
+    private static final String TOKEN_PATH = AUTH_SERVER_PATH + "/v1/token";
+    private static final String USERINFO_PATH = AUTH_SERVER_PATH + "/v1/userinfo";
+    private static final String INTROSPECT_PATH = AUTH_SERVER_PATH + "/v1/introspect";
+    private static final String REVOKE_PATH = AUTH_SERVER_PATH + "/v1/revoke";
+    private static final String LOGOUT_PATH = AUTH_SERVER_PATH + "/v1/logout";
+    private static final String KEYS_PATH = AUTH_SERVER_PATH + "/v1/keys";
+    private static final String JSON_CONTENT_TYPE = "application/json; charset=UTF-8";
+    private static final int EXPIRES_IN_SECONDS = 3600;
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final KeyPair mSigningKey = Keys.keyPairFor(SignatureAlgorithm.RS256);
+    private String mIssuer;
+
+    public void start() throws IOException {
+        String host = InetAddress.getByName("localhost").getCanonicalHostName();
+        HeldCertificate certificate = new HeldCertificate.Builder()
+                .addSubjectAlternativeName(host)
+                .build();
+        HandshakeCertificates serverCertificates = new HandshakeCertificates.Builder()
+                .heldCertificate(certificate)
+                .build();
+        HandshakeCertificates clientCertificates = new HandshakeCertificates.Builder()
+                .addTrustedCertificate(certificate.certificate())
+                .build();
+        HttpsURLConnection.setDefaultSSLSocketFactory(clientCertificates.sslSocketFactory());
+        mServer.useHttps(serverCertificates.sslSocketFactory(), false);
+        mServer.setDispatcher(new AuthorizationDispatcher());
+        mServer.start();
+        mIssuer = mServer.url(AUTH_SERVER_PATH).toString();
+    }
+
+    public void shutdown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * The issuer of the authorization server, also used as the discovery uri of the client.
+     */
+    public String getIssuer() {
+        return mIssuer;
+    }
+
+    public int getRequestCount() {
+        return mServer.getRequestCount();
+    }
+
+    private String getDiscoveryDocument() {
+        return "{" +
+                "\"issuer\":\"" + mIssuer + "\"," +
+                "\"authorization_endpoint\":\"" + url(AUTHORIZE_PATH) + "\"," +
+                "\"token_endpoint\":\"" + url(TOKEN_PATH) + "\"," +
+                "\"userinfo_endpoint\":\"" + url(USERINFO_PATH) + "\"," +
+                "\"introspection_endpoint\":\"" + url(INTROSPECT_PATH) + "\"," +
+                "\"revocation_endpoint\":\"" + url(REVOKE_PATH) + "\"," +
+                "\"end_session_endpoint\":\"" + url(LOGOUT_PATH) + "\"," +
+                "\"jwks_uri\":\"" + url(KEYS_PATH) + "\"," +
+                "\"response_types_supported\":[\"code\"]," +
+                "\"subject_types_supported\":[\"public\"]," +
+                "\"id_token_signing_alg_values_supported\":[\"RS256\"]," +
+                "\"scopes_supported\":[\"openid\",\"profile\",\"email\",\"offline_access\"]," +
+                "\"code_challenge_methods_supported\":[\"S256\"]" +
+                "}";
+    }
+
+    private String url(String path) {
+        return mServer.url(path).toString();
+    }
+
+    private String createIdToken(String clientId, String nonce) {
+        long now = System.currentTimeMillis();
+        return Jwts.builder()
+                .claim(Claims.AUDIENCE, Collections.singletonList(clientId))
+                .claim("nonce", nonce)
+                .setIssuer(mIssuer)
+                .setSubject("00u1benchmark")
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + TimeUnit.SECONDS.toMillis(EXPIRES_IN_SECONDS)))
+                .signWith(mSigningKey.getPrivate(), SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+    private MockResponse token(Map<String, String> parameters) {
+        String clientId = parameters.get("client_id");
+        if (clientId == null) {
+            return new MockResponse().setResponseCode(HttpURLConnection.HTTP_UNAUTHORIZED)
+                    .setHeader("Content-Type", JSON_CONTENT_TYPE)
+                    .setBody("{\"error\":\"invalid_client\"}");
+        }
+        return json("{" +
+                "\"access_token\":\"" + UUID.randomUUID() + "\"," +
+                "\"token_type\":\"Bearer\"," +
+                "\"expires_in\":" + EXPIRES_IN_SECONDS + "," +
+                "\"scope\":\"openid profile offline_access\"," +
+                "\"refresh_token\":\"" + UUID.randomUUID() + "\"," +
+                "\"id_token\":\"" + createIdToken(clientId, parameters.get("nonce")) + "\"" +
+                "}");
+    }
+
+    private static MockResponse authorize(HttpUrl url) {
+        String query = new HttpUrl.Builder()
+                .scheme("https")
+                .host("localhost")
+                .addQueryParameter("code", UUID.randomUUID().toString())
+                .addQueryParameter("state", url.queryParameter("state"))
+                .build()
+                .encodedQuery();
+        return new MockResponse().setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP)
+                .setHeader("Location", url.queryParameter("redirect_uri") + "?" + query);
+    }
+
+    private static MockResponse logout(HttpUrl url) {
+        String redirect = url.queryParameter("post_logout_redirect_uri");
+        if (redirect == null) {
+            return new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK);
+        }
+        return new MockResponse().setResponseCode(HttpURLConnection.HTTP_MOVED_TEMP)
+                .setHeader("Location", redirect + "?state=" + url.queryParameter("state"));
+    }
+
+    private static MockResponse json(String body) {
+        return new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK)
+                .setHeader("Content-Type", JSON_CONTENT_TYPE)
+                .setBody(body);
+    }
+
+    private static Map<String, String> formParameters(RecordedRequest request) {
+        Map<String, String> parameters = new HashMap<>();
+        String body = request.getBody().readUtf8();
+        if (body.isEmpty()) {
+            return parameters;
+        }
+        try {
+            for (String pair : body.split("&")) {
+                int index = pair.indexOf('=');
+                if (index > 0) {
+                    parameters.put(URLDecoder.decode(pair.substring(0, index), "UTF-8"),
+                            URLDecoder.decode(pair.substring(index + 1), "UTF-8"));
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return parameters;
+    }
+
+    private final class AuthorizationDispatcher extends Dispatcher {
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) {
+            HttpUrl url = request.getRequestUrl();
+            if (url == null) {
+                return new MockResponse().setResponseCode(HttpURLConnection.HTTP_BAD_REQUEST);
+            }
+            switch (url.encodedPath()) {
+                case DISCOVERY_PATH:
+                    return json(getDiscoveryDocument());
+                case AUTHORIZE_PATH:
+                    return authorize(url);
+                case TOKEN_PATH:
+                    return token(formParameters(request));
+                case USERINFO_PATH:
+                    return json("{\"sub\":\"00u1benchmark\",\"name\":\"Benchmark User\"," +
+                            "\"email\":\"benchmark@example.com\"}");
+                case INTROSPECT_PATH:
+                    return json("{\"active\":true,\"token_type\":\"Bearer\"," +
+                            "\"scope\":\"openid profile offline_access\"," +
+                            "\"client_id\":\"" + formParameters(request).get("client_id")
+                            + "\",\"exp\":" + (System.currentTimeMillis() / 1000
+                            + EXPIRES_IN_SECONDS) + "}");
+                case REVOKE_PATH:
+                    return new MockResponse().setResponseCode(HttpURLConnection.HTTP_OK);
+                case LOGOUT_PATH:
+                    return logout(url);
+                default:
+                    return new MockResponse().setResponseCode(HttpURLConnection.HTTP_NOT_FOUND);
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import com.okta.oidc.net.response.TokenResponse;
+import com.okta.oidc.storage.OktaRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OktaRepositoryBenchmark {
+    @Param({"false", "true"})
+    public boolean cacheMode;
+
+    private OktaRepository mRepository;
+    private TokenResponse mTokenResponse;
+
+    @Setup
+    public void setUp() throws OktaRepository.EncryptionException {
+        mRepository = new OktaRepository(new InMemoryStorage(), null,
+                new SoftwareEncryptionManager(), false, cacheMode);
+        mTokenResponse = TokenResponse.RESTORE.restore(BenchmarkValues.getTokenResponseJson());
+        mRepository.save(mTokenResponse);
+    }
+
+    @Benchmark
+    public void save() throws OktaRepository.EncryptionException {
+        mRepository.save(mTokenResponse);
+    }
+
+    @Benchmark
+    public TokenResponse get() throws OktaRepository.EncryptionException {
+        return mRepository.get(TokenResponse.RESTORE);
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.benchmark;
+
+import android.content.Context;
+
+import com.okta.oidc.storage.security.EncryptionManager;
+import com.okta.oidc.util.CodecUtil;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * {@link EncryptionManager} backed by an in-memory AES/GCM key. The AndroidKeyStore isn't
+ * available on the JVM, this gives the repository benchmarks a real cipher to work with.
+ */
+public class SoftwareEncryptionManager implements EncryptionManager {
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String DEFAULT_CHARSET = "UTF-8";
+    private static final int KEY_SIZE = 256;
+    private static final int IV_SIZE = 12;
+    private static final int TAG_SIZE_BITS = 128;
+
+    private final SecureRandom mRandom = new SecureRandom();
+    private SecretKey mKey;
+
+    public SoftwareEncryptionManager() {
+        recreateKeys(null);
+    }
+
+    @Override
+    public String encrypt(String value) throws GeneralSecurityException {
+        if (value == null || value.length() == 0) {
+            return value;
+        }
+        byte[] iv = new byte[IV_SIZE];
+        mRandom.nextBytes(iv);
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, mKey, new GCMParameterSpec(TAG_SIZE_BITS, iv));
+        byte[] encrypted = cipher.doFinal(getBytes(value));
+        StringBuilder builder = new StringBuilder(
+                CodecUtil.base64Length(iv.length + encrypted.length, 0));
+        //IV_SIZE is a multiple of 3, so the two parts encode like one array.
+        CodecUtil.appendBase64(iv, 0, iv.length, builder, 0);
+        CodecUtil.appendBase64(encrypted, 0, encrypted.length, builder, 0);
+        return builder.toString();
+    }
+
+    @Override
+    public String decrypt(String value) throws GeneralSecurityException {
+        if (value == null || value.length() == 0) {
+            return value;
+        }
+        byte[] data = CodecUtil.decodeBase64(value, 0, value.length());
+        Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, mKey, new GCMParameterSpec(TAG_SIZE_BITS, data, 0,
+                IV_SIZE));
+        byte[] decrypted = cipher.doFinal(data, IV_SIZE, data.length - IV_SIZE);
+        try {
+            return new String(decrypted, DEFAULT_CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String getHashed(String value) throws NoSuchAlgorithmException,
+            UnsupportedEncodingException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        byte[] result = digest.digest(value.getBytes(DEFAULT_CHARSET));
+        return CodecUtil.toHex(result);
+    }
+
+    @Override
+    public boolean isHardwareBackedKeyStore() {
+        return false;
+    }
+
+    @Override
+    public void recreateCipher() {
+        //NO-OP a new cipher is created for every operation.
+    }
+
+    @Override
+    public void setCipher(Cipher cipher) {
+        //NO-OP
+    }
+
+    @Override
+    public Cipher getCipher() {
+        return null;
+    }
+
+    @Override
+    public void removeKeys() {
+        mKey = null;
+    }
+
+    @Override
+    public void recreateKeys(Context context) {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("AES");
+            generator.init(KEY_SIZE, mRandom);
+            mKey = generator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean isUserAuthenticatedOnDevice() {
+        return true;
+    }
+
+    @Override
+    public boolean isValidKeys() {
+        return mKey != null;
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        //A cipher is created for every operation.
+        return true;
+    }
+
+    private static byte[] getBytes(String value) {
+        try {
+            return value.getBytes(DEFAULT_CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
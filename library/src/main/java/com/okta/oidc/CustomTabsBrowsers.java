@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.okta.oidc;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ResolveInfo;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+import androidx.browser.customtabs.CustomTabsService;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves the Custom Tabs browser to sign in with. The installed Custom Tabs browsers are
+ * queried once per process and match flag. The cache is cleared when a package is added,
+ * removed or changed.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class CustomTabsBrowsers {
+    //Installed Custom Tabs browsers in query order, by match flag.
+    private static final Map<Integer, Set<String>> sBrowsers = new ConcurrentHashMap<>();
+    //Incremented on every package change, results queried before a change are not cached.
+    private static volatile int sGeneration;
+    private static boolean sReceiverRegistered;
+
+    private CustomTabsBrowsers() {
+        throw new IllegalStateException("This type is not intended to be instantiated");
+    }
+
+    /**
+     * Gets the browsers in the order {@link OktaAuthenticationActivity} tries them, the
+     * supported browsers followed by Chrome.
+     *
+     * @param supportedBrowsers the supported browsers set on the client
+     * @return the browsers in order of preference
+     */
+    @NonNull
+    public static Set<String> getSupportedBrowsers(@Nullable String[] supportedBrowsers) {
+        Set<String> browsers = new LinkedHashSet<>();
+        if (supportedBrowsers != null) {
+            browsers.addAll(Arrays.asList(supportedBrowsers));
+        }
+        browsers.addAll(Arrays.asList(OktaAuthenticationActivity.CHROME_BROWSERS));
+        return browsers;
+    }
+
+    /**
+     * Gets the Custom Tabs browser to use, the first installed of the supported browsers or
+     * else the first installed browser.
+     *
+     * @param context           the context
+     * @param supportedBrowsers the supported browsers in order of preference
+     * @param matchFlag         the flags to query the services with
+     * @return the browser package name, null if there is no Custom Tabs browser
+     */
+    @Nullable
+    public static String getBrowser(@NonNull Context context,
+                                    @NonNull Collection<String> supportedBrowsers,
+                                    int matchFlag) {
+        Set<String> customTabsBrowsers = getCustomTabsBrowsers(context, matchFlag);
+        for (String browser : supportedBrowsers) {
+            if (customTabsBrowsers.contains(browser)) {
+                return browser;
+            }
+        }
+        //Use first compatible browser on list.
+        if (!customTabsBrowsers.isEmpty()) {
+            return customTabsBrowsers.iterator().next();
+        }
+        return null;
+    }
+
+    private static Set<String> getCustomTabsBrowsers(Context context, int matchFlag) {
+        Set<String> browsers = sBrowsers.get(matchFlag);
+        if (browsers != null) {
+            return browsers;
+        }
+        registerReceiver(context);
+        int generation = sGeneration;
+        Intent serviceIntent = new Intent();
+        serviceIntent.setAction(CustomTabsService.ACTION_CUSTOM_TABS_CONNECTION);
+        List<ResolveInfo> resolveInfoList =
+                context.getPackageManager().queryIntentServices(serviceIntent, matchFlag);
+        Set<String> queried = new LinkedHashSet<>();
+        for (ResolveInfo info : resolveInfoList) {
+            queried.add(info.serviceInfo.packageName);
+        }
+        browsers = Collections.unmodifiableSet(queried);
+        synchronized (CustomTabsBrowsers.class) {
+            if (generation == sGeneration) {
+                sBrowsers.put(matchFlag, browsers);
+            }
+        }
+        return browsers;
+    }
+
+    private static synchronized void registerReceiver(Context context) {
+        if (sReceiverRegistered) {
+            return;
+        }
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        context.getApplicationContext().registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidate();
+            }
+        }, filter);
+        sReceiverRegistered = true;
+    }
+
+    @VisibleForTesting
+    static synchronized void invalidate() {
+        sGeneration++;
+        sBrowsers.clear();
+    }
+}
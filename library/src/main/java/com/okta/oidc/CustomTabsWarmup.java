@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.okta.oidc;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
+import androidx.browser.customtabs.CustomTabsClient;
+import androidx.browser.customtabs.CustomTabsServiceConnection;
+import androidx.browser.customtabs.CustomTabsSession;
+
+import java.util.Collections;
+
+/**
+ * Binds the Custom Tabs service of a browser ahead of sign in. The browser is warmed up and
+ * told the authorize URL with mayLaunchUrl while the user is still on the login screen.
+ * {@link OktaAuthenticationActivity} launches with the bound session instead of binding the
+ * service itself. The service is bound with the application context, one browser at a time,
+ * until {@link #release()}.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class CustomTabsWarmup {
+    private static final String TAG = CustomTabsWarmup.class.getSimpleName();
+
+    //Guarded by CustomTabsWarmup.class
+    private static Connection sConnection;
+
+    private CustomTabsWarmup() {
+        throw new IllegalStateException("This type is not intended to be instantiated");
+    }
+
+    /**
+     * Binds the Custom Tabs service of the browser, warms it up and calls mayLaunchUrl with
+     * the uri. If the browser is already bound only the uri is updated. A connection to
+     * another browser is released.
+     *
+     * @param context        the context
+     * @param browserPackage the browser package
+     * @param uri            the uri that will be launched
+     */
+    public static void prepare(@NonNull Context context, @NonNull String browserPackage,
+                               @NonNull Uri uri) {
+        CustomTabsSession session;
+        synchronized (CustomTabsWarmup.class) {
+            if (sConnection != null && sConnection.mBrowserPackage.equals(browserPackage)) {
+                sConnection.mUri = uri;
+                session = sConnection.mSession;
+            } else {
+                release();
+                Context appContext = context.getApplicationContext();
+                Connection connection = new Connection(appContext, browserPackage, uri);
+                if (CustomTabsClient.bindCustomTabsService(appContext, browserPackage,
+                        connection)) {
+                    sConnection = connection;
+                } else {
+                    Log.d(TAG, "Failed to bind custom tabs service of " + browserPackage);
+                }
+                return;
+            }
+        }
+        if (session != null) {
+            session.mayLaunchUrl(uri, null, Collections.emptyList());
+        }
+    }
+
+    /**
+     * Gets the session prepared for the browser. If it was prepared for another uri
+     * mayLaunchUrl is called again with this one.
+     *
+     * @param browserPackage the browser package
+     * @param uri            the uri to launch
+     * @return the session, null if the browser isn't prepared or not connected yet
+     */
+    @Nullable
+    static CustomTabsSession getSession(@NonNull String browserPackage, @Nullable Uri uri) {
+        CustomTabsSession session;
+        synchronized (CustomTabsWarmup.class) {
+            if (sConnection == null || !sConnection.mBrowserPackage.equals(browserPackage)
+                    || sConnection.mSession == null) {
+                return null;
+            }
+            session = sConnection.mSession;
+            if (uri == null || uri.equals(sConnection.mUri)) {
+                return session;
+            }
+            sConnection.mUri = uri;
+        }
+        session.mayLaunchUrl(uri, null, Collections.emptyList());
+        return session;
+    }
+
+    /**
+     * Unbinds the prepared browser, if any.
+     */
+    public static void release() {
+        synchronized (CustomTabsWarmup.class) {
+            if (sConnection != null) {
+                sConnection.unbind();
+                sConnection = null;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static void setSession(@NonNull Context context, @NonNull String browserPackage,
+                           @NonNull Uri uri, @NonNull CustomTabsSession session) {
+        synchronized (CustomTabsWarmup.class) {
+            release();
+            sConnection = new Connection(context.getApplicationContext(), browserPackage, uri);
+            sConnection.mSession = session;
+            sConnection.mBound = false;
+        }
+    }
+
+    private static final class Connection extends CustomTabsServiceConnection {
+        private final Context mContext;
+        private final String mBrowserPackage;
+        //Guarded by CustomTabsWarmup.class
+        private Uri mUri;
+        private CustomTabsSession mSession;
+        private boolean mBound = true;
+
+        Connection(Context context, String browserPackage, Uri uri) {
+            mContext = context;
+            mBrowserPackage = browserPackage;
+            mUri = uri;
+        }
+
+        @Override
+        public void onCustomTabsServiceConnected(@NonNull ComponentName name,
+                                                 @NonNull CustomTabsClient client) {
+            client.warmup(0);
+            CustomTabsSession session = client.newSession(null);
+            if (session == null) {
+                Log.d(TAG, "Failed to create custom tabs session through custom tabs client");
+                return;
+            }
+            Uri uri;
+            synchronized (CustomTabsWarmup.class) {
+                if (sConnection != this) {
+                    return;
+                }
+                mSession = session;
+                uri = mUri;
+            }
+            session.mayLaunchUrl(uri, null, Collections.emptyList());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            synchronized (CustomTabsWarmup.class) {
+                mSession = null;
+                if (sConnection == this) {
+                    unbind();
+                    sConnection = null;
+                }
+            }
+        }
+
+        private void unbind() {
+            if (mBound) {
+                mBound = false;
+                try {
+                    mContext.unbindService(this);
+                } catch (IllegalArgumentException e) {
+                    Log.d(TAG, "unbind: ", e);
+                }
+            }
+        }
+    }
+}
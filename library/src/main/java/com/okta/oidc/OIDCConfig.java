@@ -72,6 +72,7 @@ public class OIDCConfig {
     private AccountInfo mAccount;
     private boolean mIsOAuth2Configuration;
     private CustomConfiguration mCustomConfiguration;
+    private int mTokenExpirySkew;
     private final OktaIdToken.Validator idTokenValidator;
 
     private OIDCConfig(AccountInfo account, OktaIdToken.Validator idTokenValidator) {
@@ -171,6 +172,16 @@ public class OIDCConfig {
         return idTokenValidator;
     }
 
+    /**
+     * Returns the margin in seconds by which access tokens are considered expired before their
+     * expiration time.
+     *
+     * @return the skew margin in seconds
+     */
+    public int getTokenExpirySkew() {
+        return mTokenExpirySkew;
+    }
+
     private static class AccountInfo {
         @SerializedName("client_id")
         String mClientId;
@@ -220,6 +231,7 @@ public class OIDCConfig {
         private CustomConfiguration mCustomConfiguration;
         private OktaIdToken.Validator mIdTokenValidator =
                 new OktaIdToken.DefaultValidator(System::currentTimeMillis);
+        private int mTokenExpirySkew;
 
         /**
          * Instantiates a new Builder.
@@ -237,6 +249,7 @@ public class OIDCConfig {
             mAccountInfo.validate(mCustomConfiguration != null);
             OIDCConfig config = new OIDCConfig(mAccountInfo, mIdTokenValidator);
             config.mCustomConfiguration = mCustomConfiguration;
+            config.mTokenExpirySkew = mTokenExpirySkew;
             return config;
         }
 
@@ -327,6 +340,22 @@ public class OIDCConfig {
             return this;
         }
 
+        /**
+         * Sets a margin for clock differences between the device and the authorization server.
+         * Access tokens are considered expired this many seconds before their expiration time.
+         * The default is no margin.
+         *
+         * @param seconds the skew margin in seconds
+         * @return current builder
+         */
+        public Builder tokenExpirySkew(int seconds) {
+            if (seconds < 0) {
+                throw new IllegalArgumentException("tokenExpirySkew cannot be negative");
+            }
+            mTokenExpirySkew = seconds;
+            return this;
+        }
+
         /**
          * Sets the resource id of the configuration file in JSON format.
          *
@@ -29,6 +29,7 @@ import com.okta.oidc.clients.web.SyncWebAuthClient;
 import com.okta.oidc.clients.web.SyncWebAuthClientFactory;
 import com.okta.oidc.clients.web.WebAuthClient;
 import com.okta.oidc.clients.web.WebAuthClientFactory;
+import com.okta.oidc.util.CodeVerifierUtil;
 
 import java.util.concurrent.Executor;
 
@@ -39,6 +40,18 @@ import java.util.concurrent.Executor;
  * {@link SyncAuthClient}
  */
 public class Okta {
+    /**
+     * Sets if the PKCE code verifier, challenge, state and nonce of authorize requests are
+     * generated ahead of time on a background thread. Sign in then starts without generating
+     * random values on the calling thread. This is a process-wide setting, it applies to the
+     * authorize requests of every client. Disabled by default.
+     *
+     * @param enabled true to keep PKCE parameters ready for all clients
+     */
+    public static void setPkcePregenerationForAllClients(boolean enabled) {
+        CodeVerifierUtil.setPregenerateParameters(enabled);
+    }
+
     /**
      * The asynchronous web authentication client builder.
      */
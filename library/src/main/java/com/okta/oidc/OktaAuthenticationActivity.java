@@ -18,8 +18,6 @@ package com.okta.oidc;
 import android.app.Activity;
 import android.content.ActivityNotFoundException;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.Browser;
@@ -30,17 +28,14 @@ import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import androidx.browser.customtabs.CustomTabsClient;
 import androidx.browser.customtabs.CustomTabsIntent;
-import androidx.browser.customtabs.CustomTabsService;
 import androidx.browser.customtabs.CustomTabsServiceConnection;
 import androidx.browser.customtabs.CustomTabsSession;
 
 import com.okta.oidc.util.AuthorizationException;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
-import java.util.List;
 import java.util.Set;
 
 import static com.okta.oidc.net.ConnectionParameters.USER_AGENT_HEADER;
@@ -75,9 +70,12 @@ public class OktaAuthenticationActivity extends Activity implements ServiceConne
      */
     static final String EXTRA_BROWSERS = "com.okta.auth.BROWSERS";
 
-    private static final String CHROME_STABLE = "com.android.chrome";
-    private static final String CHROME_SYSTEM = "com.google.android.apps.chrome";
-    private static final String CHROME_BETA = "com.android.chrome.beta";
+    /**
+     * The browsers tried after the supported browsers passed to the activity.
+     */
+    static final String[] CHROME_BROWSERS = {
+            "com.android.chrome", "com.google.android.apps.chrome", "com.android.chrome.beta"
+    };
 
     /**
      * The M supported browsers.
@@ -134,7 +132,7 @@ public class OktaAuthenticationActivity extends Activity implements ServiceConne
                 mSupportedBrowsers.addAll(Arrays.asList(list));
             }
         }
-        mSupportedBrowsers.addAll(Arrays.asList(CHROME_STABLE, CHROME_SYSTEM, CHROME_BETA));
+        mSupportedBrowsers.addAll(Arrays.asList(CHROME_BROWSERS));
     }
 
     @Override
@@ -154,7 +152,13 @@ public class OktaAuthenticationActivity extends Activity implements ServiceConne
         } else {
             String browser = getBrowser();
             if (browser != null && !mResultSent) {
-                bindServiceAndStart(browser);
+                //Reuse the session bound ahead of time by prepareSignIn if there is one.
+                CustomTabsSession session = CustomTabsWarmup.getSession(browser, mAuthUri);
+                if (session != null) {
+                    startBrowser(browser, session);
+                } else {
+                    bindServiceAndStart(browser);
+                }
             } else {
                 sendResult(RESULT_OK, getIntent().putExtra(EXTRA_EXCEPTION,
                         AuthorizationException.GeneralErrors.NO_BROWSER_FOUND.toJsonString()));
@@ -179,25 +183,7 @@ public class OktaAuthenticationActivity extends Activity implements ServiceConne
     @Nullable
     @VisibleForTesting
     protected String getBrowser() {
-        PackageManager pm = getPackageManager();
-        Intent serviceIntent = new Intent();
-        serviceIntent.setAction(CustomTabsService.ACTION_CUSTOM_TABS_CONNECTION);
-        List<ResolveInfo> resolveInfoList = pm.queryIntentServices(serviceIntent, mMatchFlag);
-        List<String> customTabsBrowsers = new ArrayList<>();
-
-        for (ResolveInfo info : resolveInfoList) {
-            customTabsBrowsers.add(info.serviceInfo.packageName);
-        }
-        for (String browser : mSupportedBrowsers) {
-            if (customTabsBrowsers.contains(browser)) {
-                return browser;
-            }
-        }
-        //Use first compatible browser on list.
-        if (!customTabsBrowsers.isEmpty()) {
-            return customTabsBrowsers.get(0);
-        }
-        return null;
+        return CustomTabsBrowsers.getBrowser(this, mSupportedBrowsers, mMatchFlag);
     }
 
     /**
@@ -275,6 +261,10 @@ public class OktaAuthenticationActivity extends Activity implements ServiceConne
             customTabsClient.warmup(0);
             session = createSession(customTabsClient);
         }
+        startBrowser(browserPackage, session);
+    }
+
+    private void startBrowser(String browserPackage, @Nullable CustomTabsSession session) {
         mAuthStarted = true;
         try {
             startActivity(createBrowserIntent(browserPackage, session));
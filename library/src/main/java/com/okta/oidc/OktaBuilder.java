@@ -19,13 +19,18 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 
+import com.okta.oidc.clients.BaseClientFactory;
 import com.okta.oidc.clients.ClientFactory;
 import com.okta.oidc.net.HttpClientImpl;
 import com.okta.oidc.net.OktaHttpClient;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.SharedPreferenceStorage;
 import com.okta.oidc.storage.security.DefaultEncryptionManager;
 import com.okta.oidc.storage.security.EncryptionManager;
+import com.okta.oidc.storage.security.KeyValidityWatcher;
+
+import java.util.concurrent.Executor;
 
 /**
  * The base type Okta builder.
@@ -71,6 +76,26 @@ public abstract class OktaBuilder<A, T extends OktaBuilder<A, T>> {
      */
     private boolean mCacheMode = true;
 
+    /**
+     * Background Persistence.
+     */
+    private boolean mBackgroundPersistence;
+
+    /**
+     * Background Encryption Initialization.
+     */
+    private boolean mBackgroundEncryptionInit;
+
+    /**
+     * Watch the validity of the encryption keys.
+     */
+    private boolean mWatchKeyValidity;
+
+    /**
+     * Retry policy for keystore errors.
+     */
+    private KeystoreRetryPolicy mKeystoreRetryPolicy;
+
     /**
      * Used to prevent lint issues.
      *
@@ -176,6 +201,65 @@ public abstract class OktaBuilder<A, T extends OktaBuilder<A, T>> {
         return toThis();
     }
 
+    /**
+     * Sets if data should be encrypted and written to storage on a background thread. Results
+     * are returned as soon as they are received and kept in memory until written. Writes are
+     * applied in order on a single thread. If the process dies before a write completes the
+     * storage keeps the previously written value. Has no effect on clients of a custom
+     * {@link ClientFactory}. Disabled by default.
+     *
+     * @param backgroundPersistence true to persist on a background thread.
+     * @return current builder
+     */
+    public T setBackgroundPersistence(boolean backgroundPersistence) {
+        mBackgroundPersistence = backgroundPersistence;
+        return toThis();
+    }
+
+    /**
+     * Sets if the default encryption manager loads the key store and generates keys on a
+     * background thread. The client is created without waiting and the first operation that
+     * reads or writes encrypted data waits for the keys. Has no effect if an encryption manager
+     * is set with {@link #withEncryptionManager(EncryptionManager)}, use
+     * {@link DefaultEncryptionManager#DefaultEncryptionManager(Context, boolean, Executor)}
+     * instead. Disabled by default.
+     *
+     * @param backgroundEncryptionInit true to initialize encryption on a background thread.
+     * @return current builder
+     */
+    public T setBackgroundEncryptionInit(boolean backgroundEncryptionInit) {
+        mBackgroundEncryptionInit = backgroundEncryptionInit;
+        return toThis();
+    }
+
+    /**
+     * Sets if the keys of the encryption manager are checked on a background thread each time
+     * the application comes to the foreground. Reads fail fast with an invalid keys
+     * {@link com.okta.oidc.storage.OktaRepository.EncryptionException} once the keys are known
+     * to be invalid, for example after the screen lock was changed. Disabled by default.
+     *
+     * @param watchKeyValidity true to watch the keys.
+     * @return current builder
+     */
+    public T setWatchKeyValidity(boolean watchKeyValidity) {
+        mWatchKeyValidity = watchKeyValidity;
+        return toThis();
+    }
+
+    /**
+     * Sets how encrypting and decrypting stored data is retried after a transient keystore
+     * error, see {@link KeystoreRetryPolicy}. The setting applies to the created client only
+     * and has no effect on clients of a custom {@link ClientFactory}. Defaults to
+     * {@link KeystoreRetryPolicy#DEFAULT}.
+     *
+     * @param keystoreRetryPolicy the retry policy
+     * @return current builder
+     */
+    public T setKeystoreRetryPolicy(@NonNull KeystoreRetryPolicy keystoreRetryPolicy) {
+        mKeystoreRetryPolicy = keystoreRetryPolicy;
+        return toThis();
+    }
+
     /**
      * Create auth client.
      *
@@ -189,11 +273,24 @@ public abstract class OktaBuilder<A, T extends OktaBuilder<A, T>> {
         // By default we enable encryption for all our clients. To change this behaviour, create
         // your own Builder.
         if (mEncryptionManager == null) {
-            mEncryptionManager = new DefaultEncryptionManager(mContext);
+            Executor executor = null;
+            if (mBackgroundEncryptionInit) {
+                executor = command -> new Thread(command,
+                        DefaultEncryptionManager.class.getSimpleName()).start();
+            }
+            mEncryptionManager = new DefaultEncryptionManager(mContext, false, executor);
         }
         if (mStorage == null) {
             mStorage = new SharedPreferenceStorage(mContext);
         }
+        if (mWatchKeyValidity) {
+            KeyValidityWatcher.watch(mContext, mEncryptionManager);
+        }
+        if (mClientFactory instanceof BaseClientFactory) {
+            BaseClientFactory<A> factory = (BaseClientFactory<A>) mClientFactory;
+            factory.setBackgroundPersistence(mBackgroundPersistence);
+            factory.setKeystoreRetryPolicy(mKeystoreRetryPolicy);
+        }
         return this.mClientFactory.createClient(mOidcConfig,
                 mContext, mStorage, mEncryptionManager,
                 mClient, mRequireHardwareBackedKeyStore, mCacheMode);
@@ -17,7 +17,6 @@ package com.okta.oidc;
 
 import android.net.Uri;
 import android.text.TextUtils;
-import android.util.Base64;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.RestrictTo;
@@ -34,10 +33,12 @@ import com.okta.oidc.net.params.GrantTypes;
 import com.okta.oidc.net.request.ProviderConfiguration;
 import com.okta.oidc.net.request.TokenRequest;
 import com.okta.oidc.util.AuthorizationException;
+import com.okta.oidc.util.CodecUtil;
 
 import java.io.IOException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.List;
 
@@ -54,7 +55,10 @@ import static com.okta.oidc.util.AuthorizationException.GeneralErrors.ID_TOKEN_V
  */
 @SuppressWarnings("unused")
 public class OktaIdToken {
-    private static final int NUMBER_OF_SECTIONS = 3;
+    private static final char SECTION_SEPARATOR = '.';
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(ArrayTypeAdapter.CREATE).create();
 
     /**
      * The interface Clock.
@@ -409,22 +413,40 @@ public class OktaIdToken {
      * @throws IllegalArgumentException the illegal argument exception
      */
     public static OktaIdToken parseIdToken(@NonNull String token) throws IllegalArgumentException {
-        String[] sections = token.split("\\.");
-        if (sections.length < NUMBER_OF_SECTIONS) {
+        int headerEnd = token.indexOf(SECTION_SEPARATOR);
+        int claimsEnd = headerEnd < 0 ? -1 : token.indexOf(SECTION_SEPARATOR, headerEnd + 1);
+        if (claimsEnd < 0 || isEmptySection(token, claimsEnd + 1)) {
             throw new IllegalArgumentException("IdToken missing header, claims or" +
                     " signature section");
         }
-        Gson gson = new GsonBuilder().registerTypeAdapterFactory(ArrayTypeAdapter.CREATE).create();
+        int signatureEnd = token.indexOf(SECTION_SEPARATOR, claimsEnd + 1);
+        if (signatureEnd < 0) {
+            signatureEnd = token.length();
+        }
+        //one buffer large enough for any of the sections.
+        byte[] buffer = new byte[CodecUtil.maxDecodedLength(Math.max(headerEnd,
+                Math.max(claimsEnd - headerEnd, signatureEnd - claimsEnd)))];
         //decode header
-        String headerSection = new String(Base64.decode(sections[0], Base64.URL_SAFE));
-        Header header = gson.fromJson(headerSection, Header.class);
+        int length = CodecUtil.decodeBase64(token, 0, headerEnd, buffer, 0);
+        Header header = GSON.fromJson(new String(buffer, 0, length, UTF_8), Header.class);
         //decode claims
-        String claimsSection = new String(Base64.decode(sections[1], Base64.URL_SAFE));
-        Claims claims = gson.fromJson(claimsSection, Claims.class);
-        String signature = new String(Base64.decode(sections[2], Base64.URL_SAFE));
+        length = CodecUtil.decodeBase64(token, headerEnd + 1, claimsEnd, buffer, 0);
+        Claims claims = GSON.fromJson(new String(buffer, 0, length, UTF_8), Claims.class);
+        length = CodecUtil.decodeBase64(token, claimsEnd + 1, signatureEnd, buffer, 0);
+        String signature = new String(buffer, 0, length, UTF_8);
         return new OktaIdToken(header, claims, signature);
     }
 
+    //True if there are only separators from the index, a section String.split would drop.
+    private static boolean isEmptySection(String token, int from) {
+        for (int i = from; i < token.length(); i++) {
+            if (token.charAt(i) != SECTION_SEPARATOR) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /*
      * Adapter needed for parsing audience which can be a single element or a array.
      * If audience is a single element then this adapter converts the single element audience
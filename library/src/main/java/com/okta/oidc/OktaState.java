@@ -15,16 +15,35 @@
 
 package com.okta.oidc;
 
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
+import androidx.annotation.VisibleForTesting;
 
 import com.okta.oidc.clients.State;
 import com.okta.oidc.net.request.ProviderConfiguration;
 import com.okta.oidc.net.request.web.WebRequest;
 import com.okta.oidc.net.response.TokenResponse;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.OktaRepository;
 import com.okta.oidc.storage.OktaRepository.EncryptionException;
 import com.okta.oidc.storage.Persistable;
+import com.okta.oidc.storage.TokenRecord;
 import com.okta.oidc.storage.security.EncryptionManager;
+import com.okta.oidc.util.LazyExecutor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static com.okta.oidc.clients.State.IDLE;
 
@@ -33,29 +52,129 @@ import static com.okta.oidc.clients.State.IDLE;
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class OktaState {
+    /*
+     * The token response is stored as two independently encrypted records, the refresh token
+     * and the session with everything else, so a refresh without token rotation only
+     * re-encrypts the session. Changed records are written in one transaction. On storage
+     * without transactions the session record is written last and deleted first, it marks a
+     * complete set of records.
+     */
+    private static final TokenRecord REFRESH_TOKEN =
+            new TokenRecord(TokenResponse.RESTORE.getKey() + ".refresh_token");
+    private static final TokenRecord SESSION =
+            new TokenRecord(TokenResponse.RESTORE.getKey() + ".session");
+
+    private static final String TAG = OktaState.class.getSimpleName();
+
     private OktaRepository mOktaRepo;
 
     private State currentState;
 
+    private final Object mTokenLock = new Object();
+    //Token records as last written or read, null if unknown.
+    private Snapshot mPersisted;
+    //If the token response was readable with the current keys when last written or read.
+    @Nullable
+    private volatile Boolean mTokenResponseReadable;
+
+    /*
+     * Background persistence: saves and deletes are recorded here and applied to the repository
+     * in order on a single thread. Until its write is applied the pending value is the
+     * authoritative copy returned to readers. A failed write stays pending for the lifetime of
+     * this state and the failure is reported by the next save or flush, after the value of that
+     * save is queued.
+     */
+    @Nullable
+    private final LazyExecutor mPersistenceExecutor;
+    private final ConcurrentHashMap<String, PendingWrite> mPendingWrites =
+            new ConcurrentHashMap<>();
+    //An EncryptionException or a RuntimeException.
+    private final AtomicReference<Exception> mPersistenceError = new AtomicReference<>();
+
     public OktaState(OktaRepository mOktaRepository) {
+        this(mOktaRepository, false);
+    }
+
+    public OktaState(OktaRepository mOktaRepository, boolean backgroundPersistence) {
         this.mOktaRepo = mOktaRepository;
         this.currentState = IDLE;
+        mPersistenceExecutor = backgroundPersistence ? new LazyExecutor(TAG) : null;
     }
 
     public TokenResponse getTokenResponse() throws EncryptionException {
-        return mOktaRepo.get(TokenResponse.RESTORE);
+        PendingWrite pending = mPendingWrites.get(TokenResponse.RESTORE.getKey());
+        if (pending != null) {
+            return (TokenResponse) pending.mPersistable;
+        }
+        synchronized (mTokenLock) {
+            mPersisted = null;
+            Snapshot snapshot = new Snapshot();
+            String session = getRecord(SESSION, snapshot);
+            if (session == null) {
+                //Single record written by previous versions.
+                TokenResponse tokenResponse = mOktaRepo.get(TokenResponse.RESTORE);
+                mTokenResponseReadable = tokenResponse != null;
+                return tokenResponse;
+            }
+            TokenResponse tokenResponse = TokenResponse.restore(session,
+                    getRecord(REFRESH_TOKEN, snapshot));
+            mPersisted = snapshot;
+            mTokenResponseReadable = tokenResponse != null;
+            return tokenResponse;
+        }
     }
 
     public boolean hasTokenResponse() {
-        return mOktaRepo.contains(TokenResponse.RESTORE);
+        PendingWrite pending = mPendingWrites.get(TokenResponse.RESTORE.getKey());
+        if (pending != null) {
+            return pending.mPersistable != null;
+        }
+        return mOktaRepo.contains(SESSION) || mOktaRepo.contains(TokenResponse.RESTORE);
+    }
+
+    /**
+     * Checks if a stored token response can be read without decrypting it. The answer comes
+     * from the last read or write of the token response in this state and a key validity check
+     * of the encryption manager.
+     *
+     * @return true if readable, false if not, null if unknown until the token response is read
+     */
+    @Nullable
+    public Boolean isTokenResponseReadable() {
+        PendingWrite pending = mPendingWrites.get(TokenResponse.RESTORE.getKey());
+        if (pending != null) {
+            return pending.mPersistable != null;
+        }
+        Boolean readable = mTokenResponseReadable;
+        if (readable == null || !readable) {
+            return readable;
+        }
+        if (mOktaRepo.isValidKeys()) {
+            return true;
+        }
+        synchronized (mTokenLock) {
+            //Recreated keys are valid again but can't decrypt the records.
+            mTokenResponseReadable = null;
+        }
+        return false;
     }
 
     public ProviderConfiguration getProviderConfiguration() throws EncryptionException {
-        return mOktaRepo.get(ProviderConfiguration.RESTORE);
+        return get(ProviderConfiguration.RESTORE);
     }
 
     public WebRequest getAuthorizeRequest() throws EncryptionException {
-        return mOktaRepo.get(WebRequest.RESTORE);
+        return get(WebRequest.RESTORE);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Persistable> T get(Persistable.Restore<T> restore)
+            throws EncryptionException {
+        PendingWrite pending = mPendingWrites.get(restore.getKey());
+        if (pending != null) {
+            return (T) pending.mPersistable;
+        }
+        return mOktaRepo.get(restore);
     }
 
     public void setCurrentState(State state) {
@@ -67,18 +186,235 @@ public class OktaState {
     }
 
     public void save(Persistable persistable) throws EncryptionException {
-        mOktaRepo.save(persistable);
+        if (persistable == null) {
+            return;
+        }
+        if (mPersistenceExecutor == null) {
+            persist(persistable);
+            return;
+        }
+        //Queued before reporting an earlier failure so the new value isn't lost.
+        enqueue(persistable.getKey(), persistable);
+        throwPersistenceError();
     }
 
     public void delete(Persistable persistable) {
-        mOktaRepo.delete(persistable);
+        if (persistable != null) {
+            delete(persistable.getKey());
+        }
     }
 
     public void delete(String key) {
-        mOktaRepo.delete(key);
+        if (key == null) {
+            return;
+        }
+        if (mPersistenceExecutor == null) {
+            remove(key);
+        } else {
+            enqueue(key, null);
+        }
+    }
+
+    /**
+     * Waits until all pending background writes are applied to the repository.
+     *
+     * @throws EncryptionException the first background write failure since the last check, a
+     *                             failure other than an EncryptionException is rethrown as is
+     */
+    public void flush() throws EncryptionException {
+        awaitPendingWrites();
+        throwPersistenceError();
     }
 
     public void setEncryptionManager(EncryptionManager encryptionManager) {
-        this.mOktaRepo.setEncryptionManager(encryptionManager);
+        //Pending writes must be encrypted with the manager that was current when queued.
+        awaitPendingWrites();
+        synchronized (mTokenLock) {
+            //Records encrypted with the previous manager must all be rewritten.
+            mPersisted = null;
+            mTokenResponseReadable = null;
+            this.mOktaRepo.setEncryptionManager(encryptionManager);
+        }
+    }
+
+    /**
+     * Re-encrypts all stored records with another encryption manager, and uses the manager for
+     * all operations afterwards. See {@link OktaRepository#migrate(EncryptionManager,
+     * java.util.Collection, int, MigrationListener)} for batching and resuming.
+     *
+     * @param encryptionManager the encryption manager to migrate to
+     * @param batchSize         the records written per transaction, zero or less for one
+     * @param listener          notified after each batch, may be null
+     * @return the migration statistics
+     * @throws EncryptionException if the records can't be decrypted or encrypted
+     */
+    public OktaRepository.MigrationResult migrateTo(EncryptionManager encryptionManager,
+                                                    int batchSize,
+                                                    @Nullable MigrationListener listener)
+            throws EncryptionException {
+        flush();
+        synchronized (mTokenLock) {
+            mPersisted = null;
+            mTokenResponseReadable = null;
+            return mOktaRepo.migrate(encryptionManager, Arrays.asList(
+                    ProviderConfiguration.RESTORE.getKey(), WebRequest.RESTORE.getKey(),
+                    TokenResponse.RESTORE.getKey(), SESSION.getKey(),
+                    REFRESH_TOKEN.getKey()), batchSize, listener);
+        }
+    }
+
+    private void persist(Persistable persistable) throws EncryptionException {
+        if (persistable instanceof TokenResponse) {
+            saveTokenResponse((TokenResponse) persistable);
+        } else {
+            mOktaRepo.save(persistable);
+        }
+    }
+
+    private void remove(String key) {
+        if (TokenResponse.RESTORE.getKey().equals(key)) {
+            deleteTokenResponse();
+        } else {
+            mOktaRepo.delete(key);
+        }
+    }
+
+    private void enqueue(String key, @Nullable Persistable persistable) {
+        PendingWrite pending = new PendingWrite(persistable);
+        mPendingWrites.put(key, pending);
+        mPersistenceExecutor.get().execute(() -> {
+            try {
+                if (persistable == null) {
+                    remove(key);
+                } else {
+                    persist(persistable);
+                }
+                //Only clear if no newer write has been queued for the key.
+                mPendingWrites.remove(key, pending);
+            } catch (EncryptionException | RuntimeException e) {
+                Log.w(TAG, "Failed to persist " + key, e);
+                mPersistenceError.compareAndSet(null, e);
+            }
+        });
+    }
+
+    @VisibleForTesting
+    void awaitPendingWrites() {
+        if (mPersistenceExecutor == null) {
+            return;
+        }
+        try {
+            mPersistenceExecutor.get().submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            //NO-OP the task is empty.
+        }
+    }
+
+    private void throwPersistenceError() throws EncryptionException {
+        Exception error = mPersistenceError.getAndSet(null);
+        if (error instanceof EncryptionException) {
+            throw (EncryptionException) error;
+        } else if (error != null) {
+            throw (RuntimeException) error;
+        }
+    }
+
+    private void saveTokenResponse(TokenResponse tokenResponse) throws EncryptionException {
+        synchronized (mTokenLock) {
+            Snapshot persisted = mPersisted;
+            //Invalidate until every record is written so a failure leads to a full rewrite.
+            mPersisted = null;
+            mTokenResponseReadable = null;
+            if (persisted != null && !persisted.isCurrent(mOktaRepo)) {
+                //Changed through another state on the same storage.
+                persisted = null;
+            }
+            Snapshot snapshot = new Snapshot();
+            List<TokenRecord> saves = new ArrayList<>();
+            List<String> deletes = new ArrayList<>();
+            addIfChanged(REFRESH_TOKEN, tokenResponse.getRefreshToken(), persisted, snapshot,
+                    saves, deletes);
+            addIfChanged(SESSION, tokenResponse.persistSession(), persisted, snapshot, saves,
+                    deletes);
+            if (persisted == null && mOktaRepo.contains(TokenResponse.RESTORE)) {
+                deletes.add(TokenResponse.RESTORE.getKey());
+            }
+            if (!saves.isEmpty() || !deletes.isEmpty()) {
+                snapshot.mStored.putAll(mOktaRepo.apply(saves, deletes));
+            }
+            mPersisted = snapshot;
+            mTokenResponseReadable = true;
+        }
+    }
+
+    private String getRecord(TokenRecord record, Snapshot snapshot)
+            throws EncryptionException {
+        //Read before decrypting, a write in between leads to a mismatch and a full rewrite.
+        snapshot.mStored.put(record.getKey(), mOktaRepo.getStoredValue(record.getKey()));
+        TokenRecord restored = mOktaRepo.get(record);
+        String value = restored == null ? null : restored.persist();
+        snapshot.mValues.put(record.getKey(), value);
+        return value;
+    }
+
+    private static void addIfChanged(TokenRecord record, String value,
+                                     @Nullable Snapshot persisted, Snapshot snapshot,
+                                     List<TokenRecord> saves, List<String> deletes) {
+        String key = record.getKey();
+        snapshot.mValues.put(key, value);
+        if (persisted != null && TextUtils.equals(persisted.mValues.get(key), value)) {
+            snapshot.mStored.put(key, persisted.mStored.get(key));
+            return;
+        }
+        if (value == null) {
+            deletes.add(record.getKey());
+        } else {
+            saves.add(new TokenRecord(record.getKey(), value));
+        }
+    }
+
+    private void deleteTokenResponse() {
+        synchronized (mTokenLock) {
+            mPersisted = null;
+            mTokenResponseReadable = false;
+            try {
+                mOktaRepo.apply(Collections.emptyList(), Arrays.asList(SESSION.getKey(),
+                        REFRESH_TOKEN.getKey(), TokenResponse.RESTORE.getKey()));
+            } catch (EncryptionException e) {
+                //NO-OP nothing is encrypted.
+            }
+        }
+    }
+
+    /*
+     * The token records as last read or written by this state: the decrypted values, to skip
+     * unchanged records, and the values in the storage, to detect that another state on the
+     * same storage changed them since.
+     */
+    private static final class Snapshot {
+        private final Map<String, String> mValues = new HashMap<>();
+        private final Map<String, String> mStored = new HashMap<>();
+
+        boolean isCurrent(OktaRepository repository) throws EncryptionException {
+            for (Map.Entry<String, String> entry : mStored.entrySet()) {
+                if (!TextUtils.equals(entry.getValue(),
+                        repository.getStoredValue(entry.getKey()))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class PendingWrite {
+        //null for a delete.
+        @Nullable
+        private final Persistable mPersistable;
+
+        PendingWrite(@Nullable Persistable persistable) {
+            mPersistable = persistable;
+        }
     }
 }
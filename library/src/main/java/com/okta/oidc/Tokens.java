@@ -63,7 +63,7 @@ public class Tokens {
     @RestrictTo(RestrictTo.Scope.LIBRARY)
     public Tokens(@NonNull TokenResponse response) {
         this(response.getIdToken(), response.getAccessToken(),
-                response.getRefreshToken(), Integer.parseInt(response.getExpiresIn()),
+                response.getRefreshToken(), response.getExpiresInSeconds(),
                 TextUtils.isEmpty(response.getScope()) ? null : response.getScope().split(" "),
                 response.getExpiresAt());
     }
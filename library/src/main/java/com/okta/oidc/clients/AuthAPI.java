@@ -28,6 +28,8 @@ import com.okta.oidc.OIDCConfig;
 import com.okta.oidc.OktaState;
 import com.okta.oidc.Tokens;
 import com.okta.oidc.clients.sessions.SyncSessionClient;
+import com.okta.oidc.clients.sessions.SyncSessionClientFactoryImpl;
+import com.okta.oidc.net.HttpClientImpl;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.net.request.BaseRequest;
 import com.okta.oidc.net.request.ConfigurationRequest;
@@ -38,13 +40,19 @@ import com.okta.oidc.net.request.web.AuthorizeRequest;
 import com.okta.oidc.net.request.web.WebRequest;
 import com.okta.oidc.net.response.web.AuthorizeResponse;
 import com.okta.oidc.net.response.web.WebResponse;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
 import com.okta.oidc.storage.OktaRepository;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
+import com.okta.oidc.util.LazyExecutor;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -75,6 +83,9 @@ public class AuthAPI {
     protected int mSignOutStatus;
 
     protected AtomicBoolean mCancel = new AtomicBoolean();
+    //Second http client used while revoking tokens concurrently.
+    private volatile OktaHttpClient mRevokeHttpClient;
+    private static final LazyExecutor sRevokeExecutor = new LazyExecutor(TAG, 2, false);
     protected AtomicReference<WeakReference<BaseRequest>> mCurrentRequest =
             new AtomicReference<>(new WeakReference<>(null));
 
@@ -83,9 +94,13 @@ public class AuthAPI {
                       OktaStorage oktaStorage,
                       EncryptionManager encryptionManager,
                       boolean requireHardwareBackedKeyStore,
-                      boolean cacheMode) {
-        mOktaState = new OktaState(new OktaRepository(oktaStorage, context, encryptionManager,
-                requireHardwareBackedKeyStore, cacheMode));
+                      boolean cacheMode,
+                      boolean backgroundPersistence,
+                      KeystoreRetryPolicy keystoreRetryPolicy) {
+        OktaRepository repository = new OktaRepository(oktaStorage, context, encryptionManager,
+                requireHardwareBackedKeyStore, cacheMode);
+        repository.setRetryPolicy(keystoreRetryPolicy);
+        mOktaState = new OktaState(repository, backgroundPersistence);
         mOidcConfig = oidcConfig;
     }
 
@@ -171,6 +186,10 @@ public class AuthAPI {
     public void cancel() {
         mCancel.set(true);
         mHttpClient.cancel();
+        OktaHttpClient revokeHttpClient = mRevokeHttpClient;
+        if (revokeHttpClient != null) {
+            revokeHttpClient.cancel();
+        }
         if (mCurrentRequest.get().get() != null) {
             mCurrentRequest.get().get().cancelRequest();
         }
@@ -229,6 +248,77 @@ public class AuthAPI {
         checkIfCanceled();
     }
 
+    /*
+     * Starts revoking the tokens selected by the sign out flags on background threads, so the
+     * caller can do other sign out work meanwhile. Http clients run one request at a time, the
+     * two tokens are revoked concurrently only if a second client can be created, otherwise
+     * one after the other. Use awaitRevokeTokens to collect the FAILED_* status bits.
+     */
+    protected List<Future<Integer>> startRevokeTokens(SyncSessionClient client) {
+        final boolean revokeAccessToken =
+                (mSignOutFlags & REVOKE_ACCESS_TOKEN) == REVOKE_ACCESS_TOKEN;
+        final boolean revokeRefreshToken =
+                (mSignOutFlags & REVOKE_REFRESH_TOKEN) == REVOKE_REFRESH_TOKEN;
+        List<Future<Integer>> revocations = new ArrayList<>();
+        OktaHttpClient refreshHttpClient = null;
+        //Subclasses may customize connections so only the default client is duplicated.
+        if (revokeAccessToken && revokeRefreshToken
+                && mHttpClient.getClass() == HttpClientImpl.class) {
+            refreshHttpClient = ((HttpClientImpl) mHttpClient).newClient();
+        }
+        if (refreshHttpClient != null) {
+            mRevokeHttpClient = refreshHttpClient;
+            SyncSessionClient refreshClient = new SyncSessionClientFactoryImpl()
+                    .createClient(mOidcConfig, mOktaState, refreshHttpClient);
+            revocations.add(sRevokeExecutor.get().submit(() -> {
+                int status = revoke(refreshClient, REVOKE_REFRESH_TOKEN);
+                checkIfCanceled();
+                return status;
+            }));
+        }
+        final boolean revokeRefreshTokenInSequence = revokeRefreshToken
+                && refreshHttpClient == null;
+        if (revokeAccessToken || revokeRefreshTokenInSequence) {
+            revocations.add(sRevokeExecutor.get().submit(() -> {
+                int status = 0;
+                if (revokeAccessToken) {
+                    status |= revoke(client, REVOKE_ACCESS_TOKEN);
+                    checkIfCanceled();
+                }
+                if (revokeRefreshTokenInSequence) {
+                    status |= revoke(client, REVOKE_REFRESH_TOKEN);
+                    checkIfCanceled();
+                }
+                return status;
+            }));
+        }
+        return revocations;
+    }
+
+    protected void awaitRevokeTokens(List<Future<Integer>> revocations) throws IOException {
+        try {
+            for (Future<Integer> revocation : revocations) {
+                try {
+                    mSignOutStatus |= revocation.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    Log.w(TAG, "Revoke token failure", e.getCause());
+                    mSignOutStatus |= (mSignOutFlags & REVOKE_ACCESS_TOKEN) == 0 ? 0
+                            : FAILED_REVOKE_ACCESS_TOKEN;
+                    mSignOutStatus |= (mSignOutFlags & REVOKE_REFRESH_TOKEN) == 0 ? 0
+                            : FAILED_REVOKE_REFRESH_TOKEN;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Canceled", e);
+                }
+            }
+        } finally {
+            mRevokeHttpClient = null;
+        }
+    }
+
     @RestrictTo(TESTS)
     public int getSignOutFlags() {
         return mSignOutFlags;
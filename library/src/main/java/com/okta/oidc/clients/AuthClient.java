@@ -15,11 +15,14 @@
 
 package com.okta.oidc.clients;
 
+import androidx.annotation.Nullable;
+
 import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.RequestCallback;
 import com.okta.oidc.ResultCallback;
 import com.okta.oidc.clients.sessions.SessionClient;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 
@@ -62,6 +65,20 @@ public interface AuthClient extends BaseAuth<SessionClient> {
      */
     void migrateTo(EncryptionManager manager) throws AuthorizationException;
 
+    /**
+     * Migrates to another Encryption Manager, writing the records in batches. Each batch is
+     * written atomically if the storage is a
+     * {@link com.okta.oidc.storage.TransactionalStorage}. If the migration is interrupted,
+     * calling this method again with the same manager continues with the remaining records.
+     *
+     * @param manager   new Encryption Manager
+     * @param batchSize the records written per batch, zero or less to write all at once
+     * @param listener  notified of the progress after each batch, may be null
+     * @throws AuthorizationException exception if migration fails.
+     */
+    void migrateTo(EncryptionManager manager, int batchSize, @Nullable MigrationListener listener)
+            throws AuthorizationException;
+
     /**
      * Convenience method to completely sign out of application.
      * Performs the following operations in order:
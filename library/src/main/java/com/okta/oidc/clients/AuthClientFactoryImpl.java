@@ -31,7 +31,7 @@ import java.util.concurrent.Executor;
  * @hide
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY)
-public class AuthClientFactoryImpl implements ClientFactory<AuthClient> {
+public class AuthClientFactoryImpl extends BaseClientFactory<AuthClient> {
     private Executor mCallbackExecutor;
 
     public AuthClientFactoryImpl(@Nullable Executor executor) {
@@ -48,6 +48,6 @@ public class AuthClientFactoryImpl implements ClientFactory<AuthClient> {
                                    boolean cacheMode) {
         return new AuthClientImpl(mCallbackExecutor, oidcConfig, context, oktaStorage,
                 encryptionManager, httpClient, requireHardwareBackedKeyStore,
-                cacheMode);
+                cacheMode, isBackgroundPersistence(), getKeystoreRetryPolicy());
     }
 }
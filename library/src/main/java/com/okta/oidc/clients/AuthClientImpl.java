@@ -19,6 +19,7 @@ import android.content.Context;
 import android.os.Process;
 
 import androidx.annotation.AnyThread;
+import androidx.annotation.Nullable;
 
 import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.OIDCConfig;
@@ -29,6 +30,8 @@ import com.okta.oidc.clients.sessions.SessionClient;
 import com.okta.oidc.clients.sessions.SessionClientFactoryImpl;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
@@ -49,10 +52,13 @@ class AuthClientImpl implements AuthClient {
                    EncryptionManager encryptionManager,
                    OktaHttpClient httpClient,
                    boolean requireHardwareBackedKeyStore,
-                   boolean cacheMode) {
-        mSyncNativeAuthClient = new SyncAuthClientFactory().createClient(oidcConfig, context,
+                   boolean cacheMode,
+                   boolean backgroundPersistence,
+                   KeystoreRetryPolicy keystoreRetryPolicy) {
+        mSyncNativeAuthClient = new SyncAuthClientImpl(oidcConfig, context,
                 oktaStorage, encryptionManager, httpClient,
-                requireHardwareBackedKeyStore, cacheMode);
+                requireHardwareBackedKeyStore, cacheMode, backgroundPersistence,
+                keystoreRetryPolicy);
 
         mSessionImpl = new SessionClientFactoryImpl(executor)
                 .createClient(mSyncNativeAuthClient.getSessionClient());
@@ -97,6 +103,12 @@ class AuthClientImpl implements AuthClient {
         getSessionClient().migrateTo(manager);
     }
 
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        getSessionClient().migrateTo(manager, batchSize, listener);
+    }
+
     @Override
     public SessionClient getSessionClient() {
         return mSessionImpl;
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.clients;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.okta.oidc.storage.KeystoreRetryPolicy;
+
+/**
+ * Base of the client factories of this library. Options added to the builder after
+ * {@link ClientFactory} was published are set on the factory by the builder before it creates
+ * the client, so the {@link ClientFactory} interface implemented by apps doesn't change.
+ *
+ * @param <A> the type of client to create
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public abstract class BaseClientFactory<A> implements ClientFactory<A> {
+    private boolean mBackgroundPersistence;
+    @Nullable
+    private KeystoreRetryPolicy mKeystoreRetryPolicy;
+
+    /**
+     * Sets if the created clients encrypt and persist data on a background thread.
+     *
+     * @param backgroundPersistence true to persist on a background thread
+     */
+    public void setBackgroundPersistence(boolean backgroundPersistence) {
+        mBackgroundPersistence = backgroundPersistence;
+    }
+
+    protected boolean isBackgroundPersistence() {
+        return mBackgroundPersistence;
+    }
+
+    /**
+     * Sets how the created clients retry transient keystore errors.
+     *
+     * @param keystoreRetryPolicy the retry policy, null for the default policy
+     */
+    public void setKeystoreRetryPolicy(@Nullable KeystoreRetryPolicy keystoreRetryPolicy) {
+        mKeystoreRetryPolicy = keystoreRetryPolicy;
+    }
+
+    @Nullable
+    protected KeystoreRetryPolicy getKeystoreRetryPolicy() {
+        return mKeystoreRetryPolicy;
+    }
+}
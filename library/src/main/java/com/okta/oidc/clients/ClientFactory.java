@@ -37,6 +37,7 @@ public interface ClientFactory<A> {
      * @param encryptionManager             the encryption manager
      * @param httpClient                    the http client
      * @param requireHardwareBackedKeyStore persist in storage only if hardware backed keystore
+     * @param cacheMode                     keep decrypted data in memory
      * @return the type of auth client
      */
     A createClient(OIDCConfig oidcConfig,
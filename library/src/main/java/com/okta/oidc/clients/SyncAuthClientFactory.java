@@ -25,7 +25,7 @@ import com.okta.oidc.storage.security.EncryptionManager;
 /**
  * Client factory to build a synchronous authentication client.
  */
-public class SyncAuthClientFactory implements ClientFactory<SyncAuthClient> {
+public class SyncAuthClientFactory extends BaseClientFactory<SyncAuthClient> {
     @Override
     public SyncAuthClientImpl createClient(OIDCConfig oidcConfig,
                                            Context context,
@@ -35,6 +35,7 @@ public class SyncAuthClientFactory implements ClientFactory<SyncAuthClient> {
                                            boolean requireHardwareBackedKeyStore,
                                            boolean cacheMode) {
         return new SyncAuthClientImpl(oidcConfig, context, oktaStorage, encryptionManager,
-                httpClient, requireHardwareBackedKeyStore, cacheMode);
+                httpClient, requireHardwareBackedKeyStore, cacheMode, isBackgroundPersistence(),
+                getKeystoreRetryPolicy());
     }
 }
@@ -33,6 +33,8 @@ import com.okta.oidc.net.request.web.AuthorizeRequest;
 import com.okta.oidc.net.response.TokenResponse;
 import com.okta.oidc.net.response.web.AuthorizeResponse;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
@@ -51,9 +53,12 @@ class SyncAuthClientImpl extends AuthAPI implements SyncAuthClient {
                        EncryptionManager encryptionManager,
                        OktaHttpClient httpClient,
                        boolean requireHardwareBackedKeyStore,
-                       boolean cacheMode) {
+                       boolean cacheMode,
+                       boolean backgroundPersistence,
+                       KeystoreRetryPolicy keystoreRetryPolicy) {
         super(oidcConfig, context, oktaStorage, encryptionManager,
-                requireHardwareBackedKeyStore, cacheMode);
+                requireHardwareBackedKeyStore, cacheMode, backgroundPersistence,
+                keystoreRetryPolicy);
         mHttpClient = httpClient;
         sessionClient = new SyncSessionClientFactoryImpl()
                 .createClient(oidcConfig, mOktaState, httpClient);
@@ -123,6 +128,12 @@ class SyncAuthClientImpl extends AuthAPI implements SyncAuthClient {
         getSessionClient().migrateTo(manager);
     }
 
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        getSessionClient().migrateTo(manager, batchSize, listener);
+    }
+
     @Override
     public SyncSessionClient getSessionClient() {
         return this.sessionClient;
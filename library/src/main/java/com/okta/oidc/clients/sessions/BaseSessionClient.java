@@ -15,6 +15,11 @@
 
 package com.okta.oidc.clients.sessions;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.okta.oidc.storage.MigrationListener;
+import com.okta.oidc.storage.OktaAccountStore;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 
@@ -22,7 +27,10 @@ interface BaseSessionClient {
     /**
      * Checks to see if the user is authenticated. If the client have a access or ID token then
      * the user is considered authenticated and this call will return true. This does not check the
-     * validity of the access token which could be expired or revoked.
+     * validity of the access token which could be expired or revoked. The stored tokens are only
+     * decrypted by the first call. Later calls use the last known validity of the encryption
+     * keys, which is refreshed on each foreground if key validity is watched, see
+     * {@link com.okta.oidc.OktaBuilder#setWatchKeyValidity(boolean)}.
      *
      * @return the boolean
      */
@@ -37,4 +45,43 @@ interface BaseSessionClient {
      * @throws AuthorizationException exception if migration fails.
      */
     void migrateTo(EncryptionManager manager) throws AuthorizationException;
+
+    /**
+     * Migrates to another Encryption Manager, writing the records in batches. Each batch is
+     * written atomically if the storage is a
+     * {@link com.okta.oidc.storage.TransactionalStorage}. If the migration is interrupted,
+     * calling this method again with the same manager continues with the remaining records.
+     *
+     * @param manager   new Encryption Manager
+     * @param batchSize the records written per batch, zero or less to write all at once
+     * @param listener  notified of the progress after each batch, may be null
+     * @throws AuthorizationException exception if migration fails.
+     */
+    void migrateTo(EncryptionManager manager, int batchSize, @Nullable MigrationListener listener)
+            throws AuthorizationException;
+
+    /**
+     * Saves the tokens of the signed in user to an account store, so the session can be
+     * restored later with {@link #switchAccount(OktaAccountStore, OktaAccountStore.Account)}.
+     * The account is identified by the issuer, the client id and the subject of the id token.
+     *
+     * @param store the account store
+     * @return the saved account or null if the user is not signed in
+     * @throws AuthorizationException exception if the tokens can't be read or saved.
+     */
+    @Nullable
+    OktaAccountStore.Account saveAccount(@NonNull OktaAccountStore store)
+            throws AuthorizationException;
+
+    /**
+     * Makes an account of the store the active account and replaces the tokens of this client
+     * with the tokens of that account. The account must belong to the client id and issuer of
+     * this client.
+     *
+     * @param store   the account store
+     * @param account the account to switch to
+     * @throws AuthorizationException exception if the tokens can't be read or saved.
+     */
+    void switchAccount(@NonNull OktaAccountStore store, @NonNull OktaAccountStore.Account account)
+            throws AuthorizationException;
 }
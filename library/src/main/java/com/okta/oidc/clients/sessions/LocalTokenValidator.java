@@ -0,0 +1,328 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.clients.sessions;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.Gson;
+import com.okta.oidc.OIDCConfig;
+import com.okta.oidc.OktaIdToken;
+import com.okta.oidc.net.OktaHttpClient;
+import com.okta.oidc.net.params.TokenTypeHint;
+import com.okta.oidc.net.request.HttpRequestBuilder;
+import com.okta.oidc.net.request.ProviderConfiguration;
+import com.okta.oidc.net.response.IntrospectInfo;
+import com.okta.oidc.net.response.JsonWebKeySet;
+import com.okta.oidc.util.AuthorizationException;
+import com.okta.oidc.util.CodecUtil;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validates JWT access and ID tokens on the device. The expiry, issuer, audience and RS256
+ * signature are checked with the stored discovery document and the signing keys of the
+ * authorization server. The keys are fetched on first use and again when a token is signed with
+ * an unknown key. Active results are kept per token and type until the token expires.
+ */
+final class LocalTokenValidator {
+    private static final String TAG = LocalTokenValidator.class.getSimpleName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final char SECTION_SEPARATOR = '.';
+    private static final String RS256 = "RS256";
+    private static final String ALGORITHM_NONE = "none";
+    private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final long MILLIS_PER_SECOND = 1000L;
+    private static final int MAX_CACHED_RESULTS = 32;
+    //Unknown key ids refetch the keys at most once per interval.
+    private static final long KEYS_REFRESH_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final OIDCConfig mOidcConfig;
+    private final OktaIdToken.Clock mClock;
+    //Least recently used results are evicted first. Guarded by itself.
+    private final Map<String, Result> mResults =
+            new LinkedHashMap<String, Result>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                    return size() > MAX_CACHED_RESULTS;
+                }
+            };
+    private final Object mKeysLock = new Object();
+    //Guarded by mKeysLock.
+    private JsonWebKeySet mKeys;
+    private String mKeysUri;
+    private long mKeysTime;
+
+    LocalTokenValidator(@NonNull OIDCConfig oidcConfig, @NonNull OktaIdToken.Clock clock) {
+        mOidcConfig = oidcConfig;
+        mClock = clock;
+    }
+
+    /**
+     * Returns the result of a previous validation if the token has not expired since.
+     *
+     * @param token      the token
+     * @param tokenType  the type of {@link TokenTypeHint}
+     * @param introspect true to only return results of the introspect endpoint
+     * @return the result or null
+     */
+    @Nullable
+    IntrospectInfo getResult(@NonNull String token, @Nullable String tokenType,
+                             boolean introspect) {
+        String key = resultKey(token, tokenType);
+        Result result;
+        synchronized (mResults) {
+            result = mResults.get(key);
+            if (result == null) {
+                return null;
+            }
+            if (isExpired(result.mInfo.getExp())) {
+                mResults.remove(key);
+                return null;
+            }
+        }
+        return introspect && !result.mIntrospected ? null : result.mInfo;
+    }
+
+    /**
+     * Keeps the result of an active token until it expires.
+     *
+     * @param token        the token
+     * @param tokenType    the type of {@link TokenTypeHint}
+     * @param info         the validation or introspection result
+     * @param introspected true if the result came from the introspect endpoint
+     */
+    void putResult(@NonNull String token, @Nullable String tokenType,
+                   @Nullable IntrospectInfo info, boolean introspected) {
+        if (info == null || !info.isActive() || isExpired(info.getExp())) {
+            return;
+        }
+        synchronized (mResults) {
+            mResults.put(resultKey(token, tokenType), new Result(info, introspected));
+        }
+    }
+
+    void clear() {
+        synchronized (mResults) {
+            mResults.clear();
+        }
+    }
+
+    /**
+     * Validates the token on the device.
+     *
+     * @param token                 the token
+     * @param tokenType             the type of {@link TokenTypeHint}
+     * @param providerConfiguration the discovery document
+     * @param client                the client used to fetch the signing keys
+     * @return the result or null if the token can't be validated on the device
+     */
+    @WorkerThread
+    @Nullable
+    IntrospectInfo validate(@NonNull String token, @Nullable String tokenType,
+                            @NonNull ProviderConfiguration providerConfiguration,
+                            @NonNull OktaHttpClient client) {
+        if (TokenTypeHint.REFRESH_TOKEN.equals(tokenType)) {
+            return null;
+        }
+        int headerEnd = token.indexOf(SECTION_SEPARATOR);
+        int claimsEnd = headerEnd < 0 ? -1 : token.indexOf(SECTION_SEPARATOR, headerEnd + 1);
+        if (claimsEnd < 0 || token.indexOf(SECTION_SEPARATOR, claimsEnd + 1) >= 0) {
+            //opaque token
+            return null;
+        }
+        try {
+            JSONObject header = decodeJson(token, 0, headerEnd);
+            JSONObject claims = decodeJson(token, headerEnd + 1, claimsEnd);
+            String alg = header.optString("alg");
+            if (ALGORITHM_NONE.equals(alg)) {
+                return inactive();
+            } else if (!RS256.equals(alg)) {
+                return null;
+            }
+            PublicKey key = getKey(header.optString("kid", null), providerConfiguration,
+                    client);
+            if (key == null) {
+                return null;
+            }
+            Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+            signature.initVerify(key);
+            signature.update(token.substring(0, claimsEnd).getBytes(UTF_8));
+            if (!signature.verify(CodecUtil.decodeBase64(token, claimsEnd + 1,
+                    token.length()))) {
+                return inactive();
+            }
+            if (!isValid(claims, tokenType, providerConfiguration)) {
+                return inactive();
+            }
+            return active(claims, tokenType);
+        } catch (JSONException | IllegalArgumentException e) {
+            Log.d(TAG, "validate: not a JWT ", e);
+            return null;
+        } catch (GeneralSecurityException e) {
+            Log.w(TAG, "validate: ", e);
+            return null;
+        }
+    }
+
+    private boolean isValid(JSONObject claims, @Nullable String tokenType,
+                            ProviderConfiguration providerConfiguration) throws JSONException {
+        //Without a known issuer the token can't be trusted.
+        if (providerConfiguration.issuer == null
+                || !providerConfiguration.issuer.equals(claims.optString("iss"))) {
+            return false;
+        }
+        if (!claims.has("exp") || isExpired(claims.getLong("exp"))) {
+            return false;
+        }
+        long nowInSeconds = mClock.getCurrentTimeMillis() / MILLIS_PER_SECOND;
+        if (claims.optLong("nbf", 0) > nowInSeconds) {
+            return false;
+        }
+        String clientId = mOidcConfig.getClientId();
+        if (TokenTypeHint.ACCESS_TOKEN.equals(tokenType)) {
+            //The audience of an access token is the authorization server, check the client.
+            return clientId.equals(claims.optString("cid", null))
+                    && getAudience(claims, null) != null;
+        }
+        return getAudience(claims, clientId) != null;
+    }
+
+    private IntrospectInfo active(JSONObject claims, @Nullable String tokenType)
+            throws JSONException {
+        JSONObject info = new JSONObject();
+        info.put("active", true);
+        if (TokenTypeHint.ACCESS_TOKEN.equals(tokenType)) {
+            info.put("token_type", "Bearer");
+            info.put("aud", getAudience(claims, null));
+            info.put("client_id", claims.optString("cid", null));
+            JSONArray scopes = claims.optJSONArray("scp");
+            if (scopes != null) {
+                List<String> scope = new ArrayList<>(scopes.length());
+                for (int i = 0; i < scopes.length(); i++) {
+                    scope.add(scopes.getString(i));
+                }
+                info.put("scope", TextUtils.join(" ", scope));
+            }
+        } else {
+            info.put("aud", getAudience(claims, mOidcConfig.getClientId()));
+            info.put("client_id", mOidcConfig.getClientId());
+        }
+        for (String claim : new String[]{"sub", "iss", "jti", "uid"}) {
+            info.put(claim, claims.optString(claim, null));
+        }
+        for (String claim : new String[]{"exp", "iat", "nbf"}) {
+            info.put(claim, claims.optLong(claim));
+        }
+        return new Gson().fromJson(info.toString(), IntrospectInfo.class);
+    }
+
+    private static String resultKey(String token, @Nullable String tokenType) {
+        return tokenType + ' ' + token;
+    }
+
+    private static IntrospectInfo inactive() {
+        return new Gson().fromJson("{\"active\":false}", IntrospectInfo.class);
+    }
+
+    /*
+     * Returns the audience, or the expected audience if the token was issued to more than one.
+     * Null if the expected audience is missing.
+     */
+    @Nullable
+    private static String getAudience(JSONObject claims, @Nullable String expected)
+            throws JSONException {
+        JSONArray audiences = claims.optJSONArray("aud");
+        if (audiences == null) {
+            String audience = claims.optString("aud", null);
+            return expected == null || expected.equals(audience) ? audience : null;
+        }
+        for (int i = 0; i < audiences.length(); i++) {
+            if (expected == null || expected.equals(audiences.getString(i))) {
+                return audiences.getString(i);
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private PublicKey getKey(@Nullable String kid, ProviderConfiguration providerConfiguration,
+                             OktaHttpClient client) {
+        long now = mClock.getCurrentTimeMillis();
+        synchronized (mKeysLock) {
+            boolean isCurrent = mKeys != null
+                    && TextUtils.equals(mKeysUri, providerConfiguration.jwks_uri);
+            PublicKey key = isCurrent ? mKeys.getKey(kid) : null;
+            if (key != null || (isCurrent && now - mKeysTime < KEYS_REFRESH_INTERVAL)) {
+                return key;
+            }
+            //Claim the refresh so concurrent lookups don't fetch the keys as well.
+            mKeysTime = now;
+        }
+        //The request runs without the lock so lookups of known keys aren't blocked.
+        JsonWebKeySet keys;
+        try {
+            keys = HttpRequestBuilder.newJwksRequest()
+                    .config(mOidcConfig)
+                    .providerConfiguration(providerConfiguration)
+                    .createRequest()
+                    .executeRequest(client);
+        } catch (AuthorizationException e) {
+            Log.w(TAG, "getKey: ", e);
+            return null;
+        }
+        synchronized (mKeysLock) {
+            mKeys = keys;
+            mKeysUri = providerConfiguration.jwks_uri;
+            mKeysTime = now;
+        }
+        return keys.getKey(kid);
+    }
+
+    private boolean isExpired(long exp) {
+        return exp * MILLIS_PER_SECOND <= mClock.getCurrentTimeMillis();
+    }
+
+    private static JSONObject decodeJson(String token, int start, int end) throws JSONException {
+        return new JSONObject(new String(CodecUtil.decodeBase64(token, start, end), UTF_8));
+    }
+
+    private static final class Result {
+        final IntrospectInfo mInfo;
+        final boolean mIntrospected;
+
+        Result(IntrospectInfo info, boolean introspected) {
+            mInfo = info;
+            mIntrospected = introspected;
+        }
+    }
+}
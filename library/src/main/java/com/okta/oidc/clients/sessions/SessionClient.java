@@ -159,6 +159,43 @@ public interface SessionClient extends BaseSessionClient {
     void introspectToken(String token, String tokenType,
                          RequestCallback<IntrospectInfo, AuthorizationException> cb);
 
+    /**
+     * Validate token checks if a token is active without a network request when possible.
+     * JWT access and ID tokens signed with RS256 are validated on the device with the stored
+     * discovery document and the signing keys of the authorization server. Refresh tokens,
+     * opaque tokens and tokens that can't be validated on the device are sent to the introspect
+     * endpoint. Results of active tokens are kept until the token expires.
+     * Example usage:
+     * {@code
+     * <pre>
+     * client.validateToken(client.getTokens().getAccessToken(),
+     *     TokenTypeHint.ACCESS_TOKEN, false,
+     *         new RequestCallback<IntrospectInfo, AuthorizationException>() {
+     *         @Override
+     *         public void onSuccess(@NonNull IntrospectInfo result) {
+     *             //handle result.
+     *         }
+     *
+     *         @Override
+     *         public void onError(String error, AuthorizationException exception) {
+     *             //handle request error
+     *         }
+     *     }
+     * );
+     * </pre>
+     * }
+     *
+     * @param token      the access, refresh or ID token.
+     * @param tokenType  the type must be of {@link com.okta.oidc.net.params.TokenTypeHint}
+     * @param introspect true to always use the introspect endpoint for tokens without a result
+     * @param cb         the RequestCallback to be executed when request is finished.
+     */
+    default void validateToken(String token, String tokenType, boolean introspect,
+                               RequestCallback<IntrospectInfo, AuthorizationException> cb) {
+        //Implementations without local validation always introspect.
+        introspectToken(token, tokenType, cb);
+    }
+
     /**
      * Revoke token takes an access or refresh token and revokes it. Revoked tokens are considered
      * inactive at the introspection endpoint. A client may only revoke its own tokens.
@@ -27,6 +27,8 @@ import com.okta.oidc.Tokens;
 import com.okta.oidc.net.ConnectionParameters;
 import com.okta.oidc.net.response.IntrospectInfo;
 import com.okta.oidc.net.response.UserInfo;
+import com.okta.oidc.storage.MigrationListener;
+import com.okta.oidc.storage.OktaAccountStore;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 
@@ -89,6 +91,24 @@ class SessionClientImpl implements SessionClient {
         });
     }
 
+    public void validateToken(String token, String tokenType, boolean introspect,
+                              final RequestCallback<IntrospectInfo, AuthorizationException> cb) {
+        CallbackWrapper<IntrospectInfo, AuthorizationException> wrapper = new CallbackWrapper<>(cb);
+        executeSerial(wrapper, () -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            try {
+                IntrospectInfo introspectInfo = mSyncSessionClient
+                        .validateToken(token, tokenType, introspect);
+                mDispatcher.submitResults(() -> wrapper.onSuccess(introspectInfo));
+            } catch (AuthorizationException ae) {
+                mDispatcher.submitResults(() -> wrapper.onError(ae.error, ae));
+            } catch (Exception ex) {
+                mDispatcher.submitResults(() -> wrapper.onError(ex.getMessage(),
+                        new AuthorizationException(ex.getMessage(), ex)));
+            }
+        });
+    }
+
     public void revokeToken(String token,
                             final RequestCallback<Boolean, AuthorizationException> cb) {
         CallbackWrapper<Boolean, AuthorizationException> wrapper = new CallbackWrapper<>(cb);
@@ -205,6 +225,25 @@ class SessionClientImpl implements SessionClient {
         mSyncSessionClient.migrateTo(manager);
     }
 
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        mSyncSessionClient.migrateTo(manager, batchSize, listener);
+    }
+
+    @Override
+    public OktaAccountStore.Account saveAccount(@NonNull OktaAccountStore store)
+            throws AuthorizationException {
+        return mSyncSessionClient.saveAccount(store);
+    }
+
+    @Override
+    public void switchAccount(@NonNull OktaAccountStore store,
+                              @NonNull OktaAccountStore.Account account)
+            throws AuthorizationException {
+        mSyncSessionClient.switchAccount(store, account);
+    }
+
     private void cancelFuture() {
         if (mFutureTask != null && (!mFutureTask.isDone() || !mFutureTask.isCancelled())) {
             mFutureTask.cancel(true);
@@ -140,6 +140,39 @@ public interface SyncSessionClient extends BaseSessionClient {
      */
     IntrospectInfo introspectToken(String token, String tokenType) throws AuthorizationException;
 
+    /**
+     * Validate token checks if a token is active without a network request when possible.
+     * JWT access and ID tokens signed with RS256 are validated on the device: the expiry,
+     * issuer, audience and signature are checked with the stored discovery document and the
+     * signing keys of the authorization server. The keys are fetched on first use.
+     * Refresh tokens, opaque tokens and tokens that can't be validated on the device are sent to
+     * the introspect endpoint, see {@link #introspectToken(String, String)}. Results of active
+     * tokens are kept until the token expires.
+     * Example usage:
+     * {@code
+     * <pre>
+     * try {
+     *     IntrospectInfo info = client.validateToken(client.getTokens().getAccessToken(),
+     *                                                TokenTypeHint.ACCESS_TOKEN, false);
+     *     //handle results
+     * } catch (AuthorizationException ex) {
+     *     //handle exception
+     * }
+     * </pre>
+     * }
+     *
+     * @param token      the token
+     * @param tokenType  the token type
+     * @param introspect true to always use the introspect endpoint for tokens without a result
+     * @return the introspect info {@link IntrospectInfo}
+     * @throws AuthorizationException the authorization exception
+     */
+    default IntrospectInfo validateToken(String token, String tokenType, boolean introspect)
+            throws AuthorizationException {
+        //Implementations without local validation always introspect.
+        return introspectToken(token, tokenType);
+    }
+
     /**
      * Revoke token takes an access or refresh token and revokes it. Revoked tokens are considered
      * inactive at the introspection endpoint. A client may only revoke its own tokens.
@@ -16,6 +16,7 @@
 package com.okta.oidc.clients.sessions;
 
 import android.net.Uri;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -36,6 +37,8 @@ import com.okta.oidc.net.request.web.WebRequest;
 import com.okta.oidc.net.response.IntrospectInfo;
 import com.okta.oidc.net.response.TokenResponse;
 import com.okta.oidc.net.response.UserInfo;
+import com.okta.oidc.storage.MigrationListener;
+import com.okta.oidc.storage.OktaAccountStore;
 import com.okta.oidc.storage.OktaRepository;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
@@ -53,6 +56,11 @@ class SyncSessionClientImpl implements SyncSessionClient {
     private OIDCConfig mOidcConfig;
     private OktaState mOktaState;
     OktaHttpClient mHttpClient;
+    private final LocalTokenValidator mTokenValidator;
+    private final Object mAccountLock = new Object();
+    //The store and account the current tokens were saved to or restored from.
+    private OktaAccountStore mAccountStore;
+    private OktaAccountStore.Account mAccount;
     private AtomicReference<WeakReference<BaseRequest>> mCurrentRequest =
             new AtomicReference<>(new WeakReference<>(null));
 
@@ -61,6 +69,7 @@ class SyncSessionClientImpl implements SyncSessionClient {
         mOidcConfig = oidcConfig;
         mOktaState = oktaState;
         mHttpClient = httpClient;
+        mTokenValidator = new LocalTokenValidator(oidcConfig, System::currentTimeMillis);
     }
 
     AuthorizedRequest createAuthorizedRequest(@NonNull Uri uri,
@@ -150,6 +159,33 @@ class SyncSessionClientImpl implements SyncSessionClient {
         }
     }
 
+    @Override
+    public IntrospectInfo validateToken(String token, String tokenType, boolean introspect)
+            throws AuthorizationException {
+        IntrospectInfo info = mTokenValidator.getResult(token, tokenType, introspect);
+        if (info != null) {
+            return info;
+        }
+        try {
+            ProviderConfiguration providerConfiguration = mOktaState.getProviderConfiguration();
+            if (!introspect && providerConfiguration != null) {
+                info = mTokenValidator.validate(token, tokenType, providerConfiguration,
+                        mHttpClient);
+            }
+            boolean introspected = info == null;
+            if (introspected) {
+                IntrospectRequest request = introspectTokenRequest(token, tokenType,
+                        providerConfiguration);
+                mCurrentRequest.set(new WeakReference<>(request));
+                info = request.executeRequest(mHttpClient);
+            }
+            mTokenValidator.putResult(token, tokenType, info, introspected);
+            return info;
+        } catch (OktaRepository.EncryptionException e) {
+            throw AuthorizationException.EncryptionErrors.byEncryptionException(e);
+        }
+    }
+
     RevokeTokenRequest revokeTokenRequest(String token, ProviderConfiguration providerConfiguration)
             throws AuthorizationException {
         return HttpRequestBuilder.newRevokeTokenRequest()
@@ -184,11 +220,13 @@ class SyncSessionClientImpl implements SyncSessionClient {
     @Override
     public Tokens refreshToken() throws AuthorizationException {
         try {
+            TokenResponse previous = mOktaState.getTokenResponse();
             RefreshTokenRequest request = refreshTokenRequest(mOktaState.getProviderConfiguration(),
-                    mOktaState.getTokenResponse());
+                    previous);
             mCurrentRequest.set(new WeakReference<>(request));
             TokenResponse tokenResponse = request.executeRequest(mHttpClient);
             mOktaState.save(tokenResponse);
+            updateAccount(previous, tokenResponse);
             return new Tokens(tokenResponse);
         } catch (OktaRepository.EncryptionException e) {
             throw AuthorizationException.EncryptionErrors.byEncryptionException(e);
@@ -214,6 +252,10 @@ class SyncSessionClientImpl implements SyncSessionClient {
         if (!hasTokenResponse) {
             return false;
         }
+        Boolean readable = mOktaState.isTokenResponseReadable();
+        if (readable != null) {
+            return readable;
+        }
         try {
             TokenResponse tokenResponse = mOktaState.getTokenResponse();
             return tokenResponse != null;
@@ -238,6 +280,8 @@ class SyncSessionClientImpl implements SyncSessionClient {
         mOktaState.delete(TokenResponse.RESTORE.getKey());
         mOktaState.delete(WebRequest.RESTORE.getKey());
         mOktaState.setCurrentState(IDLE);
+        mTokenValidator.clear();
+        setAccount(null, null);
     }
 
     @Override
@@ -250,24 +294,91 @@ class SyncSessionClientImpl implements SyncSessionClient {
 
     @Override
     public void migrateTo(EncryptionManager manager) throws AuthorizationException {
-        try {
-            final ProviderConfiguration providerConfiguration =
-                    mOktaState.getProviderConfiguration();
-            final TokenResponse tokenResponse = mOktaState.getTokenResponse();
-            final WebRequest authorizedRequest = mOktaState.getAuthorizeRequest();
+        migrateTo(manager, 0, null);
+    }
 
-            clear();
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        try {
+            mOktaState.migrateTo(manager, batchSize, listener);
+        } catch (OktaRepository.EncryptionException e) {
+            throw AuthorizationException.EncryptionErrors.byEncryptionException(e);
+        }
+    }
 
-            mOktaState.setEncryptionManager(manager);
+    @Override
+    public OktaAccountStore.Account saveAccount(@NonNull OktaAccountStore store)
+            throws AuthorizationException {
+        try {
+            TokenResponse response = mOktaState.getTokenResponse();
+            ProviderConfiguration providerConfiguration = mOktaState.getProviderConfiguration();
+            if (response == null || providerConfiguration == null) {
+                return null;
+            }
+            OktaAccountStore.Account account = store.save(providerConfiguration.issuer,
+                    mOidcConfig.getClientId(), response);
+            setAccount(store, account);
+            return account;
+        } catch (OktaRepository.EncryptionException e) {
+            throw AuthorizationException.EncryptionErrors.byEncryptionException(e);
+        }
+    }
 
-            mOktaState.save(providerConfiguration);
-            mOktaState.save(tokenResponse);
-            mOktaState.save(authorizedRequest);
+    @Override
+    public void switchAccount(@NonNull OktaAccountStore store,
+                              @NonNull OktaAccountStore.Account account)
+            throws AuthorizationException {
+        if (!mOidcConfig.getClientId().equals(account.getClientId())) {
+            throw new IllegalArgumentException("Account belongs to another client");
+        }
+        try {
+            ProviderConfiguration providerConfiguration = mOktaState.getProviderConfiguration();
+            if (providerConfiguration != null &&
+                    !TextUtils.equals(providerConfiguration.issuer, account.getIssuer())) {
+                throw new IllegalArgumentException("Account belongs to another issuer");
+            }
+            TokenResponse response = store.getTokenResponse(account);
+            if (response == null) {
+                throw new IllegalArgumentException("Account is not stored");
+            }
+            //Keep the latest tokens of the outgoing account, they may have been refreshed.
+            TokenResponse current = mOktaState.getTokenResponse();
+            if (current != null && current.getIdToken() != null &&
+                    providerConfiguration != null) {
+                store.save(providerConfiguration.issuer, mOidcConfig.getClientId(), current);
+            }
+            store.switchTo(account);
+            mOktaState.save(response);
+            mTokenValidator.clear();
+            setAccount(store, account);
         } catch (OktaRepository.EncryptionException e) {
             throw AuthorizationException.EncryptionErrors.byEncryptionException(e);
         }
     }
 
+    private void setAccount(OktaAccountStore store, OktaAccountStore.Account account) {
+        synchronized (mAccountLock) {
+            mAccountStore = store;
+            mAccount = account;
+        }
+    }
+
+    private void updateAccount(TokenResponse previous, TokenResponse tokenResponse)
+            throws OktaRepository.EncryptionException {
+        OktaAccountStore store;
+        OktaAccountStore.Account account;
+        synchronized (mAccountLock) {
+            store = mAccountStore;
+            account = mAccount;
+        }
+        //The store is only updated while it still has the tokens that were refreshed, a new
+        //sign in since the last switch is not written over the account.
+        if (store != null && previous != null && !store.update(account, previous, tokenResponse)) {
+            setAccount(null, null);
+        }
+    }
+
     OktaState getOktaState() {
         return mOktaState;
     }
@@ -25,6 +25,7 @@ import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.clients.BaseAuth;
 import com.okta.oidc.clients.sessions.SyncSessionClient;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 
@@ -76,6 +77,20 @@ public interface SyncWebAuthClient extends BaseAuth<SyncSessionClient> {
                   @Nullable AuthenticationPayload payload)
             throws InterruptedException;
 
+    /**
+     * Prepares the browser for {@link #signIn(Activity, AuthenticationPayload) signIn}. Creates
+     * the authorize request, then binds the Custom Tabs service of the browser, warms it up and
+     * lets it prefetch the authorize URL while the user is still on the login screen. The next
+     * sign in with an equal payload launches the prepared request with the bound session. The
+     * browser stays bound until that sign in completes.
+     * Obtains the provider configuration if needed, so don't call it on the UI thread.
+     *
+     * @param activity the activity
+     * @param payload  the {@link AuthenticationPayload payload} of the next sign in
+     * @return the result, successful if the request was prepared
+     */
+    Result prepareSignIn(@NonNull Activity activity, @Nullable AuthenticationPayload payload);
+
     /**
      * Sign out from okta. This will clear the browser session
      *
@@ -139,6 +154,20 @@ public interface SyncWebAuthClient extends BaseAuth<SyncSessionClient> {
      */
     void migrateTo(EncryptionManager manager) throws AuthorizationException;
 
+    /**
+     * Migrates to another Encryption Manager, writing the records in batches. Each batch is
+     * written atomically if the storage is a
+     * {@link com.okta.oidc.storage.TransactionalStorage}. If the migration is interrupted,
+     * calling this method again with the same manager continues with the remaining records.
+     *
+     * @param manager   new Encryption Manager
+     * @param batchSize the records written per batch, zero or less to write all at once
+     * @param listener  notified of the progress after each batch, may be null
+     * @throws AuthorizationException exception if migration fails.
+     */
+    void migrateTo(EncryptionManager manager, int batchSize, @Nullable MigrationListener listener)
+            throws AuthorizationException;
+
     /**
      * Use this method to handle the onActivityResult. If using regular activity and chrome custom
      * tabs passes data back to the main activity. This must be called to parse the results of
@@ -21,12 +21,12 @@ import androidx.annotation.Nullable;
 
 import com.okta.oidc.CustomTabOptions;
 import com.okta.oidc.OIDCConfig;
-import com.okta.oidc.clients.ClientFactory;
+import com.okta.oidc.clients.BaseClientFactory;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 
-public class SyncWebAuthClientFactory implements ClientFactory<SyncWebAuthClient> {
+public class SyncWebAuthClientFactory extends BaseClientFactory<SyncWebAuthClient> {
     private CustomTabOptions mCustomTabOptions;
     private String[] mSupportedBrowsers;
 
@@ -45,7 +45,7 @@ public class SyncWebAuthClientFactory implements ClientFactory<SyncWebAuthClient
                                           boolean requireHardwareBackedKeyStore,
                                           boolean cacheMode) {
         return new SyncWebAuthClientImpl(oidcConfig, context, oktaStorage, encryptionManager,
-                httpClient, requireHardwareBackedKeyStore, cacheMode,
-                mCustomTabOptions, mSupportedBrowsers);
+                httpClient, requireHardwareBackedKeyStore, cacheMode, isBackgroundPersistence(),
+                getKeystoreRetryPolicy(), mCustomTabOptions, mSupportedBrowsers);
     }
 }
@@ -40,6 +40,8 @@ import com.okta.oidc.AuthenticationResultHandler;
 import com.okta.oidc.AuthenticationResultHandler.AuthResultListener;
 import com.okta.oidc.AuthenticationResultHandler.StateResult;
 import com.okta.oidc.CustomTabOptions;
+import com.okta.oidc.CustomTabsBrowsers;
+import com.okta.oidc.CustomTabsWarmup;
 import com.okta.oidc.OIDCConfig;
 import com.okta.oidc.OktaRedirectActivity;
 import com.okta.oidc.clients.AuthAPI;
@@ -55,18 +57,26 @@ import com.okta.oidc.net.request.web.WebRequest;
 import com.okta.oidc.net.response.TokenResponse;
 import com.okta.oidc.net.response.web.AuthorizeResponse;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.OktaRepository;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 import com.okta.oidc.util.AuthorizationException.EncryptionErrors;
 import com.okta.oidc.util.CodeVerifierUtil;
+import com.okta.oidc.util.LazyExecutor;
 
 import java.io.IOException;
 import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 
 import static androidx.annotation.RestrictTo.Scope.TESTS;
@@ -82,11 +92,17 @@ import static com.okta.oidc.util.AuthorizationException.TYPE_OAUTH_REGISTRATION_
 
 class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
     private static final String TAG = SyncWebAuthClientImpl.class.getSimpleName();
+    //Runs the sign in steps that overlap with discovery and the browser launch.
+    private static final LazyExecutor sPipelineExecutor = new LazyExecutor(TAG);
 
     private String[] mSupportedBrowsers;
     private CustomTabOptions mCustomTabOptions;
     private SyncSessionClient mSessionClient;
     private AuthenticationResultHandler mHandler;
+    //The request created by prepareSignIn, used once by the next sign in.
+    private final AtomicReference<PreparedSignIn> mPreparedSignIn = new AtomicReference<>();
+    //Saves the authorize request while the browser launch is prepared.
+    private volatile Future<?> mRequestSave;
 
     SyncWebAuthClientImpl(OIDCConfig oidcConfig,
                           Context context,
@@ -95,10 +111,12 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
                           OktaHttpClient httpClient,
                           boolean requireHardwareBackedKeyStore,
                           boolean cacheMode,
+                          boolean backgroundPersistence,
+                          KeystoreRetryPolicy keystoreRetryPolicy,
                           CustomTabOptions customTabOptions,
                           String... supportedBrowsers) {
         super(oidcConfig, context, oktaStorage, encryptionManager, requireHardwareBackedKeyStore,
-                cacheMode);
+                cacheMode, backgroundPersistence, keystoreRetryPolicy);
         mSupportedBrowsers = supportedBrowsers;
         mCustomTabOptions = customTabOptions;
         mHttpClient = httpClient;
@@ -181,7 +199,7 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
     }
 
     private StateResult startSignIn(Activity activity, WebRequest request)
-            throws InterruptedException {
+            throws InterruptedException, OktaRepository.EncryptionException {
         AtomicReference<StateResult> resultWrapper = new AtomicReference<>();
         CountDownLatch latch = new CountDownLatch(1);
 
@@ -191,6 +209,7 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
                 resetCurrentState();
                 return StateResult.canceled();
             }
+            awaitRequestSave();
             activity.runOnUiThread(() -> addLoginFragment(
                 request,
                 mCustomTabOptions,
@@ -200,6 +219,7 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
         } else {
             Intent intent = createAuthIntent(activity, request.toUri(), mCustomTabOptions,
                     mSupportedBrowsers);
+            awaitRequestSave();
             activity.startActivityForResult(intent, REQUEST_CODE_SIGN_IN);
         }
         mHandler.setAuthenticationListener((result, type) -> {
@@ -210,6 +230,49 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
         return resultWrapper.get();
     }
 
+    @Override
+    @WorkerThread
+    public Result prepareSignIn(@NonNull Activity activity,
+                                @Nullable AuthenticationPayload payload) {
+        if (isInProgress()) {
+            return Result.cancel();
+        }
+        //Keeps a sign in from starting until the request is prepared.
+        mOktaState.setCurrentState(State.OBTAIN_CONFIGURATION);
+        try {
+            ProviderConfiguration configuration = obtainNewConfiguration();
+            WebRequest request = new AuthorizeRequest.Builder()
+                    .config(mOidcConfig)
+                    .providerConfiguration(configuration)
+                    .authenticationPayload(payload)
+                    .create();
+            mPreparedSignIn.set(new PreparedSignIn(request, configuration, payload));
+            int matchFlag = mCustomTabOptions == null ? 0
+                    : mCustomTabOptions.getBrowserMatchAllFlag();
+            String browser = CustomTabsBrowsers.getBrowser(activity,
+                    CustomTabsBrowsers.getSupportedBrowsers(mSupportedBrowsers), matchFlag);
+            if (browser != null) {
+                CustomTabsWarmup.prepare(activity, browser, request.toUri());
+            }
+            return Result.success();
+        } catch (AuthorizationException e) {
+            return Result.error(e);
+        } finally {
+            resetCurrentState();
+        }
+    }
+
+    @Nullable
+    @VisibleForTesting
+    WebRequest takePreparedRequest(ProviderConfiguration configuration,
+                                           @Nullable AuthenticationPayload payload) {
+        PreparedSignIn prepared = mPreparedSignIn.getAndSet(null);
+        if (prepared != null && prepared.matches(configuration, payload)) {
+            return prepared.mRequest;
+        }
+        return null;
+    }
+
     @Override
     @WorkerThread
     public Result signIn(@NonNull final Activity activity,
@@ -226,14 +289,26 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
                         INVALID_REDIRECT_URI.error, errorDescription, null, null);
             }
 
+            //State, nonce and the PKCE code verifier are generated during discovery.
+            Future<AuthorizeRequest.Builder> builder = mPreparedSignIn.get() == null
+                    ? sPipelineExecutor.get().submit(AuthorizeRequest.Builder::new) : null;
             ProviderConfiguration configuration = obtainNewConfiguration();
             checkIfCanceled();
-            WebRequest request = new AuthorizeRequest.Builder()
-                    .config(mOidcConfig)
-                    .providerConfiguration(configuration)
-                    .authenticationPayload(payload)
-                    .create();
-            mOktaState.save(request);
+            WebRequest request = takePreparedRequest(configuration, payload);
+            if (request == null) {
+                request = getBuilder(builder)
+                        .config(mOidcConfig)
+                        .providerConfiguration(configuration)
+                        .authenticationPayload(payload)
+                        .create();
+            }
+            //The request is persisted while the browser intent is created. The browser is only
+            //launched once the save succeeded, a failed save is reported right away.
+            WebRequest savedRequest = request;
+            mRequestSave = sPipelineExecutor.get().submit(() -> {
+                mOktaState.save(savedRequest);
+                return null;
+            });
             mOktaState.setCurrentState(State.SIGN_IN_REQUEST);
 
             StateResult authResult = startSignIn(activity, request);
@@ -243,12 +318,55 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
                 return Result.cancel();
             }
             return Result.error(e);
-        } catch (IOException | InterruptedException e) {
-            return Result.cancel();
         } catch (OktaRepository.EncryptionException e) {
             return Result.error(EncryptionErrors.byEncryptionException(e));
+        } catch (IOException | InterruptedException e) {
+            return Result.cancel();
         } finally {
+            mRequestSave = null;
             resetCurrentState();
+            CustomTabsWarmup.release();
+        }
+    }
+
+    private static AuthorizeRequest.Builder getBuilder(
+            @Nullable Future<AuthorizeRequest.Builder> builder) throws InterruptedException {
+        if (builder != null) {
+            try {
+                return builder.get();
+            } catch (ExecutionException e) {
+                Log.d(TAG, "getBuilder: ", e);
+            }
+        }
+        return new AuthorizeRequest.Builder();
+    }
+
+    private void awaitRequestSave() throws OktaRepository.EncryptionException {
+        Future<?> save = mRequestSave;
+        if (save == null) {
+            return;
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    save.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof OktaRepository.EncryptionException) {
+                throw (OktaRepository.EncryptionException) e.getCause();
+            } else if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
@@ -356,6 +474,10 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
     @Override
     @AnyThread
     public Result signOutOfOkta(@NonNull final Activity activity) {
+        return signOutOfOkta(activity, true);
+    }
+
+    private Result signOutOfOkta(@NonNull final Activity activity, boolean removeTokens) {
         try {
             mOktaState.setCurrentState(State.SIGN_OUT_REQUEST);
             WebRequest request;
@@ -367,7 +489,7 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
                     .create();
             mOktaState.save(request);
             StateResult logoutResult = startSignOut(activity, request);
-            return processSignOutResult(logoutResult);
+            return processSignOutResult(logoutResult, removeTokens);
         } catch (InterruptedException e) {
             return Result.cancel();
         } catch (OktaRepository.EncryptionException e) {
@@ -383,6 +505,11 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
 
     @NonNull
     private Result processSignOutResult(StateResult result) {
+        return processSignOutResult(result, true);
+    }
+
+    @NonNull
+    private Result processSignOutResult(StateResult result, boolean removeTokens) {
         if (result == null) {
             return Result.error(new AuthorizationException("Result is empty",
                     new NullPointerException()));
@@ -393,7 +520,9 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
             case ERROR:
                 return Result.error(result.getException());
             case LOGGED_OUT:
-                removeTokens(getSessionClient());
+                if (removeTokens) {
+                    removeTokens(getSessionClient());
+                }
                 return Result.success();
             default:
                 return Result.error(new AuthorizationException("StateResult with invalid status: "
@@ -401,6 +530,30 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
         }
     }
 
+    private static final class PreparedSignIn {
+        private final WebRequest mRequest;
+        private final String mAuthorizationEndpoint;
+        private final Map<String, String> mParameters;
+
+        PreparedSignIn(WebRequest request, ProviderConfiguration configuration,
+                       @Nullable AuthenticationPayload payload) {
+            mRequest = request;
+            mAuthorizationEndpoint = configuration.authorization_endpoint;
+            mParameters = getParameters(payload);
+        }
+
+        boolean matches(ProviderConfiguration configuration,
+                        @Nullable AuthenticationPayload payload) {
+            return TextUtils.equals(mAuthorizationEndpoint, configuration.authorization_endpoint)
+                    && mParameters.equals(getParameters(payload));
+        }
+
+        private static Map<String, String> getParameters(@Nullable AuthenticationPayload payload) {
+            return payload == null ? Collections.emptyMap()
+                    : new HashMap<>(payload.getAdditionalParameters());
+        }
+    }
+
     public interface ResultListener {
         void postResult(Result result, ResultType resultType);
     }
@@ -410,6 +563,12 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
         this.mSessionClient.migrateTo(manager);
     }
 
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        this.mSessionClient.migrateTo(manager, batchSize, listener);
+    }
+
     @Override
     public SyncSessionClient getSessionClient() {
         return this.mSessionClient;
@@ -425,10 +584,18 @@ class SyncWebAuthClientImpl extends AuthAPI implements SyncWebAuthClient {
         try {
             mSignOutStatus = SUCCESS;
             mSignOutFlags = flags;
-            revokeTokens(getSessionClient());
+            // The browser sign out doesn't depend on the revocations, run them meanwhile.
+            // Tokens are still needed for the id token hint and are removed only after both.
+            List<Future<Integer>> revocations = startRevokeTokens(getSessionClient());
+            Result result = null;
             if ((flags & SIGN_OUT_SESSION) == SIGN_OUT_SESSION) {
-                Result result = signOutOfOkta(activity);
-                if (!result.isSuccess()) {
+                result = signOutOfOkta(activity, false);
+            }
+            awaitRevokeTokens(revocations);
+            if (result != null) {
+                if (result.isSuccess()) {
+                    removeTokens(getSessionClient());
+                } else {
                     Log.w(TAG, "Failed to clear session", result.getError());
                     mSignOutStatus |= FAILED_CLEAR_SESSION;
                 }
@@ -19,6 +19,7 @@ import android.app.Activity;
 import android.content.Intent;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.AuthorizationStatus;
@@ -26,6 +27,7 @@ import com.okta.oidc.RequestCallback;
 import com.okta.oidc.ResultCallback;
 import com.okta.oidc.clients.BaseAuth;
 import com.okta.oidc.clients.sessions.SessionClient;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
 
@@ -78,6 +80,19 @@ public interface WebAuthClient extends BaseAuth<SessionClient> {
      */
     void signIn(@NonNull Activity activity, AuthenticationPayload payload);
 
+    /**
+     * Prepares the browser for {@link #signIn(Activity, AuthenticationPayload) signIn}. Creates
+     * the authorize request, then binds the Custom Tabs service of the browser, warms it up and
+     * lets it prefetch the authorize URL while the user is still on the login screen. The next
+     * sign in with an equal payload launches the prepared request with the bound session.
+     * Runs in the background and doesn't report a result, sign in works the same if the
+     * browser couldn't be prepared.
+     *
+     * @param activity the activity
+     * @param payload  the {@link AuthenticationPayload payload} of the next sign in
+     */
+    void prepareSignIn(@NonNull Activity activity, @Nullable AuthenticationPayload payload);
+
     /**
      * Sign out from okta. This will clear the browser session
      *
@@ -147,6 +162,20 @@ public interface WebAuthClient extends BaseAuth<SessionClient> {
      */
     void migrateTo(EncryptionManager manager) throws AuthorizationException;
 
+    /**
+     * Migrates to another Encryption Manager, writing the records in batches. Each batch is
+     * written atomically if the storage is a
+     * {@link com.okta.oidc.storage.TransactionalStorage}. If the migration is interrupted,
+     * calling this method again with the same manager continues with the remaining records.
+     *
+     * @param manager   new Encryption Manager
+     * @param batchSize the records written per batch, zero or less to write all at once
+     * @param listener  notified of the progress after each batch, may be null
+     * @throws AuthorizationException exception if migration fails.
+     */
+    void migrateTo(EncryptionManager manager, int batchSize, @Nullable MigrationListener listener)
+            throws AuthorizationException;
+
     /**
      * Use this method to handle the onActivityResult. If using regular activity and chrome custom
      * tabs passes data back to the main activity. This must be called to parse the results of
@@ -22,7 +22,7 @@ import androidx.annotation.RestrictTo;
 
 import com.okta.oidc.CustomTabOptions;
 import com.okta.oidc.OIDCConfig;
-import com.okta.oidc.clients.ClientFactory;
+import com.okta.oidc.clients.BaseClientFactory;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
@@ -30,7 +30,7 @@ import com.okta.oidc.storage.security.EncryptionManager;
 import java.util.concurrent.Executor;
 
 @RestrictTo(RestrictTo.Scope.LIBRARY)
-public class WebAuthClientFactory implements ClientFactory<WebAuthClient> {
+public class WebAuthClientFactory extends BaseClientFactory<WebAuthClient> {
     private Executor mCallbackExecutor;
     private CustomTabOptions mCustomTabOptions;
     private String[] mSupportedBrowser;
@@ -53,6 +53,7 @@ public class WebAuthClientFactory implements ClientFactory<WebAuthClient> {
                                       boolean cacheMode) {
         return new WebAuthClientImpl(mCallbackExecutor, oidcConfig, context, oktaStorage,
                 encryptionManager, httpClient, requireHardwareBackedKeyStore, cacheMode,
-                mCustomTabOptions, mSupportedBrowser);
+                isBackgroundPersistence(), getKeystoreRetryPolicy(), mCustomTabOptions,
+                mSupportedBrowser);
     }
 }
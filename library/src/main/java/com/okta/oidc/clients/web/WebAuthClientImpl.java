@@ -22,6 +22,7 @@ import android.os.Process;
 
 import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.AuthorizationStatus;
@@ -34,6 +35,8 @@ import com.okta.oidc.clients.sessions.SessionClient;
 import com.okta.oidc.clients.sessions.SessionClientFactoryImpl;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.results.Result;
+import com.okta.oidc.storage.KeystoreRetryPolicy;
+import com.okta.oidc.storage.MigrationListener;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.security.EncryptionManager;
 import com.okta.oidc.util.AuthorizationException;
@@ -58,11 +61,13 @@ class WebAuthClientImpl implements WebAuthClient {
                       OktaHttpClient httpClient,
                       boolean requireHardwareBackedKeyStore,
                       boolean cacheMode,
+                      boolean backgroundPersistence,
+                      KeystoreRetryPolicy keystoreRetryPolicy,
                       CustomTabOptions customTabOptions,
                       String... supportedBrowsers) {
-        mSyncAuthClient = new SyncWebAuthClientFactory(customTabOptions, supportedBrowsers)
-                .createClient(oidcConfig, context, oktaStorage, encryptionManager,
-                        httpClient, requireHardwareBackedKeyStore, cacheMode);
+        mSyncAuthClient = new SyncWebAuthClientImpl(oidcConfig, context, oktaStorage,
+                encryptionManager, httpClient, requireHardwareBackedKeyStore, cacheMode,
+                backgroundPersistence, keystoreRetryPolicy, customTabOptions, supportedBrowsers);
         mSessionImpl = new SessionClientFactoryImpl(executor)
                 .createClient(mSyncAuthClient.getSessionClient());
         mDispatcher = new RequestDispatcher(executor);
@@ -128,21 +133,20 @@ class WebAuthClientImpl implements WebAuthClient {
         return mSyncAuthClient.isInProgress();
     }
 
+    @Override
+    @AnyThread
+    public void prepareSignIn(@NonNull final Activity activity,
+                              @Nullable AuthenticationPayload payload) {
+        final AuthenticationPayload finalPayload = addLoginHint(payload);
+        mDispatcher.runTask(() -> mSyncAuthClient.prepareSignIn(activity, finalPayload));
+    }
+
     @Override
     @AnyThread
     public void signIn(@NonNull final Activity activity, AuthenticationPayload payload) {
         registerActivityLifeCycle(activity);
         cancelFuture();
-        //add the login hint if it exists.
-        if (payload == null && mLoginHint != null) {
-            payload = new AuthenticationPayload.Builder().setLoginHint(mLoginHint).build();
-        } else if (mLoginHint != null) {
-            payload = new AuthenticationPayload.Builder()
-                    .copyPayload(payload)
-                    .setLoginHint(mLoginHint)
-                    .build();
-        }
-        final AuthenticationPayload finalPayload = payload;
+        final AuthenticationPayload finalPayload = addLoginHint(payload);
         mFutureTask = mDispatcher.submit(() -> {
             Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
             try {
@@ -158,6 +162,19 @@ class WebAuthClientImpl implements WebAuthClient {
         });
     }
 
+    private AuthenticationPayload addLoginHint(AuthenticationPayload payload) {
+        //add the login hint if it exists.
+        if (payload == null && mLoginHint != null) {
+            payload = new AuthenticationPayload.Builder().setLoginHint(mLoginHint).build();
+        } else if (mLoginHint != null) {
+            payload = new AuthenticationPayload.Builder()
+                    .copyPayload(payload)
+                    .setLoginHint(mLoginHint)
+                    .build();
+        }
+        return payload;
+    }
+
     private void processSignInResult(Result result) {
         if (result.getStatus() == AuthorizationStatus.EMAIL_VERIFICATION_UNAUTHENTICATED) {
             mLoginHint = result.getLoginHint();
@@ -216,6 +233,12 @@ class WebAuthClientImpl implements WebAuthClient {
         getSessionClient().migrateTo(manager);
     }
 
+    @Override
+    public void migrateTo(EncryptionManager manager, int batchSize,
+                          @Nullable MigrationListener listener) throws AuthorizationException {
+        getSessionClient().migrateTo(manager, batchSize, listener);
+    }
+
     @Override
     public void handleActivityResult(int requestCode, int resultCode, Intent data) {
         mSyncAuthClient.handleActivityResult(requestCode, resultCode, data);
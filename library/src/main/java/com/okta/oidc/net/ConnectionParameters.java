@@ -25,10 +25,7 @@ import com.okta.oidc.BuildConfig;
 import com.okta.oidc.net.params.RequestType;
 import com.okta.oidc.util.Preconditions;
 
-import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -86,6 +83,10 @@ public class ConnectionParameters {
         POST
     }
 
+    private static final byte[] HEX_DIGITS = {
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
     private RequestMethod mRequestMethod;
     private Map<String, String> mRequestProperties;
     private Map<String, String> mPostParameters;
@@ -104,31 +105,105 @@ public class ConnectionParameters {
     }
 
     private byte[] encodePostParameters() {
-        StringBuilder encodedParams = new StringBuilder();
-        try {
-            Iterator<Map.Entry<String, String>> iterator = mPostParameters.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<String, String> entry = iterator.next();
-                if (entry.getKey() == null || entry.getValue() == null) {
-                    throw new IllegalArgumentException(
-                            String.format(
-                                    "mPostParameters returned a map "
-                                            + "containing a null key or value: (%s, %s).",
-                                    entry.getKey(), entry.getValue()));
-                }
-                encodedParams.append(URLEncoder.encode(entry.getKey(), DEFAULT_ENCODING));
-                encodedParams.append('=');
-                encodedParams.append(URLEncoder.encode(entry.getValue(), DEFAULT_ENCODING));
-                if (iterator.hasNext()) {
-                    encodedParams.append('&');
-                }
+        // Two passes over the parameters: the first computes the exact encoded length so the
+        // body is written straight into a single array of the final size, without the
+        // intermediate StringBuilder, String and getBytes copies.
+        int length = 0;
+        for (Map.Entry<String, String> entry : mPostParameters.entrySet()) {
+            if (entry.getKey() == null || entry.getValue() == null) {
+                throw new IllegalArgumentException(
+                        String.format(
+                                "mPostParameters returned a map "
+                                        + "containing a null key or value: (%s, %s).",
+                                entry.getKey(), entry.getValue()));
+            }
+            if (length > 0) {
+                length++; //'&'
+            }
+            length += encodedLength(entry.getKey()) + 1 + encodedLength(entry.getValue());
+        }
+        byte[] encoded = new byte[length];
+        int position = 0;
+        for (Map.Entry<String, String> entry : mPostParameters.entrySet()) {
+            if (position > 0) {
+                encoded[position++] = '&';
+            }
+            position = encode(entry.getKey(), encoded, position);
+            encoded[position++] = '=';
+            position = encode(entry.getValue(), encoded, position);
+        }
+        return encoded;
+    }
+
+    /*
+     * Same output as URLEncoder.encode(value, "UTF-8"): unreserved characters are kept, space
+     * becomes '+' and everything else is percent encoded as UTF-8. Unpaired surrogates are
+     * encoded as '?' like the UTF-8 charset encoder does.
+     */
+    private static boolean isUnreserved(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '.' || c == '-' || c == '*' || c == '_';
+    }
+
+    private static int encodedLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c) || c == ' ') {
+                length++;
+            } else if (c < 0x80) {
+                length += 3;
+            } else if (c < 0x800) {
+                length += 6;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 12;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length += 3;
+            } else {
+                length += 9;
+            }
+        }
+        return length;
+    }
+
+    private static int encode(String value, byte[] out, int position) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                out[position++] = (byte) c;
+            } else if (c == ' ') {
+                out[position++] = '+';
+            } else if (c < 0x80) {
+                position = percentEncode(c, out, position);
+            } else if (c < 0x800) {
+                position = percentEncode(0xC0 | (c >> 6), out, position);
+                position = percentEncode(0x80 | (c & 0x3F), out, position);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                position = percentEncode(0xF0 | (codePoint >> 18), out, position);
+                position = percentEncode(0x80 | ((codePoint >> 12) & 0x3F), out, position);
+                position = percentEncode(0x80 | ((codePoint >> 6) & 0x3F), out, position);
+                position = percentEncode(0x80 | (codePoint & 0x3F), out, position);
+            } else if (Character.isSurrogate(c)) {
+                position = percentEncode('?', out, position);
+            } else {
+                position = percentEncode(0xE0 | (c >> 12), out, position);
+                position = percentEncode(0x80 | ((c >> 6) & 0x3F), out, position);
+                position = percentEncode(0x80 | (c & 0x3F), out, position);
             }
-            return encodedParams.toString().getBytes(DEFAULT_ENCODING);
-        } catch (UnsupportedEncodingException uee) {
-            throw new RuntimeException("Encoding not supported: " + DEFAULT_ENCODING, uee);
         }
+        return position;
     }
 
+    private static int percentEncode(int b, byte[] out, int position) {
+        out[position++] = '%';
+        out[position++] = HEX_DIGITS[(b >> 4) & 0xF];
+        out[position++] = HEX_DIGITS[b & 0xF];
+        return position;
+    }
 
     /**
      * Request method request method.
@@ -184,7 +259,8 @@ public class ConnectionParameters {
     }
 
     /**
-     * Get encoded post parameters byte [ ].
+     * Get encoded post parameters byte [ ]. The parameters are form url encoded directly into
+     * an array of the exact body length.
      *
      * @return the byte [ ]
      */
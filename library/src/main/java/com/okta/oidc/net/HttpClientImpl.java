@@ -24,9 +24,9 @@ import androidx.annotation.VisibleForTesting;
 
 import com.okta.oidc.net.request.TLSSocketFactory;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.KeyManagementException;
@@ -55,6 +55,16 @@ public class HttpClientImpl implements OktaHttpClient {
         this.readTimeoutMs = readTimeoutMs;
     }
 
+    /**
+     * Creates a client with the same timeouts. A client runs one request at a time, a new one
+     * is needed to run requests concurrently.
+     *
+     * @return the new client
+     */
+    public HttpClientImpl newClient() {
+        return new HttpClientImpl(connectionTimeoutMs, readTimeoutMs);
+    }
+
     /*
      * TLS v1.1, v1.2 in Android supports starting from API 16.
      * But it enabled by default starting from API 20.
@@ -97,9 +107,15 @@ public class HttpClientImpl implements OktaHttpClient {
         } else if (requestMethod == ConnectionParameters.RequestMethod.POST) {
             conn.setDoOutput(true);
             if (postParameters != null && !postParameters.isEmpty()) {
-                DataOutputStream out = new DataOutputStream(conn.getOutputStream());
-                out.write(params.getEncodedPostParameters());
-                out.close();
+                byte[] body = params.getEncodedPostParameters();
+                // Exact length lets the connection stream the body instead of buffering a copy.
+                conn.setFixedLengthStreamingMode(body.length);
+                OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(body);
+                } finally {
+                    out.close();
+                }
             }
         }
         return conn;
@@ -49,6 +49,11 @@ public enum RequestType {
      */
     PROFILE,
 
+    /**
+     * Signing keys request type.
+     */
+    JWKS,
+
     /**
      * Authorize request with custom ui.
      * Not using chrome custom tabs.
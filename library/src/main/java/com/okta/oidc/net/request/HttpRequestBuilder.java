@@ -33,6 +33,7 @@ import java.util.Map;
 import static com.okta.oidc.net.params.RequestType.AUTHORIZED;
 import static com.okta.oidc.net.params.RequestType.CONFIGURATION;
 import static com.okta.oidc.net.params.RequestType.INTROSPECT;
+import static com.okta.oidc.net.params.RequestType.JWKS;
 import static com.okta.oidc.net.params.RequestType.PROFILE;
 import static com.okta.oidc.net.params.RequestType.REFRESH_TOKEN;
 import static com.okta.oidc.net.params.RequestType.REVOKE_TOKEN;
@@ -72,6 +73,10 @@ public class HttpRequestBuilder {
         return new Introspect().requestType(INTROSPECT);
     }
 
+    public static Jwks newJwksRequest() {
+        return new Jwks().requestType(JWKS);
+    }
+
     private abstract static class Builder<T extends Builder<T>> {
         OIDCConfig mConfig;
         ProviderConfiguration mProviderConfiguration;
@@ -346,6 +351,30 @@ public class HttpRequestBuilder {
         }
     }
 
+    public static class Jwks extends Builder<Jwks> {
+        private Jwks() {
+        }
+
+        @Override
+        Jwks toThis() {
+            return this;
+        }
+
+        @Override
+        protected void validate(boolean isConfigurationRequest) throws AuthorizationException {
+            super.validate(isConfigurationRequest);
+            if (mProviderConfiguration.jwks_uri == null) {
+                throwException("Invalid jwks_uri");
+            }
+        }
+
+        @Override
+        public JwksRequest createRequest() throws AuthorizationException {
+            validate(false);
+            return new JwksRequest(this);
+        }
+    }
+
     private static void throwException(String message) throws AuthorizationException {
         throw new AuthorizationException(message,
                 new RuntimeException());
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.net.request;
+
+import android.net.Uri;
+
+import androidx.annotation.RestrictTo;
+import androidx.annotation.WorkerThread;
+
+import com.okta.oidc.net.ConnectionParameters;
+import com.okta.oidc.net.HttpResponse;
+import com.okta.oidc.net.OktaHttpClient;
+import com.okta.oidc.net.response.JsonWebKeySet;
+import com.okta.oidc.util.AuthorizationException;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class JwksRequest extends BaseRequest<JsonWebKeySet, AuthorizationException> {
+    JwksRequest(HttpRequestBuilder.Jwks b) {
+        super();
+        mRequestType = b.mRequestType;
+        mUri = Uri.parse(b.mProviderConfiguration.jwks_uri);
+        mConnParams = new ConnectionParameters.ParameterBuilder()
+                .setRequestMethod(ConnectionParameters.RequestMethod.GET)
+                .setRequestType(mRequestType)
+                .create();
+    }
+
+    @WorkerThread
+    @Override
+    public JsonWebKeySet executeRequest(OktaHttpClient client) throws AuthorizationException {
+        AuthorizationException exception = null;
+        HttpResponse response = null;
+        try {
+            response = openConnection(client);
+            return new JsonWebKeySet(response.asJson());
+        } catch (IOException ex) {
+            exception = new AuthorizationException(ex.getMessage(), ex);
+        } catch (JSONException ex) {
+            exception = AuthorizationException.fromTemplate(
+                    AuthorizationException.GeneralErrors.JSON_DESERIALIZATION_ERROR,
+                    ex);
+        } catch (GeneralSecurityException | IllegalArgumentException ex) {
+            exception = new AuthorizationException("Invalid signing keys", ex);
+        } catch (Exception e) {
+            exception = AuthorizationException.fromTemplate(AuthorizationException
+                    .GeneralErrors.NETWORK_ERROR, e);
+        } finally {
+            if (response != null) {
+                response.disconnect();
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
+        return null;
+    }
+}
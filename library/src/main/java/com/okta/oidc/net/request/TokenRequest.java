@@ -151,7 +151,8 @@ public class TokenRequest extends BaseRequest<TokenResponse, AuthorizationExcept
             }
             tokenResponse = new Gson().fromJson(json.toString(), TokenResponse.class);
             tokenResponse.validate();
-            tokenResponse.setCreationTime(System.currentTimeMillis());
+            tokenResponse.setCreationTime(System.currentTimeMillis(),
+                    mConfig.getTokenExpirySkew());
             if (tokenResponse.getIdToken() != null) {
                 OktaIdToken idToken;
                 try {
@@ -67,6 +67,13 @@ public class AuthorizeRequest extends WebRequest {
     public static final String STATE = "state";
     private static final String CODE_VERIFIER = "code_verifier";
 
+    //Parameters that are the same for every request of a client, encoded once in sTemplate.
+    private static final String[] TEMPLATE_KEYS = {CLIENT_ID, REDIRECT_URI, SCOPE,
+            RESPONSE_TYPE, CODE_CHALLENGE_METHOD};
+    private static volatile QueryTemplate sTemplate;
+    //The last joined scopes of a config.
+    private static volatile Scopes sScopes;
+
     public AuthorizeRequest(Parameters parameters) {
         mParameters = parameters;
     }
@@ -115,12 +122,23 @@ public class AuthorizeRequest extends WebRequest {
         Map<String, String> mPayloadParams;
 
         public Uri toUri() {
-            Uri.Builder uriBuilder = Uri.parse(queryParams.get(AUTHORIZE_ENDPOINT))
-                    .buildUpon();
-            queryParams.remove(AUTHORIZE_ENDPOINT);
+            String endpoint = queryParams.get(AUTHORIZE_ENDPOINT);
+            String[] values = new String[TEMPLATE_KEYS.length];
+            for (int i = 0; i < TEMPLATE_KEYS.length; i++) {
+                values[i] = queryParams.get(TEMPLATE_KEYS[i]);
+            }
+            QueryTemplate template = sTemplate;
+            if (template == null || !template.matches(endpoint, values)) {
+                template = new QueryTemplate(endpoint, TEMPLATE_KEYS, values);
+                sTemplate = template;
+            }
+            QueryTemplate.UriBuilder uriBuilder = template.newUri();
+            //The parameters are left unchanged, the request may be persisted concurrently.
             for (Map.Entry<String, String> entry : queryParams.entrySet()) {
-                if (!entry.getKey().equals(CODE_VERIFIER)) {
-                    uriBuilder.appendQueryParameter(entry.getKey(), entry.getValue());
+                String key = entry.getKey();
+                if (!key.equals(CODE_VERIFIER) && !key.equals(AUTHORIZE_ENDPOINT)
+                        && !template.contains(key)) {
+                    uriBuilder.appendQueryParameter(key, entry.getValue());
                 }
             }
             return uriBuilder.build();
@@ -136,12 +154,16 @@ public class AuthorizeRequest extends WebRequest {
                 verifier = CodeVerifierUtil.generateRandomCodeVerifier();
             }
             CodeVerifierUtil.checkCodeVerifier(verifier);
+            putCodeVerifier(verifier, CodeVerifierUtil.deriveCodeVerifierChallenge(verifier),
+                    CodeVerifierUtil.getCodeVerifierChallengeMethod());
+        }
+
+        private void putCodeVerifier(String verifier, @Nullable String challenge,
+                                     @Nullable String method) {
             mMap.put(CODE_VERIFIER, verifier);
-            String challenge = CodeVerifierUtil.deriveCodeVerifierChallenge(verifier);
             if (challenge != null) {
                 mMap.put(CODE_CHALLENGE, challenge);
             }
-            String method = CodeVerifierUtil.getCodeVerifierChallengeMethod();
             if (method != null) {
                 mMap.put(CODE_CHALLENGE_METHOD, method);
             }
@@ -184,9 +206,10 @@ public class AuthorizeRequest extends WebRequest {
             //Set default params
             mMap = mParameters.queryParams;
             mMap.put(RESPONSE_TYPE, ResponseType.CODE);
-            mMap.put(NONCE, CodeVerifierUtil.generateRandomState());
-            mMap.put(STATE, CodeVerifierUtil.generateRandomState());
-            setCodeVerifier(null);
+            CodeVerifierUtil.PkceParameters pkce = CodeVerifierUtil.takeParameters();
+            mMap.put(NONCE, pkce.nonce);
+            mMap.put(STATE, pkce.state);
+            putCodeVerifier(pkce.codeVerifier, pkce.codeChallenge, pkce.codeChallengeMethod);
         }
 
         public AuthorizeRequest create() throws AuthorizationException {
@@ -311,8 +334,7 @@ public class AuthorizeRequest extends WebRequest {
 
         public Builder config(OIDCConfig config) {
             mMap.put(CLIENT_ID, config.getClientId());
-            String delimited = AsciiStringListUtil.iterableToString(
-                    Arrays.asList(config.getScopes()));
+            String delimited = getScopes(config.getScopes());
             if (delimited != null) {
                 mMap.put(SCOPE, delimited);
             }
@@ -320,4 +342,26 @@ public class AuthorizeRequest extends WebRequest {
             return this;
         }
     }
+
+    @Nullable
+    private static String getScopes(@NonNull String[] scopes) {
+        Scopes cached = sScopes;
+        if (cached == null || !Arrays.equals(cached.mScopes, scopes)) {
+            //The array is copied, the config returns its own array.
+            cached = new Scopes(scopes.clone(),
+                    AsciiStringListUtil.iterableToString(Arrays.asList(scopes)));
+            sScopes = cached;
+        }
+        return cached.mDelimited;
+    }
+
+    private static final class Scopes {
+        private final String[] mScopes;
+        private final String mDelimited;
+
+        Scopes(String[] scopes, String delimited) {
+            mScopes = scopes;
+            mDelimited = delimited;
+        }
+    }
 }
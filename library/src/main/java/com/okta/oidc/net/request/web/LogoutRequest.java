@@ -35,6 +35,10 @@ import com.okta.oidc.util.CodeVerifierUtil;
 //https://developer.okta.com/docs/api/resources/oidc#logout
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class LogoutRequest extends WebRequest {
+    private static final String POST_LOGOUT_REDIRECT_URI = "post_logout_redirect_uri";
+    private static final String[] TEMPLATE_KEYS = {POST_LOGOUT_REDIRECT_URI};
+    //The end session endpoint and redirect uri of the last request, encoded once.
+    private static volatile QueryTemplate sTemplate;
     private Parameters mParameters;
 
     LogoutRequest(Parameters parameters) {
@@ -76,15 +80,20 @@ public class LogoutRequest extends WebRequest {
         String state;
 
         Uri toUri() {
-            Uri.Builder uriBuilder = Uri.parse(end_session_endpoint).buildUpon()
+            String[] values = {post_logout_redirect_uri};
+            QueryTemplate template = sTemplate;
+            if (template == null || !template.matches(end_session_endpoint, values)) {
+                template = new QueryTemplate(end_session_endpoint, TEMPLATE_KEYS, values);
+                sTemplate = template;
+            }
+            QueryTemplate.UriBuilder uriBuilder = template.newUri()
                     .appendQueryParameter("id_token_hint", id_token_hint);
-            appendOptionalParams(uriBuilder, "post_logout_redirect_uri",
-                    post_logout_redirect_uri);
             appendOptionalParams(uriBuilder, "state", state);
             return uriBuilder.build();
         }
 
-        private void appendOptionalParams(Uri.Builder builder, String name, String value) {
+        private void appendOptionalParams(QueryTemplate.UriBuilder builder, String name,
+                                          String value) {
             if (value != null) {
                 builder.appendQueryParameter(name, value);
             }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.net.request.web;
+
+import android.net.Uri;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * An endpoint with the query parameters that are the same for every request of a client,
+ * encoded once. Requests only encode and append their own parameters.
+ */
+final class QueryTemplate {
+    private final String mEndpoint;
+    private final String[] mKeys;
+    private final String[] mValues;
+    private final String mPrefix;
+    private final boolean mHasQuery;
+    private final boolean mHasFragment;
+
+    QueryTemplate(@NonNull String endpoint, @NonNull String[] keys, @NonNull String[] values) {
+        mEndpoint = endpoint;
+        mKeys = keys;
+        mValues = values;
+        Uri.Builder builder = Uri.parse(endpoint).buildUpon();
+        for (int i = 0; i < keys.length; i++) {
+            if (values[i] != null) {
+                builder.appendQueryParameter(keys[i], values[i]);
+            }
+        }
+        Uri prefix = builder.build();
+        mPrefix = prefix.toString();
+        mHasQuery = prefix.getEncodedQuery() != null;
+        mHasFragment = prefix.getEncodedFragment() != null;
+    }
+
+    /**
+     * Checks if the template was created for the endpoint and values.
+     *
+     * @param endpoint the endpoint
+     * @param values   the values of the template keys
+     * @return true if the template can be used
+     */
+    boolean matches(@Nullable String endpoint, @NonNull String[] values) {
+        if (!TextUtils.equals(mEndpoint, endpoint)) {
+            return false;
+        }
+        for (int i = 0; i < mValues.length; i++) {
+            if (!TextUtils.equals(mValues[i], values[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the parameter is already part of the template.
+     *
+     * @param key the parameter name
+     * @return true if the parameter must not be appended
+     */
+    boolean contains(@NonNull String key) {
+        for (int i = 0; i < mKeys.length; i++) {
+            if (mValues[i] != null && mKeys[i].equals(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NonNull
+    UriBuilder newUri() {
+        return new UriBuilder(this);
+    }
+
+    static final class UriBuilder {
+        private final StringBuilder mUri;
+        private final Uri.Builder mBuilder;
+        private boolean mHasQuery;
+
+        private UriBuilder(QueryTemplate template) {
+            if (template.mHasFragment) {
+                //The query goes before the fragment, let Uri.Builder handle it.
+                mBuilder = Uri.parse(template.mPrefix).buildUpon();
+                mUri = null;
+            } else {
+                mBuilder = null;
+                mUri = new StringBuilder(template.mPrefix);
+                mHasQuery = template.mHasQuery;
+            }
+        }
+
+        @NonNull
+        UriBuilder appendQueryParameter(@NonNull String key, @Nullable String value) {
+            if (mBuilder != null) {
+                mBuilder.appendQueryParameter(key, value);
+            } else {
+                mUri.append(mHasQuery ? '&' : '?')
+                        .append(Uri.encode(key))
+                        .append('=')
+                        .append(Uri.encode(value));
+                mHasQuery = true;
+            }
+            return this;
+        }
+
+        @NonNull
+        Uri build() {
+            return mBuilder != null ? mBuilder.build() : Uri.parse(mUri.toString());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.net.response;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.okta.oidc.util.CodecUtil;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The RSA signing keys of an authorization server, read from its jwks_uri.
+ *
+ * @hide
+ * @see <a href="https://developer.okta.com/docs/api/resources/oidc/#keys">Keys</a>
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class JsonWebKeySet {
+    private static final String KEY_TYPE_RSA = "RSA";
+    private static final String USE_SIGNATURE = "sig";
+    private final Map<String, PublicKey> mKeys = new HashMap<>();
+
+    /**
+     * Reads the RSA signing keys of a JSON Web Key Set. Other keys are ignored.
+     *
+     * @param json the key set
+     * @throws JSONException            if the key set is malformed
+     * @throws GeneralSecurityException if a key can't be created
+     */
+    public JsonWebKeySet(@NonNull JSONObject json) throws JSONException,
+            GeneralSecurityException {
+        JSONArray keys = json.getJSONArray("keys");
+        KeyFactory keyFactory = KeyFactory.getInstance(KEY_TYPE_RSA);
+        for (int i = 0; i < keys.length(); i++) {
+            JSONObject key = keys.getJSONObject(i);
+            if (!KEY_TYPE_RSA.equals(key.optString("kty"))
+                    || !USE_SIGNATURE.equals(key.optString("use", USE_SIGNATURE))) {
+                continue;
+            }
+            RSAPublicKeySpec spec = new RSAPublicKeySpec(toInteger(key.getString("n")),
+                    toInteger(key.getString("e")));
+            mKeys.put(key.optString("kid"), keyFactory.generatePublic(spec));
+        }
+    }
+
+    /**
+     * Returns the key with the key id. A token without a key id can only be verified if the set
+     * has a single key.
+     *
+     * @param kid the key id from the token header
+     * @return the key or null if there is no such key
+     */
+    @Nullable
+    public PublicKey getKey(@Nullable String kid) {
+        if (kid == null) {
+            return mKeys.size() == 1 ? mKeys.values().iterator().next() : null;
+        }
+        return mKeys.get(kid);
+    }
+
+    private static BigInteger toInteger(String base64) {
+        return new BigInteger(1, CodecUtil.decodeBase64(base64, 0, base64.length()));
+    }
+}
@@ -23,6 +23,7 @@ import androidx.annotation.RestrictTo;
 import androidx.annotation.VisibleForTesting;
 
 import com.google.gson.Gson;
+import com.google.gson.JsonObject;
 import com.okta.oidc.storage.Persistable;
 
 /**
@@ -32,13 +33,19 @@ import com.okta.oidc.storage.Persistable;
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class TokenResponse implements Persistable {
     private static final int THOUSAND = 1000;
+    private static final String REFRESH_TOKEN = "refresh_token";
     private String access_token;
     private String token_type;
     private String expires_in;
     private String scope;
     private String refresh_token;
     private String id_token;
+    //The creation time in millis. The name is kept for responses persisted by older versions.
     private long expiresAt = -1;
+    //The access token expiry in millis with the skew margin applied, see setCreationTime.
+    private long accessTokenExpiry;
+    //expires_in parsed once.
+    private transient Integer expiresInSeconds;
 
     @VisibleForTesting
     public static final String MISSING_ACCESS_TOKEN_ERROR = "access_token is missing";
@@ -79,18 +86,75 @@ public class TokenResponse implements Persistable {
         //NO-OP
     }
 
+    /**
+     * Returns expires_in in seconds, parsed once.
+     *
+     * @return the lifetime of the access token in seconds
+     * @throws NumberFormatException if expires_in is not a number
+     */
+    public int getExpiresInSeconds() {
+        Integer seconds = expiresInSeconds;
+        if (seconds == null) {
+            seconds = Integer.parseInt(expires_in);
+            expiresInSeconds = seconds;
+        }
+        return seconds;
+    }
+
     //only called from token request
     public void setCreationTime(long creationTime) {
+        setCreationTime(creationTime, 0);
+    }
+
+    /**
+     * Sets the creation time and computes the access token expiry once. The expiry is moved
+     * earlier by the skew margin, so a token is not used while the server may consider it
+     * expired.
+     *
+     * @param creationTime the time the response was received in millis
+     * @param expirySkew   the skew margin in seconds
+     */
+    public void setCreationTime(long creationTime, int expirySkew) {
         if (expiresAt < 0) {
-            expiresAt = System.currentTimeMillis();
+            expiresAt = creationTime;
+            accessTokenExpiry = computeExpiry(creationTime, expirySkew);
         }
     }
 
+    /**
+     * Returns the access token expiry in millis, computed when the response was received.
+     *
+     * @return the expiry or -1 if the creation time is unknown
+     */
     public long getExpiresAt() {
-        if (expiresAt > 0) {
-            expiresAt += Integer.parseInt(expires_in) * THOUSAND;
+        if (accessTokenExpiry == 0) {
+            if (expiresAt < 0) {
+                return -1;
+            }
+            //persisted by an older version without the expiry
+            accessTokenExpiry = computeExpiry(expiresAt, 0);
+        }
+        return accessTokenExpiry;
+    }
+
+    /**
+     * Checks if the access token is expired without parsing any value.
+     *
+     * @param now the current time in millis
+     * @return true if expired or if the expiry is unknown
+     */
+    public boolean isAccessTokenExpired(long now) {
+        long expiry = getExpiresAt();
+        return expiry < 0 || now > expiry;
+    }
+
+    private long computeExpiry(long creationTime, int expirySkew) {
+        try {
+            return creationTime + (getExpiresInSeconds() - (long) expirySkew) * THOUSAND;
+        } catch (NumberFormatException e) {
+            //an unknown lifetime is treated as expired
+            return creationTime;
         }
-        return expiresAt;
     }
 
     public void validate() throws IllegalArgumentException {
@@ -105,6 +169,32 @@ public class TokenResponse implements Persistable {
         }
     }
 
+    /**
+     * Serializes everything except the refresh token. The refresh token usually outlives
+     * several access tokens, it is persisted as a separate record so a refresh without token
+     * rotation only rewrites the session record.
+     *
+     * @return the session json
+     */
+    public String persistSession() {
+        JsonObject session = new Gson().toJsonTree(this).getAsJsonObject();
+        session.remove(REFRESH_TOKEN);
+        return session.toString();
+    }
+
+    /**
+     * Restores a token response from the records written with {@link #persistSession()}.
+     *
+     * @param session      the session json
+     * @param refreshToken the refresh token
+     * @return the token response
+     */
+    public static TokenResponse restore(@NonNull String session, @Nullable String refreshToken) {
+        TokenResponse tokenResponse = new Gson().fromJson(session, TokenResponse.class);
+        tokenResponse.refresh_token = refreshToken;
+        return tokenResponse;
+    }
+
     public static final Persistable.Restore<TokenResponse> RESTORE =
             new Persistable.Restore<TokenResponse>() {
                 private static final String KEY = "TokenResponse";
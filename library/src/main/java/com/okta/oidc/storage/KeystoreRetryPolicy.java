@@ -0,0 +1,231 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.os.Build;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+import android.security.keystore.UserNotAuthenticatedException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.okta.oidc.storage.security.BaseEncryptionManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Decides if an encrypt or decrypt that failed in the keystore is tried again and how long to
+ * wait before. The keystore fails transiently under load, mostly with a
+ * {@link java.security.ProviderException}. The delay grows exponentially with each attempt up
+ * to a maximum and is randomized so concurrent callers don't retry at the same time.
+ * Errors that a retry can't fix, such as invalidated keys or a missing user authentication,
+ * are never retried.
+ */
+public class KeystoreRetryPolicy {
+    /**
+     * Up to three attempts, waiting about 10 ms and then 20 ms.
+     */
+    public static final KeystoreRetryPolicy DEFAULT = new Builder().create();
+
+    /**
+     * Never retries.
+     */
+    public static final KeystoreRetryPolicy NONE = new Builder().maxAttempts(1).create();
+
+    private final int mMaxAttempts;
+    private final long mInitialDelayMillis;
+    private final long mMaxDelayMillis;
+    private final List<Class<? extends Exception>> mNoRetry;
+    @Nullable
+    private final Listener mListener;
+    private final Random mRandom = new Random();
+
+    protected KeystoreRetryPolicy(@NonNull Builder builder) {
+        mMaxAttempts = builder.mMaxAttempts;
+        mInitialDelayMillis = builder.mInitialDelayMillis;
+        mMaxDelayMillis = builder.mMaxDelayMillis;
+        mNoRetry = new ArrayList<>(builder.mNoRetry);
+        mListener = builder.mListener;
+    }
+
+    /**
+     * Gets the time to wait before the next attempt.
+     *
+     * @param attempt the number of failed attempts, starting with 1
+     * @param error   the error of the last attempt
+     * @return the delay in milliseconds, or a negative value to give up
+     */
+    public long getRetryDelay(int attempt, @NonNull Exception error) {
+        if (attempt >= mMaxAttempts || !isRetryable(error)) {
+            return -1;
+        }
+        long delay = mInitialDelayMillis;
+        for (int i = 1; i < attempt && delay < mMaxDelayMillis; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, mMaxDelayMillis);
+        //Between half and the full delay.
+        long half = delay / 2;
+        return half + (long) (mRandom.nextDouble() * (delay - half + 1));
+    }
+
+    /**
+     * Checks if a retry may fix the error.
+     *
+     * @param error the error
+     * @return true if the operation may succeed when tried again
+     */
+    protected boolean isRetryable(@NonNull Exception error) {
+        for (Class<? extends Exception> type : mNoRetry) {
+            if (type.isInstance(error)) {
+                return false;
+            }
+        }
+        if (error instanceof BaseEncryptionManager.OktaUserNotAuthenticateException) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            return !(error instanceof KeyPermanentlyInvalidatedException
+                    || error instanceof UserNotAuthenticatedException);
+        }
+        return true;
+    }
+
+    @Nullable
+    Listener getListener() {
+        return mListener;
+    }
+
+    /**
+     * Receives the keystore errors handled by a {@link KeystoreRetryPolicy}, for example to
+     * count them. Called on the thread of the operation.
+     */
+    public interface Listener {
+        /**
+         * Called before waiting for the next attempt.
+         *
+         * @param attempt     the number of failed attempts
+         * @param delayMillis the time to wait
+         * @param error       the error of the last attempt
+         */
+        void onRetry(int attempt, long delayMillis, @NonNull Exception error);
+
+        /**
+         * Called when an attempt succeeded after failed ones.
+         *
+         * @param attempts the number of attempts including the successful one
+         */
+        void onRecovered(int attempts);
+
+        /**
+         * Called when the error is returned to the caller.
+         *
+         * @param attempts the number of attempts
+         * @param error    the error of the last attempt
+         */
+        void onFailure(int attempts, @NonNull Exception error);
+    }
+
+    /**
+     * The Builder for {@link KeystoreRetryPolicy}.
+     */
+    public static class Builder {
+        private int mMaxAttempts = 3;
+        private long mInitialDelayMillis = 10;
+        private long mMaxDelayMillis = 100;
+        private final List<Class<? extends Exception>> mNoRetry = new ArrayList<>();
+        private Listener mListener;
+
+        /**
+         * Sets the number of attempts including the first one.
+         *
+         * @param maxAttempts the number of attempts, at least 1
+         * @return current builder
+         * @throws IllegalArgumentException if less than 1
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts must be at least 1");
+            }
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Sets the delay before the first retry, doubled for each further retry.
+         *
+         * @param initialDelayMillis the delay in milliseconds
+         * @return current builder
+         * @throws IllegalArgumentException if negative
+         */
+        public Builder initialDelay(long initialDelayMillis) {
+            if (initialDelayMillis < 0) {
+                throw new IllegalArgumentException("initialDelay must not be negative");
+            }
+            mInitialDelayMillis = initialDelayMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum delay between two attempts.
+         *
+         * @param maxDelayMillis the delay in milliseconds
+         * @return current builder
+         * @throws IllegalArgumentException if negative
+         */
+        public Builder maxDelay(long maxDelayMillis) {
+            if (maxDelayMillis < 0) {
+                throw new IllegalArgumentException("maxDelay must not be negative");
+            }
+            mMaxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Never retries errors of the type, in addition to the errors that are never retried
+         * by default.
+         *
+         * @param errorType the type of the error, including subclasses
+         * @return current builder
+         */
+        public Builder noRetry(@NonNull Class<? extends Exception> errorType) {
+            mNoRetry.add(errorType);
+            return this;
+        }
+
+        /**
+         * Sets a listener that receives the handled errors.
+         *
+         * @param listener the listener
+         * @return current builder
+         */
+        public Builder listener(@Nullable Listener listener) {
+            mListener = listener;
+            return this;
+        }
+
+        /**
+         * Create the retry policy.
+         *
+         * @return the retry policy
+         */
+        public KeystoreRetryPolicy create() {
+            return new KeystoreRetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * A implementation of {@link OktaStorage} backed by an append-only log file.
+ * Every change is appended to the file as one record with a CRC32 checksum, so a write costs
+ * the same no matter how many keys are stored. The values are kept in memory after the file
+ * is read, once, on first access.
+ *
+ * The file is compacted, rewritten with only the current values, when it grows past twice
+ * the size of the current values. A torn or corrupted record at the end of the log, after a
+ * crash during a write, is discarded with everything after it. A batch applied with
+ * {@link #apply(Map, Collection)} is a single record, so it is applied entirely or not at all.
+ * A file that can't be read, because of an I/O error or an unknown format, is never written.
+ */
+public class LogFileStorage implements TransactionalStorage {
+    private static final String TAG = LogFileStorage.class.getSimpleName();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int MAGIC = 0x4f4b4c47; //OKLG
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_SIZE = 8;
+    //record: payload length, payload crc, payload
+    private static final int RECORD_HEADER_SIZE = 8;
+    //operation: type, key length, key, value length, value
+    private static final int OPERATION_HEADER_SIZE = 9;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    @VisibleForTesting
+    static final int MIN_COMPACTION_SIZE = 16 * 1024;
+
+    private final File mFile;
+    private final Object mLock = new Object();
+    //Current values and the size of the operation that wrote them, null until the file is read.
+    private Map<String, Entry> mEntries;
+    private long mLiveSize;
+    //The end of the last complete record.
+    private long mFileSize;
+    //Set if the file couldn't be read, it is then never written so nothing unread is lost.
+    private boolean mReadFailed;
+    private FileOutputStream mOutput;
+
+    /**
+     * Instantiates a new instance.
+     * Uses default class name as file name in the files directory of the app.
+     *
+     * @param context the context
+     */
+    public LogFileStorage(Context context) {
+        this(context, null);
+    }
+
+    /**
+     * Instantiates a new instance.
+     *
+     * @param context  the context
+     * @param fileName the file name in the files directory of the app
+     */
+    public LogFileStorage(Context context, String fileName) {
+        this(new File(context.getFilesDir(), fileName == null ?
+                LogFileStorage.class.getCanonicalName() : fileName));
+    }
+
+    /**
+     * Instantiates a new instance.
+     *
+     * @param file the log file
+     */
+    public LogFileStorage(@NonNull File file) {
+        mFile = file;
+    }
+
+    @Override
+    public void save(@NonNull String key, @NonNull String value) {
+        apply(Collections.singletonMap(key, value), Collections.emptyList());
+    }
+
+    @Nullable
+    @Override
+    public String get(@NonNull String key) {
+        synchronized (mLock) {
+            Entry entry = getEntries().get(key);
+            return entry == null ? null : entry.mValue;
+        }
+    }
+
+    @Override
+    public void delete(@NonNull String key) {
+        apply(Collections.emptyMap(), Collections.singletonList(key));
+    }
+
+    @Override
+    public void apply(@NonNull Map<String, String> values, @NonNull Collection<String> deletes) {
+        synchronized (mLock) {
+            Map<String, Entry> entries = getEntries();
+            List<String> removed = new ArrayList<>(deletes.size());
+            for (String key : deletes) {
+                if (!values.containsKey(key) && entries.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+            if (removed.isEmpty() && values.isEmpty()) {
+                return;
+            }
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(payload);
+            try {
+                out.writeInt(removed.size() + values.size());
+                for (String key : removed) {
+                    writeOperation(out, DELETE, key, null);
+                }
+                for (Map.Entry<String, String> value : values.entrySet()) {
+                    writeOperation(out, PUT, value.getKey(), value.getValue());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); //not thrown by in memory streams
+            }
+            //Like SharedPreferences the values in memory are updated even if the write fails.
+            for (String key : removed) {
+                remove(entries, key);
+            }
+            for (Map.Entry<String, String> value : values.entrySet()) {
+                put(entries, value.getKey(), value.getValue());
+            }
+            if (mReadFailed) {
+                Log.w(TAG, "Not writing " + mFile + " it couldn't be read");
+                return;
+            }
+            try {
+                append(payload.toByteArray());
+                if (mFileSize > MIN_COMPACTION_SIZE && mFileSize > 2 * mLiveSize) {
+                    compactLocked();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write " + mFile, e);
+                closeOutput();
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log file with only the current values.
+     */
+    public void compact() {
+        synchronized (mLock) {
+            getEntries();
+            if (mReadFailed) {
+                Log.w(TAG, "Not compacting " + mFile + " it couldn't be read");
+                return;
+            }
+            try {
+                compactLocked();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to compact " + mFile, e);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    long getFileSize() {
+        synchronized (mLock) {
+            getEntries();
+            return mFileSize;
+        }
+    }
+
+    private Map<String, Entry> getEntries() {
+        if (mEntries == null) {
+            mEntries = new HashMap<>();
+            mLiveSize = FILE_HEADER_SIZE;
+            try {
+                load();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to read " + mFile, e);
+                mReadFailed = true;
+            }
+        }
+        return mEntries;
+    }
+
+    private void load() throws IOException {
+        if (!mFile.exists()) {
+            mFileSize = 0;
+            return;
+        }
+        long length = mFile.length();
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unknown file format " + mFile);
+            }
+            valid = FILE_HEADER_SIZE;
+            CRC32 crc = new CRC32();
+            while (true) {
+                int size = in.readInt();
+                long checksum = in.readInt() & 0xffffffffL;
+                if (size <= 0 || size > length - valid - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                byte[] payload = new byte[size];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, size);
+                if (crc.getValue() != checksum) {
+                    break;
+                }
+                readRecord(payload);
+                valid += RECORD_HEADER_SIZE + size;
+            }
+        } catch (EOFException e) {
+            //end of the log, or a torn record.
+        }
+        mFileSize = length;
+        if (valid < mFileSize) {
+            Log.w(TAG, "Discarding " + (mFileSize - valid) + " bytes at the end of " + mFile);
+            try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                file.setLength(valid);
+            }
+            mFileSize = valid;
+        }
+    }
+
+    private void readRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            String key = readString(in);
+            String value = readString(in);
+            if (type == PUT) {
+                put(mEntries, key, value);
+            } else {
+                remove(mEntries, key);
+            }
+        }
+    }
+
+    private void put(Map<String, Entry> entries, String key, String value) {
+        Entry entry = new Entry(value, operationSize(key, value));
+        remove(entries, key);
+        entries.put(key, entry);
+        mLiveSize += entry.mSize;
+    }
+
+    private void remove(Map<String, Entry> entries, String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            mLiveSize -= entry.mSize;
+        }
+    }
+
+    private void append(byte[] payload) throws IOException {
+        if (mOutput == null) {
+            boolean create = mFileSize == 0;
+            if (!create && mFile.length() != mFileSize) {
+                //Remove a record torn by a failed append, records after it would be discarded.
+                try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+                    file.setLength(mFileSize);
+                }
+            }
+            mOutput = new FileOutputStream(mFile, !create);
+            if (create) {
+                mOutput.write(fileHeader());
+                mFileSize = FILE_HEADER_SIZE;
+            }
+        }
+        mOutput.write(record(payload));
+        mOutput.getFD().sync();
+        mFileSize += RECORD_HEADER_SIZE + payload.length;
+    }
+
+    private void compactLocked() throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream((int) mLiveSize);
+        DataOutputStream out = new DataOutputStream(payload);
+        out.writeInt(mEntries.size());
+        for (Map.Entry<String, Entry> entry : mEntries.entrySet()) {
+            writeOperation(out, PUT, entry.getKey(), entry.getValue().mValue);
+        }
+        File compacted = new File(mFile.getPath() + ".compact");
+        try (FileOutputStream output = new FileOutputStream(compacted)) {
+            output.write(fileHeader());
+            if (!mEntries.isEmpty()) {
+                output.write(record(payload.toByteArray()));
+            }
+            output.getFD().sync();
+        }
+        closeOutput();
+        if (!compacted.renameTo(mFile)) {
+            compacted.delete();
+            throw new IOException("Unable to replace " + mFile);
+        }
+        mFileSize = mFile.length();
+    }
+
+    private void closeOutput() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                Log.d(TAG, "close: ", e);
+            }
+            mOutput = null;
+        }
+    }
+
+    private static byte[] fileHeader() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream(FILE_HEADER_SIZE);
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        return header.toByteArray();
+    }
+
+    private static byte[] record(byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        ByteArrayOutputStream record =
+                new ByteArrayOutputStream(RECORD_HEADER_SIZE + payload.length);
+        DataOutputStream out = new DataOutputStream(record);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+        return record.toByteArray();
+    }
+
+    private static void writeOperation(DataOutputStream out, byte type, String key,
+                                       @Nullable String value) throws IOException {
+        out.writeByte(type);
+        writeString(out, key);
+        writeString(out, value);
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static long operationSize(String key, String value) {
+        return OPERATION_HEADER_SIZE + key.getBytes(UTF_8).length +
+                value.getBytes(UTF_8).length;
+    }
+
+    private static final class Entry {
+        private final String mValue;
+        private final long mSize;
+
+        Entry(String value, long size) {
+            mValue = value;
+            mSize = size;
+        }
+    }
+}
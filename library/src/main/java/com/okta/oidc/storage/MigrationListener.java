@@ -0,0 +1,31 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+/**
+ * Receives the progress of a migration to another encryption manager, see
+ * {@link com.okta.oidc.clients.sessions.SessionClient#migrateTo(
+ * com.okta.oidc.storage.security.EncryptionManager, int, MigrationListener)}.
+ */
+public interface MigrationListener {
+    /**
+     * Called before the first batch and after each written batch.
+     *
+     * @param migrated the number of records migrated, including missing ones
+     * @param total    the number of records to migrate
+     */
+    void onProgress(int migrated, int total);
+}
@@ -0,0 +1,388 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.google.gson.Gson;
+import com.okta.oidc.OktaIdToken;
+import com.okta.oidc.Tokens;
+import com.okta.oidc.net.response.TokenResponse;
+import com.okta.oidc.storage.OktaRepository.EncryptionException;
+import com.okta.oidc.storage.security.EncryptionManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores the tokens of several accounts, identified by issuer, client id and subject, in one
+ * {@link OktaStorage} encrypted by one {@link EncryptionManager}. Each account is saved as an
+ * independent record, so saving or switching accounts doesn't rewrite the others.
+ *
+ * Decrypted sessions are kept in memory up to a bound, the least recently used session is
+ * dropped from memory first and decrypted again from storage when needed.
+ *
+ * Sessions are added and activated through a session client, see
+ * {@link com.okta.oidc.clients.sessions.SessionClient#saveAccount(OktaAccountStore)} and
+ * {@link com.okta.oidc.clients.sessions.SessionClient#switchAccount(OktaAccountStore, Account)}.
+ */
+public class OktaAccountStore {
+    private static final String SESSION_KEY_PREFIX = "OktaAccountStore.session.";
+    private static final String ACCOUNTS_KEY = "OktaAccountStore.accounts";
+    private static final String ACTIVE_KEY = "OktaAccountStore.active";
+
+    private final OktaRepository mRepository;
+    private final Gson mGson = new Gson();
+    private final Object mLock = new Object();
+    private final Map<Account, TokenResponse> mSessions;
+    //Known accounts in the order they were added, null until read from storage.
+    private Set<Account> mAccounts;
+    private Account mActiveAccount;
+
+    /**
+     * Instantiates a new account store.
+     *
+     * @param storage                       the storage shared by all accounts
+     * @param context                       the context
+     * @param encryptionManager             the encryption manager shared by all accounts
+     * @param requireHardwareBackedKeyStore true if the keystore must be hardware backed
+     * @param maxCachedSessions             the number of decrypted sessions kept in memory
+     */
+    public OktaAccountStore(@NonNull OktaStorage storage, @NonNull Context context,
+                            @Nullable EncryptionManager encryptionManager,
+                            boolean requireHardwareBackedKeyStore, int maxCachedSessions) {
+        if (maxCachedSessions < 1) {
+            throw new IllegalArgumentException("maxCachedSessions must be positive");
+        }
+        mRepository = new OktaRepository(storage, context, encryptionManager,
+                requireHardwareBackedKeyStore, false);
+        mSessions = new LinkedHashMap<Account, TokenResponse>(maxCachedSessions, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Account, TokenResponse> eldest) {
+                return size() > maxCachedSessions;
+            }
+        };
+    }
+
+    /**
+     * Saves the tokens of an account. The subject is read from the id token. The account
+     * becomes the active account if there is none.
+     * Used by session clients, see {@link #getTokens(Account)} to read the tokens.
+     *
+     * @param issuer        the issuer the tokens were received from
+     * @param clientId      the client id the tokens were issued to
+     * @param tokenResponse the token response, must have an id token
+     * @return the account
+     * @throws EncryptionException if the tokens can't be encrypted
+     */
+    @NonNull
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public Account save(@NonNull String issuer, @NonNull String clientId,
+                        @NonNull TokenResponse tokenResponse) throws EncryptionException {
+        if (tokenResponse.getIdToken() == null) {
+            throw new IllegalArgumentException("id_token is required to identify the account");
+        }
+        Account account = new Account(issuer, clientId,
+                OktaIdToken.parseIdToken(tokenResponse.getIdToken()).getClaims().sub);
+        synchronized (mLock) {
+            mRepository.save(new TokenRecord(getSessionKey(account), tokenResponse.persist()));
+            mSessions.put(account, tokenResponse);
+            Set<Account> accounts = getAccountSet();
+            if (accounts.add(account)) {
+                saveAccounts(accounts);
+            }
+            if (getActiveAccountLocked() == null) {
+                setActiveAccountLocked(account);
+            }
+        }
+        return account;
+    }
+
+    /**
+     * Replaces the tokens of a stored account with refreshed tokens, unless the stored tokens
+     * were changed since {@code previous} was read. Used by session clients to keep the
+     * store in sync with refreshed, and possibly rotated, refresh tokens.
+     *
+     * @param account       the account
+     * @param previous      the tokens that were refreshed
+     * @param tokenResponse the refreshed tokens
+     * @return true if the tokens were replaced
+     * @throws EncryptionException if the tokens can't be decrypted or encrypted
+     */
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public boolean update(@NonNull Account account, @NonNull TokenResponse previous,
+                          @NonNull TokenResponse tokenResponse) throws EncryptionException {
+        synchronized (mLock) {
+            TokenResponse stored = getTokenResponse(account);
+            if (stored == null ||
+                    !TextUtils.equals(stored.getRefreshToken(), previous.getRefreshToken())) {
+                return false;
+            }
+            mRepository.save(new TokenRecord(getSessionKey(account), tokenResponse.persist()));
+            mSessions.put(account, tokenResponse);
+            return true;
+        }
+    }
+
+    /**
+     * Gets the token response of an account.
+     *
+     * @param account the account
+     * @return the token response or null if the account isn't stored
+     * @throws EncryptionException if the tokens can't be decrypted
+     */
+    @Nullable
+    @RestrictTo(RestrictTo.Scope.LIBRARY)
+    public TokenResponse getTokenResponse(@NonNull Account account) throws EncryptionException {
+        synchronized (mLock) {
+            TokenResponse tokenResponse = mSessions.get(account);
+            if (tokenResponse == null && getAccountSet().contains(account)) {
+                TokenRecord record = mRepository.get(new TokenRecord(getSessionKey(account), null));
+                if (record != null) {
+                    tokenResponse = TokenResponse.RESTORE.restore(record.persist());
+                    mSessions.put(account, tokenResponse);
+                }
+            }
+            return tokenResponse;
+        }
+    }
+
+    /**
+     * Gets the tokens of an account.
+     *
+     * @param account the account
+     * @return the tokens or null if the account isn't stored
+     * @throws EncryptionException if the tokens can't be decrypted
+     */
+    @Nullable
+    public Tokens getTokens(@NonNull Account account) throws EncryptionException {
+        TokenResponse tokenResponse = getTokenResponse(account);
+        return tokenResponse == null ? null : new Tokens(tokenResponse);
+    }
+
+    /**
+     * Removes the tokens of an account. If the account is active there is no active account
+     * afterwards.
+     *
+     * @param account the account
+     * @throws EncryptionException if the list of accounts can't be decrypted or encrypted
+     */
+    public void remove(@NonNull Account account) throws EncryptionException {
+        synchronized (mLock) {
+            Set<Account> accounts = getAccountSet();
+            if (account.equals(getActiveAccountLocked())) {
+                mRepository.delete(ACTIVE_KEY);
+                mActiveAccount = null;
+            }
+            if (accounts.remove(account)) {
+                saveAccounts(accounts);
+            }
+            mRepository.delete(getSessionKey(account));
+            mSessions.remove(account);
+        }
+    }
+
+    /**
+     * Removes all accounts.
+     *
+     * @throws EncryptionException if the list of accounts can't be decrypted
+     */
+    public void clear() throws EncryptionException {
+        synchronized (mLock) {
+            mRepository.delete(ACTIVE_KEY);
+            mActiveAccount = null;
+            for (Account account : getAccountSet()) {
+                mRepository.delete(getSessionKey(account));
+            }
+            mRepository.delete(ACCOUNTS_KEY);
+            mAccounts = new LinkedHashSet<>();
+            mSessions.clear();
+        }
+    }
+
+    /**
+     * Gets the stored accounts in the order they were added.
+     *
+     * @return the accounts
+     * @throws EncryptionException if the list of accounts can't be decrypted
+     */
+    @NonNull
+    public List<Account> getAccounts() throws EncryptionException {
+        synchronized (mLock) {
+            return Collections.unmodifiableList(new ArrayList<>(getAccountSet()));
+        }
+    }
+
+    /**
+     * Makes a stored account the active account. Only the reference to the active account is
+     * written, the tokens are not decrypted.
+     *
+     * @param account the account
+     * @throws EncryptionException      if the active account can't be encrypted
+     * @throws IllegalArgumentException if the account isn't stored
+     */
+    public void switchTo(@NonNull Account account) throws EncryptionException {
+        synchronized (mLock) {
+            if (!getAccountSet().contains(account)) {
+                throw new IllegalArgumentException("Unknown account " + account);
+            }
+            if (!account.equals(getActiveAccountLocked())) {
+                setActiveAccountLocked(account);
+            }
+        }
+    }
+
+    /**
+     * Gets the active account.
+     *
+     * @return the active account or null if there is none
+     * @throws EncryptionException if the active account can't be decrypted
+     */
+    @Nullable
+    public Account getActiveAccount() throws EncryptionException {
+        synchronized (mLock) {
+            return getActiveAccountLocked();
+        }
+    }
+
+    /**
+     * Gets the tokens of the active account.
+     *
+     * @return the tokens or null if there is no active account
+     * @throws EncryptionException if the tokens can't be decrypted
+     */
+    @Nullable
+    public Tokens getActiveTokens() throws EncryptionException {
+        synchronized (mLock) {
+            Account account = getActiveAccountLocked();
+            return account == null ? null : getTokens(account);
+        }
+    }
+
+    private Set<Account> getAccountSet() throws EncryptionException {
+        if (mAccounts == null) {
+            Set<Account> accounts = new LinkedHashSet<>();
+            TokenRecord record = mRepository.get(new TokenRecord(ACCOUNTS_KEY, null));
+            if (record != null) {
+                Collections.addAll(accounts, mGson.fromJson(record.persist(), Account[].class));
+            }
+            mAccounts = accounts;
+        }
+        return mAccounts;
+    }
+
+    private void saveAccounts(Set<Account> accounts) throws EncryptionException {
+        mRepository.save(new TokenRecord(ACCOUNTS_KEY,
+                mGson.toJson(accounts.toArray(new Account[0]))));
+    }
+
+    private Account getActiveAccountLocked() throws EncryptionException {
+        if (mActiveAccount == null) {
+            TokenRecord record = mRepository.get(new TokenRecord(ACTIVE_KEY, null));
+            if (record != null) {
+                Account account = mGson.fromJson(record.persist(), Account.class);
+                mActiveAccount = getAccountSet().contains(account) ? account : null;
+            }
+        }
+        return mActiveAccount;
+    }
+
+    private void setActiveAccountLocked(Account account) throws EncryptionException {
+        mRepository.save(new TokenRecord(ACTIVE_KEY, mGson.toJson(account)));
+        mActiveAccount = account;
+    }
+
+    private static String getSessionKey(Account account) {
+        return SESSION_KEY_PREFIX + account.mIssuer + " " + account.mClientId + " " +
+                account.mSubject;
+    }
+
+    /**
+     * An account, the subject of tokens issued to a client by an issuer.
+     */
+    public static final class Account {
+        private final String mIssuer;
+        private final String mClientId;
+        private final String mSubject;
+
+        /**
+         * Instantiates a new account.
+         *
+         * @param issuer   the issuer
+         * @param clientId the client id
+         * @param subject  the subject
+         */
+        public Account(@NonNull String issuer, @NonNull String clientId,
+                       @NonNull String subject) {
+            mIssuer = issuer;
+            mClientId = clientId;
+            mSubject = subject;
+        }
+
+        @NonNull
+        public String getIssuer() {
+            return mIssuer;
+        }
+
+        @NonNull
+        public String getClientId() {
+            return mClientId;
+        }
+
+        @NonNull
+        public String getSubject() {
+            return mSubject;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Account account = (Account) o;
+            return mIssuer.equals(account.mIssuer) && mClientId.equals(account.mClientId) &&
+                    mSubject.equals(account.mSubject);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mIssuer.hashCode();
+            result = 31 * result + mClientId.hashCode();
+            result = 31 * result + mSubject.hashCode();
+            return result;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "Account{issuer=" + mIssuer + ", clientId=" + mClientId + ", subject=" +
+                    mSubject + "}";
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.okta.oidc.storage;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
@@ -24,12 +25,25 @@ import androidx.annotation.RestrictTo;
 
 import com.okta.oidc.storage.security.BaseEncryptionManager;
 import com.okta.oidc.storage.security.EncryptionManager;
+import com.okta.oidc.storage.security.KeyValidityWatcher;
+import com.okta.oidc.util.CodecUtil;
 
+import java.nio.charset.StandardCharsets;
 import java.security.GeneralSecurityException;
 import java.security.InvalidParameterException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.ProviderException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.IllegalBlockSizeException;
 
@@ -46,16 +60,28 @@ import static com.okta.oidc.storage.OktaRepository.EncryptionException.KEYGUARD_
 @RestrictTo(RestrictTo.Scope.LIBRARY)
 public class OktaRepository {
     private static final String TAG = OktaRepository.class.getSimpleName();
-    private static final int MAX_WAIT_TIME_MILLISECONDS_BEFORE_RETRY = 100;
+    //Prefix of the records staged by a migration, followed by the key hashed by the new manager.
+    private static final String MIGRATION_STAGING_PREFIX = "okta_migration.";
+    //Separates the digest of the original stored value from the staged value.
+    private static final char MIGRATION_SEPARATOR = ':';
+    //How long keys found valid are trusted without asking the keystore again.
+    static final long VALID_KEYS_TTL_MS = 5000;
 
     private final OktaStorage storage;
-    private EncryptionManager encryptionManager;
+    private volatile EncryptionManager encryptionManager;
     private boolean requireHardwareBackedKeyStore;
     private boolean cacheMode;
     final Map<String, String> cacheStorage = new HashMap<>();
+    //Incremented under the lock for every change, detects writes during an unlocked decrypt.
+    private long writes;
 
     private final Object lock = new Object();
 
+    private volatile KeystoreRetryPolicy retryPolicy = KeystoreRetryPolicy.DEFAULT;
+    //The manager whose keys were last found valid, cleared when a key fails.
+    @Nullable
+    private volatile ValidKeys validKeys;
+
     public OktaRepository(OktaStorage storage, Context context,
                           @Nullable EncryptionManager encryptionManager,
                           boolean requireHardwareBackedKeyStore,
@@ -67,122 +93,244 @@ public class OktaRepository {
     }
 
     public void setEncryptionManager(EncryptionManager encryptionManager) {
-        this.encryptionManager = encryptionManager;
+        synchronized (lock) {
+            this.encryptionManager = encryptionManager;
+        }
+    }
+
+    /**
+     * Sets the retry policy for keystore errors of this repository.
+     *
+     * @param policy the retry policy, null for {@link KeystoreRetryPolicy#DEFAULT}
+     */
+    public void setRetryPolicy(@Nullable KeystoreRetryPolicy policy) {
+        retryPolicy = policy != null ? policy : KeystoreRetryPolicy.DEFAULT;
     }
 
     public void save(Persistable persistable) throws EncryptionException {
         if (persistable == null) {
             return;
         }
-        synchronized (lock) {
-            if (!requireHardwareBackedKeyStore || encryptionManager != null &&
-                    encryptionManager.isHardwareBackedKeyStore()) {
-                String encryptedData;
-                if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    try {
-                        encryptedData = getEncrypted(persistable.persist());
-                        storage.save(getHashed(persistable.getKey()), encryptedData);
-                    } catch (BaseEncryptionManager.OktaUserNotAuthenticateException e) {
-                        String error = "Failed during encrypt data: " + e.getMessage();
-                        throw new EncryptionException(ENCRYPT_ERROR, error, e.getCause());
-                    } catch (IllegalBlockSizeException e) {
-                        String error = "Unable to encrypt " + persistable.getKey() + " the " +
-                                "cipher algorithm may not be supported on this device" +
-                                e.getMessage();
-                        throw new EncryptionException(ILLEGAL_BLOCK_SIZE, error,
-                                e.getCause());
-                    } catch (GeneralSecurityException e) {
-                        throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
-                                e.getCause());
-                    } catch (InvalidParameterException e) {
-                        throw new EncryptionException(ENCRYPT_ERROR, e.getMessage(),
-                                e.getCause());
-                    }
-                } else {
-                    try {
-                        encryptedData = getEncrypted(persistable.persist());
-                        storage.save(getHashed(persistable.getKey()), encryptedData);
-                    } catch (GeneralSecurityException e) {
-                        throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
-                                e.getCause());
-                    }
+        String value = persistable.persist();
+        EncryptionManager manager = encryptionManager;
+        if (manager != null && manager.isThreadSafe()) {
+            //Encrypted outside the lock, but only written if the manager is still current.
+            String hashedKey = getHashed(manager, persistable.getKey());
+            String encryptedData = retrying(attempt ->
+                    encrypt(manager, persistable.getKey(), value, attempt));
+            synchronized (lock) {
+                if (manager == encryptionManager) {
+                    write(hashedKey, encryptedData, value);
+                    return;
                 }
-            } else {
-                throw new EncryptionException(HARDWARE_BACKED_ERROR,
-                        "Client require hardware backed keystore, " +
-                                "but EncryptionManager doesn't support it.", null);
             }
-            if (cacheMode) {
-                cacheStorage.put(getHashed(persistable.getKey()),
-                        persistable.persist());
+        }
+        //Waits between attempts without holding the lock.
+        retrying(attempt -> {
+            synchronized (lock) {
+                write(getHashed(persistable.getKey()),
+                        encrypt(encryptionManager, persistable.getKey(), value, attempt), value);
             }
+            return null;
+        });
+    }
+
+    /**
+     * Saves and deletes records in one atomic write if the storage is a
+     * {@link TransactionalStorage}. Otherwise the records are saved in order and deleted
+     * afterwards.
+     *
+     * @param saves   the records to save
+     * @param deletes the keys of the records to delete
+     * @return the stored values by record key as written, see {@link #getStoredValue(String)}
+     * @throws EncryptionException if a record can't be encrypted, nothing is written
+     */
+    public Map<String, String> apply(List<? extends Persistable> saves,
+                                     Collection<String> deletes) throws EncryptionException {
+        EncryptionManager manager = encryptionManager;
+        if (manager != null && manager.isThreadSafe()) {
+            //Encrypted outside the lock, but only written if the manager is still current.
+            List<String> encrypted = retrying(attempt -> encryptAll(manager, saves, attempt));
+            synchronized (lock) {
+                if (manager == encryptionManager) {
+                    return writeAll(manager, saves, encrypted, deletes);
+                }
+            }
+        }
+        return retrying(attempt -> {
+            synchronized (lock) {
+                return writeAll(encryptionManager, saves,
+                        encryptAll(encryptionManager, saves, attempt), deletes);
+            }
+        });
+    }
+
+    /**
+     * Gets the value of a record as it is in the storage, encrypted. Nothing is decrypted, so
+     * this is a cheap way to find out if a record was changed by another repository that uses
+     * the same storage since it was last read or written.
+     *
+     * @param key the record key
+     * @return the stored value or null if there is no record
+     * @throws EncryptionException if the key can't be hashed
+     */
+    @Nullable
+    public String getStoredValue(String key) throws EncryptionException {
+        synchronized (lock) {
+            return storage.get(getHashed(key));
+        }
+    }
+
+    private List<String> encryptAll(EncryptionManager manager, List<? extends Persistable> saves,
+                                    int attempt) throws EncryptionException, RetryException {
+        List<String> encrypted = new ArrayList<>(saves.size());
+        for (Persistable persistable : saves) {
+            encrypted.add(encrypt(manager, persistable.getKey(), persistable.persist(), attempt));
+        }
+        return encrypted;
+    }
+
+    private Map<String, String> writeAll(EncryptionManager manager,
+                                         List<? extends Persistable> saves,
+                                         List<String> encrypted, Collection<String> deletes)
+            throws EncryptionException {
+        //All keys are hashed before anything is written.
+        List<String> hashedSaves = new ArrayList<>(saves.size());
+        Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < saves.size(); i++) {
+            hashedSaves.add(getHashed(manager, saves.get(i).getKey()));
+            values.put(hashedSaves.get(i), encrypted.get(i));
+        }
+        List<String> hashedDeletes = new ArrayList<>(deletes.size());
+        for (String key : deletes) {
+            hashedDeletes.add(getHashed(manager, key));
+        }
+        if (storage instanceof TransactionalStorage) {
+            ((TransactionalStorage) storage).apply(values, hashedDeletes);
+        } else {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                storage.save(entry.getKey(), entry.getValue());
+            }
+            for (String key : hashedDeletes) {
+                storage.delete(key);
+            }
+        }
+        writes++;
+        for (String key : hashedDeletes) {
+            cacheStorage.remove(key);
+        }
+        if (cacheMode) {
+            for (int i = 0; i < saves.size(); i++) {
+                cacheStorage.put(hashedSaves.get(i), saves.get(i).persist());
+            }
+        }
+        Map<String, String> stored = new HashMap<>();
+        for (String key : deletes) {
+            stored.put(key, null);
+        }
+        for (int i = 0; i < saves.size(); i++) {
+            stored.put(saves.get(i).getKey(), encrypted.get(i));
+        }
+        return stored;
+    }
+
+    private void write(String hashedKey, String encryptedData, String value) {
+        storage.save(hashedKey, encryptedData);
+        writes++;
+        if (cacheMode) {
+            cacheStorage.put(hashedKey, value);
         }
     }
 
     public <T extends Persistable> T get(Persistable.Restore<T> persistable)
             throws EncryptionException {
-        synchronized (lock) {
-            String data;
-            String key = getHashed(persistable.getKey());
-            if (cacheMode && cacheStorage.get(key) != null) {
-                data = cacheStorage.get(key);
-            } else {
-                data = storage.get(key);
-
-                if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-                    try {
-                        data = getDecrypted(data);
-                    } catch (BaseEncryptionManager.OktaUserNotAuthenticateException e) {
-                        String error = "User not authenticated and try to decrypt data: " +
-                                e.getMessage();
-                        throw new EncryptionException(KEYGUARD_AUTHENTICATION_ERROR, error,
-                                e.getCause());
-                    } catch (IllegalBlockSizeException e) {
-                        String error = "Unable to decrypt " + persistable.getKey() + " the key " +
-                                "used may be invalidated. Please clear data and try again. " +
-                                e.getMessage();
-                        throw new EncryptionException(ILLEGAL_BLOCK_SIZE, error,
-                                e.getCause());
-                    } catch (GeneralSecurityException e) {
-                        throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
-                                e.getCause());
-                    } catch (InvalidParameterException e) {
-                        throw new EncryptionException(DECRYPT_ERROR, e.getMessage(),
-                                e.getCause());
-                    }
-                } else {
-                    try {
-                        data = getDecrypted(data);
-                    } catch (GeneralSecurityException e) {
-                        throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
-                                e.getCause());
-                    }
+        EncryptionManager manager = encryptionManager;
+        if (manager != null && manager.isThreadSafe()) {
+            String key = getHashed(manager, persistable.getKey());
+            String stored;
+            long version;
+            synchronized (lock) {
+                if (cacheMode && cacheStorage.get(key) != null) {
+                    return persistable.restore(cacheStorage.get(key));
                 }
-
-                if (cacheMode) {
-                    cacheStorage.put(key, data);
+                stored = storage.get(key);
+                version = writes;
+            }
+            //Decrypted outside the lock, cached only if nothing was written meanwhile.
+            String data = retrying(attempt ->
+                    decrypt(manager, persistable.getKey(), stored, attempt));
+            if (cacheMode) {
+                synchronized (lock) {
+                    if (version == writes && manager == encryptionManager) {
+                        cacheStorage.put(key, data);
+                    }
                 }
             }
             return persistable.restore(data);
         }
+        return retrying(attempt -> {
+            synchronized (lock) {
+                String data;
+                String key = getHashed(persistable.getKey());
+                if (cacheMode && cacheStorage.get(key) != null) {
+                    data = cacheStorage.get(key);
+                } else {
+                    data = decrypt(encryptionManager, persistable.getKey(), storage.get(key),
+                            attempt);
+                    if (cacheMode) {
+                        cacheStorage.put(key, data);
+                    }
+                }
+                return persistable.restore(data);
+            }
+        });
     }
 
     public boolean contains(Persistable.Restore persistable) {
         synchronized (lock) {
-            String key = getHashed(persistable.getKey());
+            String key;
+            try {
+                key = getHashed(persistable.getKey());
+            } catch (EncryptionException e) {
+                Log.w(TAG, "contains: the record key can't be hashed", e);
+                return false;
+            }
             return (cacheMode && cacheStorage.get(key) != null) || storage.get(key) != null;
         }
     }
 
+    /**
+     * Checks if the keys of the encryption manager are valid, without decrypting anything. The
+     * keystore is only asked if the manager isn't watched by the {@link KeyValidityWatcher} and
+     * its keys weren't found valid in the last {@link #VALID_KEYS_TTL_MS} milliseconds. Keys can
+     * be invalidated by the system at any time, so a valid result isn't kept longer.
+     *
+     * @return true if valid or if no encryption manager is set
+     */
+    public boolean isValidKeys() {
+        EncryptionManager manager = encryptionManager;
+        if (manager == null) {
+            return true;
+        }
+        Boolean watched = KeyValidityWatcher.getLastResult(manager);
+        if (watched != null) {
+            return watched;
+        }
+        ValidKeys cached = validKeys;
+        long now = SystemClock.elapsedRealtime();
+        if (cached != null && cached.manager == manager && now < cached.expiresAt) {
+            return true;
+        }
+        boolean valid = manager.isValidKeys();
+        validKeys = valid ? new ValidKeys(manager, now + VALID_KEYS_TTL_MS) : null;
+        return valid;
+    }
+
     public void delete(Persistable persistable) {
         if (persistable == null) {
             return;
         }
-        synchronized (lock) {
-            String key = getHashed(persistable.getKey());
-            storage.delete(key);
-            cacheStorage.remove(key);
-        }
+        delete(persistable.getKey());
     }
 
     public void delete(String key) {
@@ -190,53 +338,425 @@ public class OktaRepository {
             return;
         }
         synchronized (lock) {
-            String hashedKey = getHashed(key);
+            String hashedKey;
+            try {
+                hashedKey = getHashed(key);
+            } catch (EncryptionException e) {
+                Log.w(TAG, "delete: the record key can't be hashed", e);
+                return;
+            }
             storage.delete(hashedKey);
+            writes++;
             cacheStorage.remove(hashedKey);
         }
     }
 
-    private String getEncrypted(String value) throws GeneralSecurityException {
-        if (encryptionManager == null) {
-            return value;
+    /**
+     * Re-encrypts the records with the given keys using another encryption manager, which is
+     * used for all operations afterwards. Each record is decrypted and encrypted in memory and
+     * the records are written in batches, each batch in one atomic transaction if the storage
+     * is a {@link TransactionalStorage}.
+     *
+     * Migrated records are staged next to the originals, which stay readable with the current
+     * manager until every record is staged. The staged records then replace the originals in
+     * one atomic write if the storage is a {@link TransactionalStorage}. If the process dies
+     * midway, calling migrate again with the same keys and manager, on a repository that uses
+     * the previous manager, reuses the staged records whose original is unchanged and
+     * continues with the remaining records.
+     *
+     * @param manager   the encryption manager to migrate to
+     * @param keys      the keys of the records to migrate, missing records are skipped
+     * @param batchSize the records written per transaction, zero or less for one transaction
+     * @param listener  notified after each batch, may be null
+     * @return the migration statistics
+     * @throws EncryptionException if a record can't be decrypted or encrypted, nothing is
+     *                             written for the current batch
+     */
+    public MigrationResult migrate(EncryptionManager manager, Collection<String> keys,
+                                   int batchSize, @Nullable MigrationListener listener)
+            throws EncryptionException {
+        synchronized (lock) {
+            if (requireHardwareBackedKeyStore &&
+                    (manager == null || !manager.isHardwareBackedKeyStore())) {
+                throw new EncryptionException(HARDWARE_BACKED_ERROR,
+                        "Client require hardware backed keystore, " +
+                                "but EncryptionManager doesn't support it.", null);
+            }
+            MigrationResult result = new MigrationResult(keys.size());
+            long start = System.nanoTime();
+            List<String> pending = new ArrayList<>();
+            for (String key : keys) {
+                String staged = storage.get(getStagingKey(manager, key));
+                if (staged != null && isStagedFrom(staged, storage.get(getHashed(key)))) {
+                    result.mMigrated++;
+                } else {
+                    pending.add(key);
+                }
+            }
+            if (listener != null) {
+                listener.onProgress(result.mMigrated, result.mTotal);
+            }
+            int size = batchSize > 0 ? batchSize : Math.max(pending.size(), 1);
+            for (int from = 0; from < pending.size(); from += size) {
+                stageBatch(manager, pending.subList(from, Math.min(from + size,
+                        pending.size())), result);
+                if (listener != null) {
+                    listener.onProgress(result.mMigrated, result.mTotal);
+                }
+            }
+            replaceStaged(manager, keys, result);
+            encryptionManager = manager;
+            result.mTotalNanos = System.nanoTime() - start;
+            return result;
         }
+    }
+
+    private void stageBatch(EncryptionManager manager, List<String> batch,
+                            MigrationResult result) throws EncryptionException {
+        Map<String, String> values = new LinkedHashMap<>();
+        Set<String> deletes = new HashSet<>();
+        for (String key : batch) {
+            String stagingKey = getStagingKey(manager, key);
+            String data = storage.get(getHashed(key));
+            if (data != null) {
+                long start = System.nanoTime();
+                //The migration holds the lock, retries wait with it.
+                String value = retrying(attempt ->
+                        decrypt(encryptionManager, key, data, attempt));
+                long decryptEnd = System.nanoTime();
+                String encrypted = retrying(attempt -> encrypt(manager, key, value, attempt));
+                result.mDecryptNanos += decryptEnd - start;
+                result.mEncryptNanos += System.nanoTime() - decryptEnd;
+                values.put(stagingKey, digest(data) + MIGRATION_SEPARATOR + encrypted);
+            } else {
+                result.mSkipped++;
+                //Staged by an interrupted migration before the original was deleted.
+                deletes.add(stagingKey);
+            }
+        }
+        long start = System.nanoTime();
+        writeMigration(values, deletes);
+        result.mWriteNanos += System.nanoTime() - start;
+        result.mMigrated += batch.size();
+    }
+
+    private void replaceStaged(EncryptionManager manager, Collection<String> keys,
+                               MigrationResult result) throws EncryptionException {
+        Map<String, String> values = new LinkedHashMap<>();
+        Set<String> deletes = new LinkedHashSet<>();
+        Map<String, String> moved = new HashMap<>();
+        for (String key : keys) {
+            String oldKey = getHashed(key);
+            String newKey = getHashed(manager, key);
+            String stagingKey = MIGRATION_STAGING_PREFIX + newKey;
+            String staged = storage.get(stagingKey);
+            if (staged == null) {
+                continue;
+            }
+            values.put(newKey, staged.substring(staged.indexOf(MIGRATION_SEPARATOR) + 1));
+            deletes.add(stagingKey);
+            if (!oldKey.equals(newKey)) {
+                deletes.add(oldKey);
+            }
+            moved.put(oldKey, newKey);
+        }
+        if (values.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        //Saves are applied before deletes, so without transactions a crash leaves the originals.
+        writeMigration(values, deletes);
+        result.mWriteNanos += System.nanoTime() - start;
+        writes++;
+        //The decrypted values are unchanged, only their keys.
+        Map<String, String> decrypted = new HashMap<>();
+        for (Map.Entry<String, String> entry : moved.entrySet()) {
+            String value = cacheStorage.remove(entry.getKey());
+            if (value != null) {
+                decrypted.put(entry.getValue(), value);
+            }
+        }
+        if (cacheMode) {
+            cacheStorage.putAll(decrypted);
+        }
+    }
+
+    private void writeMigration(Map<String, String> values, Collection<String> deletes) {
+        if (storage instanceof TransactionalStorage) {
+            ((TransactionalStorage) storage).apply(values, deletes);
+        } else {
+            for (Map.Entry<String, String> entry : values.entrySet()) {
+                storage.save(entry.getKey(), entry.getValue());
+            }
+            for (String key : deletes) {
+                storage.delete(key);
+            }
+        }
+    }
+
+    private static String getStagingKey(EncryptionManager manager, String key)
+            throws EncryptionException {
+        return MIGRATION_STAGING_PREFIX + getHashed(manager, key);
+    }
+
+    private static boolean isStagedFrom(String staged, @Nullable String data) {
+        int separator = staged.indexOf(MIGRATION_SEPARATOR);
+        return data != null && separator > 0 &&
+                staged.substring(0, separator).equals(digest(data));
+    }
+
+    private static String digest(String value) {
         try {
-            return encryptionManager.encrypt(value);
-        } catch (ProviderException | GeneralSecurityException ex) {
-            sleep();
-            return encryptionManager.encrypt(value);
+            return CodecUtil.toHex(MessageDigest.getInstance("SHA-256")
+                    .digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            //Available on every Android version.
+            throw new IllegalStateException(e);
         }
     }
 
-    private String getDecrypted(String value) throws GeneralSecurityException {
+    private String encrypt(EncryptionManager manager, String key, String value, int attempt)
+            throws EncryptionException, RetryException {
+        if (requireHardwareBackedKeyStore &&
+                (manager == null || !manager.isHardwareBackedKeyStore())) {
+            throw new EncryptionException(HARDWARE_BACKED_ERROR,
+                    "Client require hardware backed keystore, " +
+                            "but EncryptionManager doesn't support it.", null);
+        }
+        try {
+            return getEncrypted(manager, value);
+        } catch (ProviderException e) {
+            retry(attempt, e);
+            throw e;
+        } catch (GeneralSecurityException e) {
+            validKeys = null;
+            retry(attempt, e);
+            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                if (e instanceof BaseEncryptionManager.OktaUserNotAuthenticateException) {
+                    String error = "Failed during encrypt data: " + e.getMessage();
+                    throw new EncryptionException(ENCRYPT_ERROR, error, e.getCause());
+                } else if (e instanceof IllegalBlockSizeException) {
+                    String error = "Unable to encrypt " + key + " the " +
+                            "cipher algorithm may not be supported on this device" +
+                            e.getMessage();
+                    throw new EncryptionException(ILLEGAL_BLOCK_SIZE, error,
+                            e.getCause());
+                }
+            }
+            throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
+                    e.getCause());
+        } catch (InvalidParameterException e) {
+            if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                throw e;
+            }
+            throw new EncryptionException(ENCRYPT_ERROR, e.getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private String decrypt(EncryptionManager manager, String key, String data, int attempt)
+            throws EncryptionException, RetryException {
+        if (data != null && KeyValidityWatcher.isKnownInvalid(manager)) {
+            //Rechecked in the background in case the keys were recreated by other means.
+            KeyValidityWatcher.check();
+            throw new EncryptionException(INVALID_KEYS_ERROR,
+                    "Unable to decrypt " + key + " the keys are invalid", null);
+        }
+        try {
+            return getDecrypted(manager, data);
+        } catch (ProviderException e) {
+            retry(attempt, e);
+            throw e;
+        } catch (GeneralSecurityException e) {
+            validKeys = null;
+            retry(attempt, e);
+            if (android.os.Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                if (e instanceof BaseEncryptionManager.OktaUserNotAuthenticateException) {
+                    String error = "User not authenticated and try to decrypt data: " +
+                            e.getMessage();
+                    throw new EncryptionException(KEYGUARD_AUTHENTICATION_ERROR, error,
+                            e.getCause());
+                } else if (e instanceof IllegalBlockSizeException) {
+                    String error = "Unable to decrypt " + key + " the key " +
+                            "used may be invalidated. Please clear data and try again. " +
+                            e.getMessage();
+                    throw new EncryptionException(ILLEGAL_BLOCK_SIZE, error,
+                            e.getCause());
+                }
+            }
+            throw new EncryptionException(INVALID_KEYS_ERROR, e.getMessage(),
+                    e.getCause());
+        } catch (InvalidParameterException e) {
+            if (android.os.Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+                throw e;
+            }
+            throw new EncryptionException(DECRYPT_ERROR, e.getMessage(),
+                    e.getCause());
+        }
+    }
+
+    private static String getEncrypted(EncryptionManager encryptionManager, String value)
+            throws GeneralSecurityException {
         if (encryptionManager == null) {
             return value;
         }
-        try {
-            return encryptionManager.decrypt(value);
-        } catch (ProviderException | GeneralSecurityException ex) {
-            sleep();
-            return encryptionManager.decrypt(value);
+        return encryptionManager.encrypt(value);
+    }
+
+    private static String getDecrypted(EncryptionManager encryptionManager, String value)
+            throws GeneralSecurityException {
+        if (encryptionManager == null) {
+            return value;
         }
+        return encryptionManager.decrypt(value);
     }
 
-    private String getHashed(String value) {
+    private KeystoreRetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    //Asks the retry policy, throws to retry or returns to fail with the error.
+    private void retry(int attempt, Exception error) throws RetryException {
+        KeystoreRetryPolicy policy = getRetryPolicy();
+        KeystoreRetryPolicy.Listener listener = policy.getListener();
+        long delay = policy.getRetryDelay(attempt, error);
+        if (delay >= 0) {
+            if (listener != null) {
+                listener.onRetry(attempt, delay, error);
+            }
+            throw new RetryException(delay);
+        }
+        if (listener != null) {
+            listener.onFailure(attempt, error);
+        }
+    }
+
+    /*
+     * Runs the operation until it doesn't request a retry. The caller must not hold the lock,
+     * so other readers and writers can proceed while waiting.
+     */
+    private <T> T retrying(Attempt<T> operation) throws EncryptionException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = operation.run(attempt);
+                if (attempt > 1) {
+                    KeystoreRetryPolicy.Listener listener = getRetryPolicy().getListener();
+                    if (listener != null) {
+                        listener.onRecovered(attempt);
+                    }
+                }
+                return result;
+            } catch (RetryException e) {
+                sleep(e.mDelayMillis);
+            }
+        }
+    }
+
+    private String getHashed(String value) throws EncryptionException {
+        return getHashed(encryptionManager, value);
+    }
+
+    /*
+     * A plain digest that fails falls back to the record key as before. A keyed hash can't,
+     * the record would be written under a different key than the one it is read with.
+     */
+    private static String getHashed(EncryptionManager encryptionManager, String value)
+            throws EncryptionException {
         try {
             return encryptionManager.getHashed(value);
         } catch (Exception ex) {
+            if (encryptionManager != null && encryptionManager.isKeyedHash()) {
+                throw new EncryptionException(ENCRYPT_ERROR, "Failed to hash the record key",
+                        ex);
+            }
             Log.d(TAG, "getHashed: ", ex);
             return value;
         }
     }
 
-    // Copyright 2017 Google Inc.
-    // https://github.com/google/tink/blob/cb814f1e1b69caf6211046bee083a730625a3cf9/java_src/src/main/java/com/google/crypto/tink/integration/android/AndroidKeystoreAesGcm.java
-    private static void sleep() {
-        int waitTimeMillis = (int) (Math.random() * MAX_WAIT_TIME_MILLISECONDS_BEFORE_RETRY);
+    private static void sleep(long delayMillis) {
+        if (delayMillis <= 0) {
+            return;
+        }
         try {
-            Thread.sleep(waitTimeMillis);
+            Thread.sleep(delayMillis);
         } catch (InterruptedException ex) {
-            // Ignored.
+            //Retry right away, but keep the interrupt for the caller.
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private interface Attempt<T> {
+        T run(int attempt) throws EncryptionException, RetryException;
+    }
+
+    //Signals that the attempt failed and should be retried after the delay.
+    private static final class RetryException extends Exception {
+        private static final long serialVersionUID = 1L;
+        private final long mDelayMillis;
+
+        RetryException(long delayMillis) {
+            mDelayMillis = delayMillis;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    private static final class ValidKeys {
+        private final EncryptionManager manager;
+        private final long expiresAt;
+
+        ValidKeys(EncryptionManager manager, long expiresAt) {
+            this.manager = manager;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Statistics of a migration.
+     */
+    public static class MigrationResult {
+        private final int mTotal;
+        private int mMigrated;
+        private int mSkipped;
+        private long mDecryptNanos;
+        private long mEncryptNanos;
+        private long mWriteNanos;
+        private long mTotalNanos;
+
+        MigrationResult(int total) {
+            mTotal = total;
+        }
+
+        public int getTotal() {
+            return mTotal;
+        }
+
+        public int getMigrated() {
+            return mMigrated;
+        }
+
+        public int getSkipped() {
+            return mSkipped;
+        }
+
+        public long getDecryptTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(mDecryptNanos);
+        }
+
+        public long getEncryptTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(mEncryptNanos);
+        }
+
+        public long getWriteTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(mWriteNanos);
+        }
+
+        public long getTotalTimeMs() {
+            return TimeUnit.NANOSECONDS.toMillis(mTotalNanos);
         }
     }
 
@@ -23,15 +23,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
+import java.util.Collection;
+import java.util.Map;
+
 import static android.content.Context.MODE_PRIVATE;
 
 /**
  * A implementation of {@link OktaStorage}.
  * The implementation uses SharedPreferences in private mode to save data.
- * The data will be encrypted by the library before saving.
+ * The data will be encrypted by the library before saving. Batches of changes are applied
+ * with a single commit, which is atomic.
  */
 @SuppressLint("ApplySharedPref")
-public class SharedPreferenceStorage implements OktaStorage {
+public class SharedPreferenceStorage implements TransactionalStorage {
     @VisibleForTesting
     protected SharedPreferences prefs;
 
@@ -72,4 +76,16 @@ public class SharedPreferenceStorage implements OktaStorage {
     public void delete(@NonNull String key) {
         prefs.edit().remove(key).commit();
     }
+
+    @Override
+    public void apply(@NonNull Map<String, String> values, @NonNull Collection<String> deletes) {
+        SharedPreferences.Editor editor = prefs.edit();
+        for (String key : deletes) {
+            editor.remove(key);
+        }
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            editor.putString(entry.getKey(), entry.getValue());
+        }
+        editor.commit();
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+/**
+ * A string value stored under a fixed key. The same instance restores the value stored under
+ * its key, so one constant can be used to read and write a record.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class TokenRecord implements Persistable, Persistable.Restore<TokenRecord> {
+    private final String mKey;
+    private final String mValue;
+
+    public TokenRecord(@NonNull String key) {
+        this(key, null);
+    }
+
+    public TokenRecord(@NonNull String key, @Nullable String value) {
+        mKey = key;
+        mValue = value;
+    }
+
+    @NonNull
+    @Override
+    public String getKey() {
+        return mKey;
+    }
+
+    @Override
+    public String persist() {
+        return mValue;
+    }
+
+    @Override
+    public TokenRecord restore(@Nullable String data) {
+        return data == null ? null : new TokenRecord(mKey, data);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import androidx.annotation.NonNull;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An {@link OktaStorage} that can apply several changes atomically. Operations that rewrite
+ * several records, like migrating to another encryption manager, use it so that a crash midway
+ * doesn't leave a partially written session. Other storages get the changes one at a time.
+ */
+public interface TransactionalStorage extends OktaStorage {
+    /**
+     * Save and delete the records in one atomic operation. Either all changes are persisted
+     * or none.
+     *
+     * @param values  the key-value pairs to save
+     * @param deletes the keys to delete
+     */
+    void apply(@NonNull Map<String, String> values, @NonNull Collection<String> deletes);
+}
@@ -19,11 +19,14 @@ import android.content.Context;
 import android.os.Build;
 import android.security.keystore.StrongBoxUnavailableException;
 import android.security.keystore.UserNotAuthenticatedException;
-import android.util.Base64;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 
+import com.okta.oidc.util.CodecUtil;
+import com.okta.oidc.util.LazyExecutor;
+
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
@@ -42,9 +45,20 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.spec.MGF1ParameterSpec;
 import java.security.spec.X509EncodedKeySpec;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Cipher;
 import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
 import javax.crypto.spec.OAEPParameterSpec;
 import javax.crypto.spec.PSource;
 
@@ -67,10 +81,38 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
     // RSA doesn't support encryption of lot amount of data.
     // Use formula to calculate the max size of chunk: (KEY_SIZE/8) - 11
     private static final int CHUNK_SIZE = (int) (((RSA_KEY_SIZE / 8) - 11) * 0.5);
-    private static final String CHUNK_SEPARATOR = ",";
+    private static final char CHUNK_SEPARATOR = ',';
+
+    // Legacy records of many chunks are decrypted on up to DECRYPT_PARALLELISM threads.
+    private static final int PARALLEL_DECRYPT_MIN_CHUNKS = 4;
+    private static final int DECRYPT_PARALLELISM =
+            Math.min(4, Runtime.getRuntime().availableProcessors());
+    private static final LazyExecutor sDecryptExecutor =
+            new LazyExecutor(TAG, DECRYPT_PARALLELISM - 1, true);
+
+    private static final int MAX_POOLED_CIPHERS = 4;
+
+    // Record keys are hashed on every repository call. There are few of them, so each is
+    // hashed once. The cache is cleared if it ever grows past MAX_CACHED_HASHES.
+    private static final int MAX_CACHED_HASHES = 64;
+    private static final String HASH_ALGORITHM = "HmacSHA256";
+    private static final String HASH_KEY_ALIAS_SUFFIX = "_hash";
+    // HMAC-SHA256 truncated to 160 bits, 32 characters in base32.
+    private static final int KEYED_HASH_LENGTH = 20;
+    protected boolean mIsKeyedHash;
+    private final Map<String, String> mHashes = new ConcurrentHashMap<>();
+    private SecretKey mHashKey;
 
     protected KeyStore mKeyStore;
-    protected Cipher mCipher;
+    //The cipher authorized by the user, see setCipher. Guarded by mCipherLock.
+    protected volatile Cipher mCipher;
+    protected final Object mCipherLock = new Object();
+    private final Queue<Cipher> mCiphers = new ConcurrentLinkedQueue<>();
+    //The number of ciphers in mCiphers, at most MAX_POOLED_CIPHERS.
+    private final AtomicInteger mPooledCiphers = new AtomicInteger();
+    //Keys read from the key store, dropped when the keys are removed or recreated.
+    private volatile PublicKey mEncryptKey;
+    private volatile PrivateKey mDecryptKey;
 
     private long initCipherStart = System.currentTimeMillis();
 
@@ -163,16 +205,6 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
                                      int keySize, String encryptionPaddings, String blockMode,
                                      boolean isStrongBoxBacked, @Nullable byte[] seed);
 
-    private static String toHex(byte[] data) {
-        StringBuilder sb = new StringBuilder();
-
-        for (byte b : data) {
-            sb.append(String.format("%02X", b));
-        }
-
-        return sb.toString();
-    }
-
     private void deleteInvalidKey(String keyAlias) {
         if (mKeyStore != null) {
             try {
@@ -183,21 +215,6 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
         }
     }
 
-    private boolean initCipher(String keyAlias, int mode) throws GeneralSecurityException {
-        switch (mode) {
-            case Cipher.ENCRYPT_MODE:
-                initEncodeCipher(keyAlias, mode);
-                break;
-
-            case Cipher.DECRYPT_MODE:
-                initDecodeCipher(keyAlias, mode);
-                break;
-            default:
-                return false; //this cipher is only for encode\decode
-        }
-        return true;
-    }
-
     private String getUserNotAuthenticatedMessage(Cipher cipher) {
         String errorMessage = "User isn't authenticated";
         if (cipher != null) {
@@ -207,10 +224,15 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
         return errorMessage;
     }
 
-    private void initDecodeCipher(String keyAlias, int mode) throws GeneralSecurityException {
-        PrivateKey key = (PrivateKey) mKeyStore.getKey(keyAlias, null);
+    private void initDecodeCipher(Cipher cipher, String keyAlias)
+            throws GeneralSecurityException {
+        PrivateKey key = mDecryptKey;
+        if (key == null) {
+            key = (PrivateKey) mKeyStore.getKey(keyAlias, null);
+            mDecryptKey = key;
+        }
         try {
-            mCipher.init(mode, key);
+            cipher.init(Cipher.DECRYPT_MODE, key);
         } catch (InvalidKeyException e) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
                 if (e instanceof UserNotAuthenticatedException) {
@@ -222,24 +244,29 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
         }
     }
 
-    private void initEncodeCipher(String keyAlias, int mode) throws GeneralSecurityException {
-        Certificate certificate = mKeyStore.getCertificate(keyAlias);
-        if (certificate == null) {
-            KeyStore.PrivateKeyEntry entry =
-                    (KeyStore.PrivateKeyEntry) mKeyStore.getEntry(keyAlias, null);
-            certificate = entry.getCertificate();
-        }
+    private void initEncodeCipher(Cipher cipher, String keyAlias)
+            throws GeneralSecurityException {
+        PublicKey unrestricted = mEncryptKey;
+        if (unrestricted == null) {
+            Certificate certificate = mKeyStore.getCertificate(keyAlias);
+            if (certificate == null) {
+                KeyStore.PrivateKeyEntry entry =
+                        (KeyStore.PrivateKeyEntry) mKeyStore.getEntry(keyAlias, null);
+                certificate = entry.getCertificate();
+            }
 
-        if (certificate == null) {
-            throw new GeneralSecurityException("Unable to retrieve certificate");
-        }
+            if (certificate == null) {
+                throw new GeneralSecurityException("Unable to retrieve certificate");
+            }
 
-        PublicKey key = certificate.getPublicKey();
+            PublicKey key = certificate.getPublicKey();
 
-        // workaround for using public key
-        // from https://developer.android.com/reference/android/security/keystore/KeyGenParameterSpec.html#known-issues
-        PublicKey unrestricted = KeyFactory.getInstance(key.getAlgorithm())
-                .generatePublic(new X509EncodedKeySpec(key.getEncoded()));
+            // workaround for using public key
+            // from https://developer.android.com/reference/android/security/keystore/KeyGenParameterSpec.html#known-issues
+            unrestricted = KeyFactory.getInstance(key.getAlgorithm())
+                    .generatePublic(new X509EncodedKeySpec(key.getEncoded()));
+            mEncryptKey = unrestricted;
+        }
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !mIsStrongBoxBacked) {
             // from https://code.google.com/p/android/issues/detail?id=197719
@@ -248,9 +275,33 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
             OAEPParameterSpec spec = new OAEPParameterSpec("SHA-256", "MGF1",
                     MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
 
-            mCipher.init(mode, unrestricted, spec);
+            cipher.init(Cipher.ENCRYPT_MODE, unrestricted, spec);
         } else {
-            mCipher.init(mode, unrestricted);
+            cipher.init(Cipher.ENCRYPT_MODE, unrestricted);
+        }
+    }
+
+    /*
+     * Encryption and decryption use ciphers from a pool, so different records can be processed
+     * concurrently. A pooled cipher is initialized for each record. Keys that must be authorized
+     * for each use can only decrypt with mCipher, the cipher authorized by the user, those
+     * records are decrypted one at a time. Every acquired cipher is released, also on failure,
+     * it is initialized again before its next use.
+     */
+    private Cipher acquireCipher() throws GeneralSecurityException {
+        Cipher cipher = mCiphers.poll();
+        if (cipher == null) {
+            return createCipher(mTransformationString);
+        }
+        mPooledCiphers.decrementAndGet();
+        return cipher;
+    }
+
+    private void releaseCipher(Cipher cipher) {
+        if (mPooledCiphers.incrementAndGet() <= MAX_POOLED_CIPHERS) {
+            mCiphers.offer(cipher);
+        } else {
+            mPooledCiphers.decrementAndGet();
         }
     }
 
@@ -261,8 +312,13 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
                 throw new InvalidParameterException(
                         "Cipher is null. Please initialize proper cipher");
             }
-            if (initCipher(mKeyAlias, Cipher.ENCRYPT_MODE)) {
-                StringBuilder encryptedBuilder = new StringBuilder();
+            Cipher cipher = acquireCipher();
+            try {
+                initEncodeCipher(cipher, mKeyAlias);
+                //Each chunk of up to CHUNK_SIZE chars encrypts to one RSA block.
+                int chunks = (inputString.length() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+                StringBuilder encryptedBuilder = new StringBuilder(chunks *
+                        (CodecUtil.base64Length(RSA_KEY_SIZE / 8, 0) + 1));
                 int chunkStart = 0;
                 while (chunkStart < inputString.length()) {
                     int chunkEnd = chunkStart + CHUNK_SIZE;
@@ -270,14 +326,16 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
                             chunkStart,
                             chunkEnd < inputString.length() ? chunkEnd : inputString.length()
                     ).getBytes();
-                    byte[] bytes = mCipher.doFinal(chunk);
+                    byte[] bytes = cipher.doFinal(chunk);
                     chunkStart = chunkEnd;
-                    encryptedBuilder.append(Base64.encodeToString(bytes, Base64.NO_WRAP));
+                    CodecUtil.appendBase64(bytes, 0, bytes.length, encryptedBuilder, 0);
                     if (chunkStart < inputString.length()) {
                         encryptedBuilder.append(CHUNK_SEPARATOR);
                     }
                 }
                 return encryptedBuilder.toString();
+            } finally {
+                releaseCipher(cipher);
             }
         }
         return inputString;
@@ -291,14 +349,23 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
                     throw new InvalidParameterException(
                             "Cipher is null. Please initialize proper cipher");
                 }
-                if (initCipher(mKeyAlias, Cipher.DECRYPT_MODE)) {
-                    StringBuilder decryptedBuilder = new StringBuilder();
-                    String[] chunks = encryptedString.split(CHUNK_SEPARATOR);
-                    for (String chunk : chunks) {
-                        byte[] bytes = Base64.decode(chunk, Base64.NO_WRAP);
-                        decryptedBuilder.append(new String(mCipher.doFinal(bytes)));
+                if (!canDecryptWithNewCipher()) {
+                    synchronized (mCipherLock) {
+                        initDecodeCipher(mCipher, mKeyAlias);
+                        return decryptChunks(mCipher, encryptedString);
+                    }
+                }
+                Cipher cipher = acquireCipher();
+                try {
+                    //Initialized first to report keyguard errors before any parallel work.
+                    initDecodeCipher(cipher, mKeyAlias);
+                    String decrypted = decryptInParallel(cipher, encryptedString);
+                    if (decrypted == null) {
+                        decrypted = decryptChunks(cipher, encryptedString);
                     }
-                    return decryptedBuilder.toString();
+                    return decrypted;
+                } finally {
+                    releaseCipher(cipher);
                 }
             }
             return encryptedString;
@@ -316,12 +383,188 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
         }
     }
 
+    private static String decryptChunks(Cipher cipher, String encryptedString)
+            throws GeneralSecurityException {
+        StringBuilder decryptedBuilder = new StringBuilder();
+        byte[] buffer = null;
+        int chunkStart = 0;
+        while (chunkStart <= encryptedString.length()) {
+            int chunkEnd = encryptedString.indexOf(CHUNK_SEPARATOR, chunkStart);
+            if (chunkEnd < 0) {
+                chunkEnd = encryptedString.length();
+            }
+            int maxLength = CodecUtil.maxDecodedLength(chunkEnd - chunkStart);
+            if (buffer == null || buffer.length < maxLength) {
+                buffer = new byte[maxLength];
+            }
+            int length = CodecUtil.decodeBase64(encryptedString, chunkStart, chunkEnd,
+                    buffer, 0);
+            decryptedBuilder.append(new String(cipher.doFinal(buffer, 0, length)));
+            chunkStart = chunkEnd + 1;
+        }
+        return decryptedBuilder.toString();
+    }
+
+    /*
+     * Decrypts the chunks of a record on several threads, each with its own cipher. The first
+     * group of chunks is decrypted on the calling thread with the initialized cipher. Returns
+     * null if the record is too small to benefit or any chunk fails to decrypt, the caller then
+     * decrypts sequentially to report the failure as before. After a failure the cipher is
+     * initialized again, it may have thrown partway through a chunk.
+     */
+    @Nullable
+    private String decryptInParallel(Cipher cipher, String encryptedString)
+            throws GeneralSecurityException {
+        int chunks = 1;
+        for (int i = 0; i < encryptedString.length(); i++) {
+            if (encryptedString.charAt(i) == CHUNK_SEPARATOR) {
+                chunks++;
+            }
+        }
+        if (chunks < PARALLEL_DECRYPT_MIN_CHUNKS || DECRYPT_PARALLELISM < 2) {
+            return null;
+        }
+        int[] bounds = new int[chunks + 1];
+        bounds[0] = -1;
+        for (int i = 0, chunk = 1; chunk < chunks; i++) {
+            if (encryptedString.charAt(i) == CHUNK_SEPARATOR) {
+                bounds[chunk++] = i;
+            }
+        }
+        bounds[chunks] = encryptedString.length();
+
+        byte[][] decrypted = new byte[chunks][];
+        try {
+            int groups = Math.min(DECRYPT_PARALLELISM, chunks);
+            List<Future<Void>> futures = new ArrayList<>(groups - 1);
+            for (int group = 1; group < groups; group++) {
+                int first = chunks * group / groups;
+                int last = chunks * (group + 1) / groups;
+                futures.add(sDecryptExecutor.get().submit(() -> {
+                    Cipher groupCipher = acquireCipher();
+                    try {
+                        initDecodeCipher(groupCipher, mKeyAlias);
+                        decryptChunks(groupCipher, encryptedString, bounds, first, last,
+                                decrypted);
+                    } finally {
+                        releaseCipher(groupCipher);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                decryptChunks(cipher, encryptedString, bounds, 0, chunks / groups, decrypted);
+            } finally {
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            }
+        } catch (GeneralSecurityException | ExecutionException e) {
+            Log.d(TAG, "decryptInParallel: ", e);
+            initDecodeCipher(cipher, mKeyAlias);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            initDecodeCipher(cipher, mKeyAlias);
+            return null;
+        }
+
+        int length = 0;
+        for (byte[] bytes : decrypted) {
+            length += bytes.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] bytes : decrypted) {
+            System.arraycopy(bytes, 0, result, offset, bytes.length);
+            offset += bytes.length;
+        }
+        return new String(result);
+    }
+
+    private static void decryptChunks(Cipher cipher, String encryptedString, int[] bounds,
+                                      int first, int last, byte[][] decrypted)
+            throws GeneralSecurityException {
+        byte[] buffer = null;
+        for (int chunk = first; chunk < last; chunk++) {
+            int start = bounds[chunk] + 1;
+            int end = bounds[chunk + 1];
+            int maxLength = CodecUtil.maxDecodedLength(end - start);
+            if (buffer == null || buffer.length < maxLength) {
+                buffer = new byte[maxLength];
+            }
+            int length = CodecUtil.decodeBase64(encryptedString, start, end, buffer, 0);
+            decrypted[chunk] = cipher.doFinal(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Whether a cipher other than the one set with {@link #setCipher(Cipher)} can decrypt,
+     * false if the key must be authorized for each use.
+     *
+     * @return true if records can be decrypted with independently initialized ciphers
+     */
+    protected boolean canDecryptWithNewCipher() {
+        return !mIsAuthenticateUserRequired;
+    }
+
     @Override
     public String getHashed(String value) throws NoSuchAlgorithmException,
             UnsupportedEncodingException {
+        String hashed = mHashes.get(value);
+        if (hashed == null) {
+            hashed = mIsKeyedHash ? getKeyedHash(value) : getDigest(value);
+            if (mHashes.size() >= MAX_CACHED_HASHES) {
+                mHashes.clear();
+            }
+            mHashes.put(value, hashed);
+        }
+        return hashed;
+    }
+
+    private static String getDigest(String value) throws NoSuchAlgorithmException,
+            UnsupportedEncodingException {
         final MessageDigest digest = MessageDigest.getInstance("SHA-256");
         byte[] result = digest.digest(value.getBytes(DEFAULT_CHARSET));
-        return toHex(result);
+        return CodecUtil.toHex(result);
+    }
+
+    private String getKeyedHash(String value) throws NoSuchAlgorithmException,
+            UnsupportedEncodingException {
+        try {
+            Mac mac = Mac.getInstance(HASH_ALGORITHM);
+            mac.init(getHashKey());
+            byte[] result = mac.doFinal(value.getBytes(DEFAULT_CHARSET));
+            return CodecUtil.encodeBase32(result, 0, KEYED_HASH_LENGTH);
+        } catch (NoSuchAlgorithmException e) {
+            throw e;
+        } catch (GeneralSecurityException e) {
+            throw new NoSuchAlgorithmException("Failed to compute keyed hash", e);
+        }
+    }
+
+    /*
+     * The hash key never requires user authentication and is kept by removeKeys, so the
+     * record keys stay the same when the encryption keys are invalidated.
+     */
+    private synchronized SecretKey getHashKey() throws GeneralSecurityException {
+        if (mHashKey == null) {
+            String alias = mKeyAlias + HASH_KEY_ALIAS_SUFFIX;
+            SecretKey key = (SecretKey) mKeyStore.getKey(alias, null);
+            mHashKey = key != null ? key : generateHashKey(alias);
+        }
+        return mHashKey;
+    }
+
+    /**
+     * Generates the key in the key store used for keyed hashes.
+     *
+     * @param keyAlias the alias of the key
+     * @return the HmacSHA256 key
+     * @throws GeneralSecurityException if the key store doesn't support HMAC keys
+     */
+    protected SecretKey generateHashKey(String keyAlias) throws GeneralSecurityException {
+        throw new NoSuchAlgorithmException("Keyed hashes are not supported");
     }
 
     @Override
@@ -339,12 +582,27 @@ public abstract class BaseEncryptionManager implements EncryptionManager {
 
     @Override
     public void removeKeys() {
+        mEncryptKey = null;
+        mDecryptKey = null;
         deleteInvalidKey(mKeyAlias);
     }
 
     @Override
     public void recreateKeys(Context context) {
+        mEncryptKey = null;
+        mDecryptKey = null;
         prepare(context, false);
+        KeyValidityWatcher.update(this, true);
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    @Override
+    public boolean isKeyedHash() {
+        return mIsKeyedHash;
     }
 
     @Override
@@ -17,9 +17,13 @@ package com.okta.oidc.storage.security;
 
 import android.content.Context;
 
+import androidx.annotation.Nullable;
+
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.crypto.Cipher;
 
@@ -29,7 +33,7 @@ import javax.crypto.Cipher;
 public class DefaultEncryptionManager implements EncryptionManager {
     private static final String KEY_STORE = "AndroidKeyStore";
     private static final String KEY_ALIAS = "key_for_pin";
-    private final EncryptionManager mEncryptionManager;
+    private final Future<EncryptionManager> mEncryptionManager;
 
     /**
      * Constructor requires a context.
@@ -37,44 +41,91 @@ public class DefaultEncryptionManager implements EncryptionManager {
      * @param context context
      */
     public DefaultEncryptionManager(Context context) {
-        mEncryptionManager = EncryptionManagerFactory.createEncryptionManager(context, KEY_STORE,
-                KEY_ALIAS, false, -1, true);
+        this(context, false);
+    }
+
+    /**
+     * Constructor requires a context and whether record keys are hashed with a key.
+     * With a keyed hash the storage keys are an HMAC-SHA256 with a key held in the key store,
+     * encoded as 32 base32 characters instead of a 64 character SHA-256 hex string. Keyed
+     * hashes are available on API23+, older versions use SHA-256.
+     * Records stored with the other option are not found, use
+     * {@link com.okta.oidc.clients.sessions.BaseSessionClient#migrateTo(EncryptionManager)}
+     * to move them.
+     *
+     * @param context     context
+     * @param isKeyedHash true to hash record keys with a key from the key store
+     */
+    public DefaultEncryptionManager(Context context, boolean isKeyedHash) {
+        this(context, isKeyedHash, null);
+    }
+
+    /**
+     * Constructor requires a context, whether record keys are hashed with a key and an optional
+     * executor. Loading the key store and generating keys the first time can take hundreds of
+     * milliseconds. With an executor they run on it and the constructor returns immediately,
+     * the first call that needs the keys waits for them. To generate keys ahead of time create
+     * the manager early, for example in {@link android.app.Application#onCreate()}.
+     *
+     * @param context     context
+     * @param isKeyedHash true to hash record keys with a key from the key store
+     * @param executor    the executor to initialize on, null to initialize on the calling thread
+     */
+    public DefaultEncryptionManager(Context context, boolean isKeyedHash,
+                                    @Nullable Executor executor) {
+        mEncryptionManager = EncryptionManagerFactory.createEncryptionManager(executor,
+                () -> EncryptionManagerFactory.createEncryptionManager(context, KEY_STORE,
+                        KEY_ALIAS, false, -1, true, isKeyedHash));
+    }
+
+    private EncryptionManager getEncryptionManager() {
+        return EncryptionManagerFactory.getEncryptionManager(mEncryptionManager);
     }
 
     @Override
     public String encrypt(String value) throws GeneralSecurityException {
-        return mEncryptionManager.encrypt(value);
+        return getEncryptionManager().encrypt(value);
     }
 
     @Override
     public String decrypt(String value) throws GeneralSecurityException {
-        return mEncryptionManager.decrypt(value);
+        return getEncryptionManager().decrypt(value);
     }
 
     @Override
     public String getHashed(String value) throws NoSuchAlgorithmException,
             UnsupportedEncodingException {
-        return mEncryptionManager.getHashed(value);
+        return getEncryptionManager().getHashed(value);
     }
 
     @Override
     public boolean isHardwareBackedKeyStore() {
-        return mEncryptionManager.isHardwareBackedKeyStore();
+        return getEncryptionManager().isHardwareBackedKeyStore();
     }
 
     @Override
     public void recreateCipher() {
-        mEncryptionManager.recreateCipher();
+        getEncryptionManager().recreateCipher();
     }
 
     @Override
     public void setCipher(Cipher cipher) {
-        mEncryptionManager.setCipher(cipher);
+        getEncryptionManager().setCipher(cipher);
     }
 
     @Override
     public Cipher getCipher() {
-        return mEncryptionManager.getCipher();
+        return getEncryptionManager().getCipher();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return getEncryptionManager().isThreadSafe();
+    }
+
+    @Override
+    public boolean isKeyedHash() {
+        return getEncryptionManager().isKeyedHash();
     }
 
     @Override
@@ -84,16 +135,17 @@ public class DefaultEncryptionManager implements EncryptionManager {
 
     @Override
     public void removeKeys() {
-        mEncryptionManager.removeKeys();
+        getEncryptionManager().removeKeys();
     }
 
     @Override
     public void recreateKeys(Context context) {
-        mEncryptionManager.recreateKeys(context);
+        getEncryptionManager().recreateKeys(context);
+        KeyValidityWatcher.update(this, true);
     }
 
     @Override
     public boolean isValidKeys() {
-        return mEncryptionManager.isValidKeys();
+        return getEncryptionManager().isValidKeys();
     }
 }
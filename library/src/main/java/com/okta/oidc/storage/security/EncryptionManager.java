@@ -111,4 +111,25 @@ public interface EncryptionManager {
      * @return true if keys are valid
      */
     boolean isValidKeys();
+
+    /**
+     * If encrypt, decrypt and getHashed can be called from several threads at once. The
+     * library then encrypts and decrypts different records concurrently, otherwise all calls
+     * are serialized.
+     *
+     * @return true if the implementation is thread-safe
+     */
+    default boolean isThreadSafe() {
+        return false;
+    }
+
+    /**
+     * If getHashed uses a key from the key store. A keyed hash can't be replaced by another
+     * value, so the library fails instead of using the unhashed record key.
+     *
+     * @return true if record keys are hashed with a key
+     */
+    default boolean isKeyedHash() {
+        return false;
+    }
 }
@@ -38,8 +38,11 @@ import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.UnrecoverableKeyException;
 import java.security.spec.InvalidKeySpecException;
+import java.util.Date;
 
 import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
 
 import static android.security.keystore.KeyProperties.BLOCK_MODE_ECB;
 
@@ -48,11 +51,13 @@ class EncryptionManagerAPI23 extends BaseEncryptionManager {
     private static final String TAG = EncryptionManagerAPI23.class.getSimpleName();
 
     private final int mValidityDurationSeconds;
+    @Nullable
+    private volatile KeyMetadata mKeyMetadata;
 
     EncryptionManagerAPI23(Context context, String keyStoreName, String keyAlias,
                            boolean isAuthenticateUserRequired,
                            int userAuthenticationValidityDurationSeconds,
-                           boolean initCipherOnCreate) {
+                           boolean initCipherOnCreate, boolean isKeyedHash) {
         super(keyStoreName, keyAlias);
         this.mKeyStoreAlgorithm = KeyProperties.KEY_ALGORITHM_RSA;
         this.mBlockMode = BLOCK_MODE_ECB;
@@ -60,6 +65,7 @@ class EncryptionManagerAPI23 extends BaseEncryptionManager {
         this.mTransformationString = mKeyStoreAlgorithm + "/" + mBlockMode
                 + "/OAEPWithSHA-256AndMGF1Padding";
         this.mIsAuthenticateUserRequired = isAuthenticateUserRequired;
+        this.mIsKeyedHash = isKeyedHash;
         // Starting API 30, if you want user verification each time when use private key
         // you should provide 0 instead -1
         // https://developer.android.com/reference/kotlin/android/security/keystore/KeyGenParameterSpec.Builder#setUserAuthenticationParameters(kotlin.Int,%20kotlin.Int)
@@ -120,28 +126,19 @@ class EncryptionManagerAPI23 extends BaseEncryptionManager {
         return false;
     }
 
+    @Override
+    protected SecretKey generateHashKey(String keyAlias) throws GeneralSecurityException {
+        KeyGenerator generator = KeyGenerator.getInstance(
+                KeyProperties.KEY_ALGORITHM_HMAC_SHA256, mKeyStoreName);
+        generator.init(new KeyGenParameterSpec.Builder(keyAlias, KeyProperties.PURPOSE_SIGN)
+                .build());
+        return generator.generateKey();
+    }
+
     @Override
     public boolean isHardwareBackedKeyStore() {
-        boolean isHardware = false;
-        try {
-            if (mKeyStore != null && mKeyStore.containsAlias(mKeyAlias)) {
-                PrivateKey key = (PrivateKey) mKeyStore.getKey(mKeyAlias, null);
-                if (key != null) {
-                    KeyFactory factory = KeyFactory.getInstance(key.getAlgorithm(), mKeyStoreName);
-                    KeyInfo keyInfo;
-                    try {
-                        keyInfo = factory.getKeySpec(key, KeyInfo.class);
-                        isHardware = keyInfo.isInsideSecureHardware();
-                    } catch (InvalidKeySpecException e) {
-                        Log.w(TAG, "isHardwareBackedKeyStore: ", e);
-                    }
-                }
-            }
-        } catch (NoSuchAlgorithmException | NoSuchProviderException | UnrecoverableKeyException
-                | KeyStoreException e) {
-            Log.w(TAG, "isHardwareBackedKeyStore: ", e);
-        }
-        return isHardware;
+        KeyMetadata metadata = getKeyMetadata();
+        return metadata != null && metadata.mInsideSecureHardware;
     }
 
     @Override
@@ -149,21 +146,19 @@ class EncryptionManagerAPI23 extends BaseEncryptionManager {
         if (mCipher == null) {
             return false;
         }
-        try {
-            PrivateKey key = (PrivateKey) mKeyStore.getKey(mKeyAlias, null);
+        KeyMetadata metadata = getKeyMetadata();
+        if (metadata == null) {
+            return false;
+        }
+        if (!metadata.mUserAuthenticationRequired) {
+            return true;
+        }
+        synchronized (mCipherLock) {
             try {
-                KeyFactory factory = KeyFactory.getInstance(key.getAlgorithm(), mKeyStoreName);
-                KeyInfo keyInfo = factory.getKeySpec(key, KeyInfo.class);
-                if (!keyInfo.isUserAuthenticationRequired()) {
-                    return true;
-                }
-            } catch (NoSuchProviderException | InvalidKeySpecException error) {
-                Log.w(TAG, "Error during Read private key info: ", error);
+                mCipher.init(Cipher.DECRYPT_MODE, metadata.mKey);
+            } catch (GeneralSecurityException e) {
                 return false;
             }
-            mCipher.init(Cipher.DECRYPT_MODE, key);
-        } catch (GeneralSecurityException e) {
-            return false;
         }
 
         return true;
@@ -171,24 +166,89 @@ class EncryptionManagerAPI23 extends BaseEncryptionManager {
 
     @Override
     public boolean isValidKeys() {
+        KeyMetadata metadata = getKeyMetadata();
+        if (metadata == null || !metadata.isWithinValidity(new Date())) {
+            return false;
+        }
         try {
             Cipher cipher = createCipher(mTransformationString);
-            PrivateKey key = (PrivateKey) mKeyStore.getKey(mKeyAlias, null);
-            if (key == null) {
-                return false;
-            }
-            try {
-                KeyFactory factory = KeyFactory.getInstance(key.getAlgorithm(), mKeyStoreName);
-                KeyInfo keyInfo = factory.getKeySpec(key, KeyInfo.class);
-            } catch (NoSuchProviderException | InvalidKeySpecException error) {
-                Log.w(TAG, "Error during Read private key info: ", error);
-                return false;
-            }
-            cipher.init(Cipher.DECRYPT_MODE, key);
+            // Still needed, keys invalidated by a lock screen change are only detected on init.
+            cipher.init(Cipher.DECRYPT_MODE, metadata.mKey);
         } catch (GeneralSecurityException e) {
             return false;
         }
 
         return true;
     }
+
+    @Override
+    protected boolean canDecryptWithNewCipher() {
+        //A key authorized for a duration can be used by any cipher during that time.
+        return !mIsAuthenticateUserRequired || mValidityDurationSeconds > 0;
+    }
+
+    @Override
+    public void removeKeys() {
+        mKeyMetadata = null;
+        super.removeKeys();
+    }
+
+    @Override
+    public void recreateKeys(Context context) {
+        mKeyMetadata = null;
+        super.recreateKeys(context);
+    }
+
+    /*
+     * Reading the key info takes several keystore calls. It doesn't change for a generated key,
+     * so it is read once per key and dropped when keys are removed or recreated.
+     * Failures are not cached.
+     */
+    @Nullable
+    private KeyMetadata getKeyMetadata() {
+        KeyMetadata metadata = mKeyMetadata;
+        if (metadata != null) {
+            return metadata;
+        }
+        try {
+            if (mKeyStore == null || !mKeyStore.containsAlias(mKeyAlias)) {
+                return null;
+            }
+            PrivateKey key = (PrivateKey) mKeyStore.getKey(mKeyAlias, null);
+            if (key == null) {
+                return null;
+            }
+            KeyFactory factory = KeyFactory.getInstance(key.getAlgorithm(), mKeyStoreName);
+            metadata = new KeyMetadata(key, factory.getKeySpec(key, KeyInfo.class));
+            mKeyMetadata = metadata;
+            return metadata;
+        } catch (NoSuchAlgorithmException | NoSuchProviderException | UnrecoverableKeyException
+                | KeyStoreException | InvalidKeySpecException e) {
+            Log.w(TAG, "Error during Read private key info: ", e);
+        }
+        return null;
+    }
+
+    private static final class KeyMetadata {
+        private final PrivateKey mKey;
+        private final boolean mInsideSecureHardware;
+        private final boolean mUserAuthenticationRequired;
+        @Nullable
+        private final Date mValidityStart;
+        @Nullable
+        private final Date mValidityEnd;
+
+        KeyMetadata(PrivateKey key, KeyInfo keyInfo) {
+            mKey = key;
+            mInsideSecureHardware = keyInfo.isInsideSecureHardware();
+            mUserAuthenticationRequired = keyInfo.isUserAuthenticationRequired();
+            mValidityStart = keyInfo.getKeyValidityStart();
+            mValidityEnd = keyInfo.getKeyValidityForConsumptionEnd();
+        }
+
+        boolean isWithinValidity(Date now) {
+            return (mValidityStart == null || !now.before(mValidityStart))
+                    && (mValidityEnd == null || !now.after(mValidityEnd));
+        }
+    }
 }
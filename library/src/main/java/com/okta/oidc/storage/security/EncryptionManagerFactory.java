@@ -18,19 +18,84 @@ package com.okta.oidc.storage.security;
 import android.content.Context;
 import android.os.Build;
 
+import androidx.annotation.Nullable;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
 class EncryptionManagerFactory {
     static EncryptionManager createEncryptionManager(Context context, String keyStoreName,
                                                      String keyAlias,
                                                      boolean isAuthenticateUserRequired,
                                                      int userAuthenticationValidityDurationSeconds,
-                                                     boolean initCipherOnCreate) {
+                                                     boolean initCipherOnCreate,
+                                                     boolean isKeyedHash) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             return new EncryptionManagerAPI23(context, keyStoreName, keyAlias,
                     isAuthenticateUserRequired, userAuthenticationValidityDurationSeconds,
-                    initCipherOnCreate);
+                    initCipherOnCreate, isKeyedHash);
         } else {
+            // The key store only has HMAC keys since API 23, record keys use plain SHA-256.
             return new EncryptionManagerAPI18(context, keyStoreName, keyAlias, initCipherOnCreate,
                     isAuthenticateUserRequired);
         }
     }
+
+    /*
+     * Loading the key store and generating a key pair can take hundreds of milliseconds, so
+     * the manager may be created on an executor. Without an executor it is created on the
+     * calling thread and errors are thrown from here.
+     */
+    static Future<EncryptionManager> createEncryptionManager(@Nullable Executor executor,
+                                                             Callable<EncryptionManager> factory) {
+        FutureTask<EncryptionManager> task;
+        if (executor == null) {
+            EncryptionManager manager;
+            try {
+                manager = factory.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException("Failed to create EncryptionManager", e);
+            }
+            task = new FutureTask<>(() -> manager);
+            task.run();
+        } else {
+            task = new FutureTask<>(factory);
+            executor.execute(task);
+        }
+        return task;
+    }
+
+    /*
+     * Waits for the manager created by createEncryptionManager(Executor, Callable). An interrupt
+     * doesn't stop the wait, the interrupt status is restored afterwards.
+     */
+    static EncryptionManager getEncryptionManager(Future<EncryptionManager> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Failed to create EncryptionManager", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 }
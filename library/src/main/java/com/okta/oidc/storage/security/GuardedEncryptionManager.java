@@ -19,9 +19,13 @@ import android.annotation.TargetApi;
 import android.content.Context;
 import android.os.Build;
 
+import androidx.annotation.Nullable;
+
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.crypto.Cipher;
 
@@ -34,7 +38,7 @@ public class GuardedEncryptionManager implements EncryptionManager {
     private static final String KEY_STORE = "AndroidKeyStore";
     private static final String KEY_AUTHORIZE_ALIAS = "smart_authorize_key_for_pin";
     private static final int MIN_VALIDITY_DURATION = 10;
-    private EncryptionManager mEncryptionManager;
+    private Future<EncryptionManager> mEncryptionManager;
 
     /**
      * Constructor requires a context. It create encryption manager which requires device
@@ -58,74 +62,125 @@ public class GuardedEncryptionManager implements EncryptionManager {
      */
     public GuardedEncryptionManager(Context context,
                                     int userAuthenticationValidityDurationSeconds) {
+        this(context, userAuthenticationValidityDurationSeconds, false);
+    }
+
+    /**
+     * Constructor requires a context, validity duration time for keys in seconds and whether
+     * record keys are hashed with a key. See
+     * {@link DefaultEncryptionManager#DefaultEncryptionManager(Context, boolean)}.
+     * The key used for hashing doesn't require user authentication.
+     *
+     * @param context                                   context
+     * @param userAuthenticationValidityDurationSeconds validity duration time in seconds
+     * @param isKeyedHash                               true to hash record keys with a key
+     * @throws IllegalStateException if unsupported Android version
+     */
+    public GuardedEncryptionManager(Context context,
+                                    int userAuthenticationValidityDurationSeconds,
+                                    boolean isKeyedHash) {
+        this(context, userAuthenticationValidityDurationSeconds, isKeyedHash, null);
+    }
+
+    /**
+     * Constructor requires a context, validity duration time for keys in seconds, whether
+     * record keys are hashed with a key and an optional executor to initialize the key store
+     * on. See {@link DefaultEncryptionManager#DefaultEncryptionManager(Context, boolean,
+     * Executor)}.
+     *
+     * @param context                                   context
+     * @param userAuthenticationValidityDurationSeconds validity duration time in seconds
+     * @param isKeyedHash                               true to hash record keys with a key
+     * @param executor                                  the executor to initialize on, null to
+     *                                                  initialize on the calling thread
+     * @throws IllegalStateException if unsupported Android version
+     */
+    public GuardedEncryptionManager(Context context,
+                                    int userAuthenticationValidityDurationSeconds,
+                                    boolean isKeyedHash, @Nullable Executor executor) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            mEncryptionManager = EncryptionManagerFactory
-                    .createEncryptionManager(context,
+            mEncryptionManager = EncryptionManagerFactory.createEncryptionManager(executor,
+                    () -> EncryptionManagerFactory.createEncryptionManager(context,
                             KEY_STORE,
                             KEY_AUTHORIZE_ALIAS,
                             true,
                             (userAuthenticationValidityDurationSeconds > MIN_VALIDITY_DURATION)
                                     ? userAuthenticationValidityDurationSeconds
                                     : MIN_VALIDITY_DURATION,
-                            false);
+                            false, isKeyedHash));
         } else {
             throw new IllegalStateException("This class supports API23+");
         }
     }
 
+    private EncryptionManager getEncryptionManager() {
+        return EncryptionManagerFactory.getEncryptionManager(mEncryptionManager);
+    }
+
     @Override
     public String encrypt(String value) throws GeneralSecurityException {
-        return mEncryptionManager.encrypt(value);
+        return getEncryptionManager().encrypt(value);
     }
 
     @Override
     public String decrypt(String value) throws GeneralSecurityException {
-        return mEncryptionManager.decrypt(value);
+        return getEncryptionManager().decrypt(value);
     }
 
     @Override
     public String getHashed(String value) throws NoSuchAlgorithmException,
             UnsupportedEncodingException {
-        return mEncryptionManager.getHashed(value);
+        return getEncryptionManager().getHashed(value);
     }
 
     @Override
     public boolean isHardwareBackedKeyStore() {
-        return mEncryptionManager.isHardwareBackedKeyStore();
+        return getEncryptionManager().isHardwareBackedKeyStore();
     }
 
     @Override
     public void recreateCipher() {
-        mEncryptionManager.recreateCipher();
+        getEncryptionManager().recreateCipher();
     }
 
     @Override
     public void setCipher(Cipher cipher) {
-        mEncryptionManager.setCipher(cipher);
+        getEncryptionManager().setCipher(cipher);
     }
 
     @Override
     public Cipher getCipher() {
-        return mEncryptionManager.getCipher();
+        return getEncryptionManager().getCipher();
+    }
+
+    @Override
+    public boolean isThreadSafe() {
+        return getEncryptionManager().isThreadSafe();
+    }
+
+    @Override
+    public boolean isKeyedHash() {
+        return getEncryptionManager().isKeyedHash();
     }
 
     @Override
     public boolean isUserAuthenticatedOnDevice() {
-        return mEncryptionManager.isUserAuthenticatedOnDevice();
+        return getEncryptionManager().isUserAuthenticatedOnDevice();
     }
 
     @Override
     public void removeKeys() {
-        mEncryptionManager.removeKeys();
+        getEncryptionManager().removeKeys();
     }
 
     @Override
     public void recreateKeys(Context context) {
-        mEncryptionManager.recreateKeys(context);
+        getEncryptionManager().recreateKeys(context);
+        KeyValidityWatcher.update(this, true);
     }
 
     @Override
     public boolean isValidKeys() {
-        return mEncryptionManager.isValidKeys();
+        return getEncryptionManager().isValidKeys();
     }
 }
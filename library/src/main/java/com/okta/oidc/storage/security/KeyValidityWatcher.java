@@ -0,0 +1,240 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage.security;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+import com.okta.oidc.util.LazyExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @hide Checks the keys of the watched encryption managers on a background thread each time the
+ * application comes to the foreground. Keys invalidated while the application was in the
+ * background, by a lock screen change for example, are then known before the next read and
+ * decrypting fails fast instead of retrying. Managers are held weakly.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class KeyValidityWatcher {
+    private static final String TAG = KeyValidityWatcher.class.getSimpleName();
+
+    private static final Object sLock = new Object();
+    //Watched managers and if their keys were valid when last checked, guarded by sLock.
+    private static final Map<EncryptionManager, Boolean> sWatched = new WeakHashMap<>();
+    //Lets reads skip the lock while no watched manager is known to have invalid keys.
+    private static volatile boolean sAnyInvalid;
+    private static final AtomicBoolean sChecking = new AtomicBoolean();
+    private static final AtomicBoolean sCheckRequested = new AtomicBoolean();
+    private static Application sApplication;
+    private static ForegroundCallback sCallback;
+    private static final LazyExecutor sChecker = new LazyExecutor(TAG);
+
+    private KeyValidityWatcher() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Starts watching the keys of the encryption manager and checks them right away.
+     *
+     * @param context           any context of the application
+     * @param encryptionManager the encryption manager
+     */
+    public static void watch(@NonNull Context context,
+                             @NonNull EncryptionManager encryptionManager) {
+        synchronized (sLock) {
+            if (!sWatched.containsKey(encryptionManager)) {
+                sWatched.put(encryptionManager, Boolean.TRUE);
+            }
+            Context appContext = context.getApplicationContext();
+            if (sCallback == null && appContext instanceof Application) {
+                sApplication = (Application) appContext;
+                sCallback = new ForegroundCallback();
+                sApplication.registerActivityLifecycleCallbacks(sCallback);
+            }
+        }
+        check();
+    }
+
+    /**
+     * Stops watching the keys of the encryption manager. Stops listening to the application
+     * once no manager is watched.
+     *
+     * @param encryptionManager the encryption manager
+     */
+    public static void unwatch(@NonNull EncryptionManager encryptionManager) {
+        synchronized (sLock) {
+            sWatched.remove(encryptionManager);
+            updateAnyInvalid();
+            if (sWatched.isEmpty() && sCallback != null) {
+                sApplication.unregisterActivityLifecycleCallbacks(sCallback);
+                sApplication = null;
+                sCallback = null;
+            }
+        }
+    }
+
+    /**
+     * Checks if the keys of the encryption manager were invalid when last checked.
+     *
+     * @param encryptionManager the encryption manager
+     * @return true if watched and invalid
+     */
+    public static boolean isKnownInvalid(@Nullable EncryptionManager encryptionManager) {
+        if (!sAnyInvalid || encryptionManager == null) {
+            return false;
+        }
+        synchronized (sLock) {
+            return Boolean.FALSE.equals(sWatched.get(encryptionManager));
+        }
+    }
+
+    /**
+     * Gets the validity of the keys of the encryption manager when last checked.
+     *
+     * @param encryptionManager the encryption manager
+     * @return the last result, null if not watched
+     */
+    @Nullable
+    public static Boolean getLastResult(@Nullable EncryptionManager encryptionManager) {
+        if (encryptionManager == null) {
+            return null;
+        }
+        synchronized (sLock) {
+            return sWatched.get(encryptionManager);
+        }
+    }
+
+    /**
+     * Records a validity check or a change of the keys outside of the watcher, such as
+     * recreated keys.
+     *
+     * @param encryptionManager the encryption manager
+     * @param valid             if the keys are valid
+     */
+    public static void update(@Nullable EncryptionManager encryptionManager, boolean valid) {
+        if (encryptionManager == null) {
+            return;
+        }
+        synchronized (sLock) {
+            if (sWatched.containsKey(encryptionManager)) {
+                sWatched.put(encryptionManager, valid);
+                updateAnyInvalid();
+            }
+        }
+    }
+
+    /**
+     * Checks the keys of all watched encryption managers on a background thread. A check
+     * requested while one runs is run again afterwards.
+     */
+    public static void check() {
+        sCheckRequested.set(true);
+        if (sChecking.compareAndSet(false, true)) {
+            sChecker.get().execute(KeyValidityWatcher::runChecks);
+        }
+    }
+
+    private static void runChecks() {
+        try {
+            while (sCheckRequested.getAndSet(false)) {
+                List<EncryptionManager> managers;
+                synchronized (sLock) {
+                    managers = new ArrayList<>(sWatched.keySet());
+                }
+                for (EncryptionManager manager : managers) {
+                    update(manager, isValidKeys(manager));
+                }
+            }
+        } finally {
+            sChecking.set(false);
+        }
+        if (sCheckRequested.get()) {
+            check();
+        }
+    }
+
+    //Called with sLock held.
+    private static void updateAnyInvalid() {
+        sAnyInvalid = sWatched.containsValue(Boolean.FALSE);
+    }
+
+    private static boolean isValidKeys(EncryptionManager manager) {
+        try {
+            return manager.isValidKeys();
+        } catch (RuntimeException e) {
+            //A failed check is not a reason to refuse reads.
+            Log.w(TAG, "Failed to check keys", e);
+            return true;
+        }
+    }
+
+    private static final class ForegroundCallback
+            implements Application.ActivityLifecycleCallbacks {
+        //Only touched on the main thread.
+        private int mStarted;
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (mStarted++ == 0) {
+                check();
+            }
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (mStarted > 0) {
+                mStarted--;
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+            //NO-OP
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            //NO-OP
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            //NO-OP
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+            //NO-OP
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            //NO-OP
+        }
+    }
+}
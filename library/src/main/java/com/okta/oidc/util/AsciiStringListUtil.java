@@ -19,6 +19,7 @@ import android.text.TextUtils;
 import androidx.annotation.Nullable;
 
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -47,17 +48,27 @@ public final class AsciiStringListUtil {
             return null;
         }
 
+        Iterator<String> iterator = strings.iterator();
+        if (!iterator.hasNext()) {
+            return null;
+        }
+        String first = iterator.next();
+        checkArgument(!TextUtils.isEmpty(first),
+                "individual scopes cannot be null or empty");
+        if (!iterator.hasNext()) {
+            //A single element needs no joining or duplicate removal.
+            return first;
+        }
+
         Set<String> stringSet = new LinkedHashSet<>();
-        for (String str : strings) {
+        stringSet.add(first);
+        while (iterator.hasNext()) {
+            String str = iterator.next();
             checkArgument(!TextUtils.isEmpty(str),
                     "individual scopes cannot be null or empty");
             stringSet.add(str);
         }
 
-        if (stringSet.isEmpty()) {
-            return null;
-        }
-
         return TextUtils.join(" ", stringSet);
     }
 
@@ -14,13 +14,18 @@
 
 package com.okta.oidc.util;
 
-import android.util.Base64;
 import android.util.Log;
 
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Pattern;
 
 import static com.okta.oidc.util.Preconditions.checkArgument;
@@ -71,7 +76,7 @@ public final class CodeVerifierUtil {
      * Base64 encoding settings used for generated code verifiers.
      */
     private static final int PKCE_BASE64_ENCODE_SETTINGS =
-            Base64.NO_WRAP | Base64.NO_PADDING | Base64.URL_SAFE;
+            CodecUtil.NO_PADDING | CodecUtil.URL_SAFE;
 
     /**
      * Regex for legal code verifier strings, as defined in the spec.
@@ -82,6 +87,49 @@ public final class CodeVerifierUtil {
     private static final Pattern REGEX_CODE_VERIFIER =
             Pattern.compile("^[0-9a-zA-Z\\-\\.\\_\\~]{43,128}$");
 
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final int MAX_POOLED_DIGESTS = 4;
+    //SHA-256 digests are reset after each use and reused, see acquireDigest.
+    private static final Queue<MessageDigest> sDigests = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger sPooledDigests = new AtomicInteger();
+
+    /**
+     * The number of {@link PkceParameters} kept ready when pre-generation is enabled.
+     */
+    private static final int PREGENERATED_PARAMETERS = 2;
+    private static final BlockingQueue<PkceParameters> sParameters =
+            new LinkedBlockingQueue<>(PREGENERATED_PARAMETERS);
+    private static final AtomicBoolean sGenerating = new AtomicBoolean();
+    private static volatile boolean sPregenerate;
+    private static final LazyExecutor sGenerator = new LazyExecutor(TAG);
+
+    /**
+     * The shared entropy source. SecureRandom is thread safe and the first read can block while
+     * it is seeded, so a single instance is created once and reused.
+     */
+    private static final class EntropyHolder {
+        private static final SecureRandom ENTROPY = new SecureRandom();
+    }
+
+    /**
+     * A ready set of PKCE parameters, state and nonce for an authorize request.
+     */
+    public static final class PkceParameters {
+        public final String codeVerifier;
+        public final String codeChallenge;
+        public final String codeChallengeMethod;
+        public final String state;
+        public final String nonce;
+
+        PkceParameters(String codeVerifier, String codeChallenge, String codeChallengeMethod,
+                       String state, String nonce) {
+            this.codeVerifier = codeVerifier;
+            this.codeChallenge = codeChallenge;
+            this.codeChallengeMethod = codeChallengeMethod;
+            this.state = state;
+            this.nonce = nonce;
+        }
+    }
 
     private CodeVerifierUtil() {
         throw new IllegalStateException("This type is not intended to be instantiated");
@@ -108,7 +156,7 @@ public final class CodeVerifierUtil {
      * {@link #DEFAULT_CODE_VERIFIER_ENTROPY}.
      */
     public static String generateRandomCodeVerifier() {
-        return generateRandomCodeVerifier(new SecureRandom(), DEFAULT_CODE_VERIFIER_ENTROPY);
+        return generateRandomCodeVerifier(EntropyHolder.ENTROPY, DEFAULT_CODE_VERIFIER_ENTROPY);
     }
 
     /**
@@ -123,7 +171,7 @@ public final class CodeVerifierUtil {
                 "entropyBytes is greater than the maximum permitted");
         byte[] randomBytes = new byte[entropyBytes];
         entropySource.nextBytes(randomBytes);
-        return Base64.encodeToString(randomBytes, PKCE_BASE64_ENCODE_SETTINGS);
+        return CodecUtil.encodeBase64(randomBytes, PKCE_BASE64_ENCODE_SETTINGS);
     }
 
     /**
@@ -132,10 +180,14 @@ public final class CodeVerifierUtil {
      */
     public static String deriveCodeVerifierChallenge(String codeVerifier) {
         try {
-            MessageDigest sha256Digester = MessageDigest.getInstance("SHA-256");
-            sha256Digester.update(codeVerifier.getBytes("ISO_8859_1"));
-            byte[] digestBytes = sha256Digester.digest();
-            return Base64.encodeToString(digestBytes, PKCE_BASE64_ENCODE_SETTINGS);
+            MessageDigest sha256Digester = acquireDigest();
+            byte[] digestBytes;
+            try {
+                digestBytes = sha256Digester.digest(codeVerifier.getBytes("ISO_8859_1"));
+            } finally {
+                releaseDigest(sha256Digester);
+            }
+            return CodecUtil.encodeBase64(digestBytes, PKCE_BASE64_ENCODE_SETTINGS);
         } catch (NoSuchAlgorithmException e) {
             return null;
         } catch (UnsupportedEncodingException e) {
@@ -150,7 +202,7 @@ public final class CodeVerifierUtil {
      */
     public static String getCodeVerifierChallengeMethod() {
         try {
-            MessageDigest.getInstance("SHA-256");
+            releaseDigest(acquireDigest());
             // no exception, so SHA-256 is supported
             return CODE_CHALLENGE_METHOD_S256;
         } catch (NoSuchAlgorithmException e) {
@@ -163,9 +215,77 @@ public final class CodeVerifierUtil {
     private static final int STATE_LENGTH = 16;
 
     public static String generateRandomState() {
-        SecureRandom sr = new SecureRandom();
         byte[] random = new byte[STATE_LENGTH];
-        sr.nextBytes(random);
-        return Base64.encodeToString(random, Base64.NO_WRAP | Base64.NO_PADDING | Base64.URL_SAFE);
+        EntropyHolder.ENTROPY.nextBytes(random);
+        return CodecUtil.encodeBase64(random, PKCE_BASE64_ENCODE_SETTINGS);
+    }
+
+    /**
+     * Enables or disables pre-generation of {@link PkceParameters}. When enabled a small number
+     * of parameter sets is generated in the background, so {@link #takeParameters()} returns
+     * without generating random values or digests on the calling thread.
+     *
+     * @param pregenerate true to keep parameters ready
+     */
+    public static void setPregenerateParameters(boolean pregenerate) {
+        sPregenerate = pregenerate;
+        if (pregenerate) {
+            generateParameters();
+        } else {
+            sParameters.clear();
+        }
+    }
+
+    /**
+     * Returns a new set of PKCE parameters, state and nonce. A pre-generated set is used when
+     * available. Each set is returned only once.
+     *
+     * @return the parameters
+     */
+    public static PkceParameters takeParameters() {
+        PkceParameters parameters = sParameters.poll();
+        if (sPregenerate) {
+            generateParameters();
+        }
+        return parameters != null ? parameters : createParameters();
+    }
+
+    private static PkceParameters createParameters() {
+        String verifier = generateRandomCodeVerifier();
+        return new PkceParameters(verifier, deriveCodeVerifierChallenge(verifier),
+                getCodeVerifierChallengeMethod(), generateRandomState(), generateRandomState());
+    }
+
+    private static void generateParameters() {
+        if (sParameters.remainingCapacity() == 0 || !sGenerating.compareAndSet(false, true)) {
+            return;
+        }
+        sGenerator.get().execute(() -> {
+            try {
+                while (sPregenerate && sParameters.remainingCapacity() > 0) {
+                    sParameters.offer(createParameters());
+                }
+            } finally {
+                sGenerating.set(false);
+            }
+        });
+    }
+
+    private static MessageDigest acquireDigest() throws NoSuchAlgorithmException {
+        MessageDigest digest = sDigests.poll();
+        if (digest == null) {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        }
+        sPooledDigests.decrementAndGet();
+        return digest;
+    }
+
+    private static void releaseDigest(MessageDigest digest) {
+        digest.reset();
+        if (sPooledDigests.incrementAndGet() <= MAX_POOLED_DIGESTS) {
+            sDigests.offer(digest);
+        } else {
+            sPooledDigests.decrementAndGet();
+        }
     }
 }
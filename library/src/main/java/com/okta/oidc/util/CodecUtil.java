@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Base64, base32 and hex encoding into caller provided buffers. Unlike {@link android.util.Base64}
+ * and {@link String#format(String, Object...)} these don't allocate intermediate arrays or
+ * strings, so they can be used on the encryption and token parsing paths.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class CodecUtil {
+    /**
+     * Encode with the URL and filename safe alphabet, '-' and '_' instead of '+' and '/'.
+     */
+    public static final int URL_SAFE = 1;
+    /**
+     * Encode without the trailing '=' padding.
+     */
+    public static final int NO_PADDING = 2;
+
+    private static final char[] BASE64 =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".toCharArray();
+    private static final char[] BASE64_URL_SAFE =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final char[] BASE32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567".toCharArray();
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final char PAD = '=';
+    //A multiple of 3, so only the last piece appended is padded.
+    private static final int APPEND_BUFFER_SIZE = 96;
+    private static final int SKIP = -1;
+    private static final int INVALID = -2;
+    //Decodes both alphabets, whitespace is skipped.
+    private static final int[] DECODE = new int[128];
+
+    static {
+        for (int i = 0; i < DECODE.length; i++) {
+            DECODE[i] = INVALID;
+        }
+        for (int i = 0; i < BASE64.length; i++) {
+            DECODE[BASE64[i]] = i;
+            DECODE[BASE64_URL_SAFE[i]] = i;
+        }
+        DECODE[' '] = SKIP;
+        DECODE['\t'] = SKIP;
+        DECODE['\r'] = SKIP;
+        DECODE['\n'] = SKIP;
+    }
+
+    private CodecUtil() {
+        throw new IllegalStateException("This type is not intended to be instantiated");
+    }
+
+    /**
+     * Returns the number of characters needed to base64 encode the given number of bytes.
+     *
+     * @param length the number of bytes
+     * @param flags  {@link #URL_SAFE} and {@link #NO_PADDING}
+     * @return the encoded length
+     */
+    public static int base64Length(int length, int flags) {
+        if ((flags & NO_PADDING) != 0) {
+            return length / 3 * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+        }
+        return (length + 2) / 3 * 4;
+    }
+
+    /**
+     * Base64 encodes bytes into a char array.
+     *
+     * @param src    the bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @param dst    the destination, must have room for {@link #base64Length(int, int)} chars
+     * @param dstOff the offset of the first char in the destination
+     * @param flags  {@link #URL_SAFE} and {@link #NO_PADDING}
+     * @return the number of chars written
+     */
+    public static int encodeBase64(@NonNull byte[] src, int offset, int length,
+                                   @NonNull char[] dst, int dstOff, int flags) {
+        char[] alphabet = (flags & URL_SAFE) != 0 ? BASE64_URL_SAFE : BASE64;
+        int end = offset + length;
+        int out = dstOff;
+        int i = offset;
+        for (; i + 2 < end; i += 3) {
+            int bits = (src[i] & 0xff) << 16 | (src[i + 1] & 0xff) << 8 | (src[i + 2] & 0xff);
+            dst[out++] = alphabet[bits >>> 18];
+            dst[out++] = alphabet[(bits >>> 12) & 0x3f];
+            dst[out++] = alphabet[(bits >>> 6) & 0x3f];
+            dst[out++] = alphabet[bits & 0x3f];
+        }
+        int remaining = end - i;
+        if (remaining > 0) {
+            int bits = (src[i] & 0xff) << 16 | (remaining == 2 ? (src[i + 1] & 0xff) << 8 : 0);
+            dst[out++] = alphabet[bits >>> 18];
+            dst[out++] = alphabet[(bits >>> 12) & 0x3f];
+            if (remaining == 2) {
+                dst[out++] = alphabet[(bits >>> 6) & 0x3f];
+            }
+            if ((flags & NO_PADDING) == 0) {
+                dst[out++] = PAD;
+                if (remaining == 1) {
+                    dst[out++] = PAD;
+                }
+            }
+        }
+        return out - dstOff;
+    }
+
+    /**
+     * Base64 encodes bytes and appends them to a builder.
+     *
+     * @param src    the bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @param dst    the builder
+     * @param flags  {@link #URL_SAFE} and {@link #NO_PADDING}
+     */
+    public static void appendBase64(@NonNull byte[] src, int offset, int length,
+                                    @NonNull StringBuilder dst, int flags) {
+        dst.ensureCapacity(dst.length() + base64Length(length, flags));
+        char[] buffer = new char[APPEND_BUFFER_SIZE / 3 * 4];
+        int end = offset + length;
+        for (int i = offset; i < end; i += APPEND_BUFFER_SIZE) {
+            int count = Math.min(APPEND_BUFFER_SIZE, end - i);
+            dst.append(buffer, 0, encodeBase64(src, i, count, buffer, 0, flags));
+        }
+    }
+
+    /**
+     * Base64 encodes bytes to a string.
+     *
+     * @param src   the bytes
+     * @param flags {@link #URL_SAFE} and {@link #NO_PADDING}
+     * @return the encoded string
+     */
+    @NonNull
+    public static String encodeBase64(@NonNull byte[] src, int flags) {
+        char[] chars = new char[base64Length(src.length, flags)];
+        encodeBase64(src, 0, src.length, chars, 0, flags);
+        return new String(chars);
+    }
+
+    /**
+     * Returns the maximum number of bytes the given number of base64 chars decode to.
+     *
+     * @param length the number of chars
+     * @return the maximum decoded length
+     */
+    public static int maxDecodedLength(int length) {
+        return length / 4 * 3 + (length % 4 == 0 ? 0 : length % 4 - 1);
+    }
+
+    /**
+     * Decodes base64 chars into a byte array. Both the standard and the URL safe alphabets are
+     * accepted, padding is optional and whitespace is skipped.
+     *
+     * @param src    the base64 chars
+     * @param start  the index of the first char
+     * @param end    the index after the last char
+     * @param dst    the destination, must have room for {@link #maxDecodedLength(int)} bytes
+     * @param dstOff the offset of the first byte in the destination
+     * @return the number of bytes written
+     * @throws IllegalArgumentException if the chars are not valid base64
+     */
+    public static int decodeBase64(@NonNull CharSequence src, int start, int end,
+                                   @NonNull byte[] dst, int dstOff) {
+        int out = dstOff;
+        int bits = 0;
+        int count = 0;
+        int i = start;
+        for (; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == PAD) {
+                break;
+            }
+            int value = c < DECODE.length ? DECODE[c] : INVALID;
+            if (value == SKIP) {
+                continue;
+            }
+            if (value == INVALID) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+            bits = bits << 6 | value;
+            if (++count == 4) {
+                dst[out++] = (byte) (bits >>> 16);
+                dst[out++] = (byte) (bits >>> 8);
+                dst[out++] = (byte) bits;
+                bits = 0;
+                count = 0;
+            }
+        }
+        for (; i < end; i++) {
+            char c = src.charAt(i);
+            if (c != PAD && (c >= DECODE.length || DECODE[c] != SKIP)) {
+                throw new IllegalArgumentException("bad base-64");
+            }
+        }
+        if (count == 1) {
+            throw new IllegalArgumentException("bad base-64");
+        } else if (count == 2) {
+            dst[out++] = (byte) (bits >>> 4);
+        } else if (count == 3) {
+            dst[out++] = (byte) (bits >>> 10);
+            dst[out++] = (byte) (bits >>> 2);
+        }
+        return out - dstOff;
+    }
+
+    /**
+     * Decodes base64 chars to a new byte array.
+     *
+     * @param src   the base64 chars
+     * @param start the index of the first char
+     * @param end   the index after the last char
+     * @return the decoded bytes
+     * @throws IllegalArgumentException if the chars are not valid base64
+     */
+    @NonNull
+    public static byte[] decodeBase64(@NonNull CharSequence src, int start, int end) {
+        byte[] buffer = new byte[maxDecodedLength(end - start)];
+        int length = decodeBase64(src, start, end, buffer, 0);
+        if (length == buffer.length) {
+            return buffer;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Appends bytes as upper case hex digits to a builder.
+     *
+     * @param src the bytes
+     * @param dst the builder
+     */
+    public static void appendHex(@NonNull byte[] src, @NonNull StringBuilder dst) {
+        for (byte b : src) {
+            dst.append(HEX_DIGITS[(b >>> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+    }
+
+    /**
+     * Encodes bytes as upper case hex digits.
+     *
+     * @param src the bytes
+     * @return the hex string
+     */
+    @NonNull
+    public static String toHex(@NonNull byte[] src) {
+        char[] chars = new char[src.length * 2];
+        for (int i = 0; i < src.length; i++) {
+            chars[2 * i] = HEX_DIGITS[(src[i] >>> 4) & 0xf];
+            chars[2 * i + 1] = HEX_DIGITS[src[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Encodes bytes with the RFC 4648 base32 alphabet, without padding. 5 bytes encode to 8
+     * characters, the result only has upper case letters and digits.
+     *
+     * @param src    the bytes
+     * @param offset the offset of the first byte
+     * @param length the number of bytes
+     * @return the base32 string
+     */
+    @NonNull
+    public static String encodeBase32(@NonNull byte[] src, int offset, int length) {
+        char[] chars = new char[(length * 8 + 4) / 5];
+        int buffer = 0;
+        int bits = 0;
+        int out = 0;
+        for (int i = offset; i < offset + length; i++) {
+            buffer = (buffer << 8) | (src[i] & 0xff);
+            bits += 8;
+            while (bits >= 5) {
+                bits -= 5;
+                chars[out++] = BASE32[(buffer >>> bits) & 0x1f];
+            }
+        }
+        if (bits > 0) {
+            chars[out] = BASE32[(buffer << (5 - bits)) & 0x1f];
+        }
+        return new String(chars);
+    }
+}
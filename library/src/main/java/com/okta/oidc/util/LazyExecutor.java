@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.util;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed size executor for background work of the library. The threads are created on first
+ * use and stop after being idle for a while, so an unused executor costs nothing.
+ *
+ * @hide
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY)
+public final class LazyExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private final String mName;
+    private final int mThreads;
+    private final boolean mDaemon;
+    //Guarded by this.
+    private ExecutorService mExecutor;
+
+    /**
+     * Creates an executor with a single thread.
+     *
+     * @param name the name of the thread
+     */
+    public LazyExecutor(@NonNull String name) {
+        this(name, 1, false);
+    }
+
+    /**
+     * Creates an executor with a fixed number of threads.
+     *
+     * @param name    the name of the threads
+     * @param threads the number of threads
+     * @param daemon  true if the threads don't keep the process alive
+     */
+    public LazyExecutor(@NonNull String name, int threads, boolean daemon) {
+        mName = name;
+        mThreads = threads;
+        mDaemon = daemon;
+    }
+
+    /**
+     * Returns the executor, created on the first call.
+     *
+     * @return the executor
+     */
+    @NonNull
+    public synchronized ExecutorService get() {
+        if (mExecutor == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(mThreads, mThreads,
+                    KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, mName);
+                        thread.setDaemon(mDaemon);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+        }
+        return mExecutor;
+    }
+}
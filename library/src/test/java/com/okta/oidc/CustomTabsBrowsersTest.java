@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.okta.oidc;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ResolveInfo;
+import android.content.pm.ServiceInfo;
+import android.net.Uri;
+
+import androidx.browser.customtabs.CustomTabsService;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.okta.oidc.util.JsonStrings.CHROME;
+import static com.okta.oidc.util.JsonStrings.FIRE_FOX;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CustomTabsBrowsersTest {
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        CustomTabsBrowsers.invalidate();
+    }
+
+    @After
+    public void tearDown() {
+        CustomTabsBrowsers.invalidate();
+    }
+
+    @Test
+    public void getBrowser_prefersSupportedBrowser() {
+        installBrowser(FIRE_FOX);
+        installBrowser(CHROME);
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                CustomTabsBrowsers.getSupportedBrowsers(null), 0)).isEqualTo(CHROME);
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                CustomTabsBrowsers.getSupportedBrowsers(new String[]{FIRE_FOX}), 0))
+                .isEqualTo(FIRE_FOX);
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                Collections.singleton("com.example.browser"), 0)).isEqualTo(FIRE_FOX);
+    }
+
+    @Test
+    public void getBrowser_cachedUntilPackageChange() {
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                CustomTabsBrowsers.getSupportedBrowsers(null), 0)).isNull();
+
+        installBrowser(CHROME);
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                CustomTabsBrowsers.getSupportedBrowsers(null), 0)).isNull();
+
+        mContext.sendBroadcast(new Intent(Intent.ACTION_PACKAGE_ADDED,
+                Uri.fromParts("package", CHROME, null)));
+        ShadowLooper.idleMainLooper();
+        assertThat(CustomTabsBrowsers.getBrowser(mContext,
+                CustomTabsBrowsers.getSupportedBrowsers(null), 0)).isEqualTo(CHROME);
+    }
+
+    @Test
+    public void getSupportedBrowsers_addsChromeAfterSupportedBrowsers() {
+        assertThat(CustomTabsBrowsers.getSupportedBrowsers(new String[]{FIRE_FOX, CHROME}))
+                .containsExactlyElementsOf(Arrays.asList(FIRE_FOX, CHROME,
+                        "com.google.android.apps.chrome", "com.android.chrome.beta"));
+    }
+
+    private void installBrowser(String packageName) {
+        ResolveInfo info = new ResolveInfo();
+        info.serviceInfo = new ServiceInfo();
+        info.serviceInfo.packageName = packageName;
+        info.serviceInfo.name = packageName + ".CustomTabsService";
+        Intent serviceIntent = new Intent(CustomTabsService.ACTION_CUSTOM_TABS_CONNECTION);
+        shadowOf(mContext.getPackageManager()).addResolveInfoForIntent(serviceIntent, info);
+    }
+}
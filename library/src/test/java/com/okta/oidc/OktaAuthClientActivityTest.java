@@ -14,11 +14,14 @@
  */
 package com.okta.oidc;
 
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 
+import androidx.browser.customtabs.CustomTabsIntent;
+import androidx.browser.customtabs.CustomTabsSession;
 import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.okta.oidc.util.AuthorizationException;
@@ -41,6 +44,7 @@ import static com.okta.oidc.OktaAuthenticationActivity.EXTRA_BROWSERS;
 import static com.okta.oidc.OktaAuthenticationActivity.EXTRA_EXCEPTION;
 import static com.okta.oidc.OktaAuthenticationActivity.EXTRA_TAB_OPTIONS;
 import static com.okta.oidc.OktaRedirectActivity.REDIRECT_ACTION;
+import static com.okta.oidc.util.JsonStrings.CHROME;
 import static com.okta.oidc.util.JsonStrings.FIRE_FOX;
 import static com.okta.oidc.util.TestValues.CUSTOM_URL;
 import static org.assertj.core.api.Assertions.assertThat;
@@ -129,6 +133,26 @@ public class OktaAuthClientActivityTest {
         assertThat(mActivity.isFinishing()).isTrue();
     }
 
+    @Test
+    public void testAuthorizeWithPreparedSession() {
+        CustomTabsSession session = CustomTabsSession.createMockSessionForTesting(
+                new ComponentName(CHROME, "CustomTabsService"));
+        CustomTabsWarmup.setSession(mContext, CHROME, Uri.parse(CUSTOM_URL), session);
+        try {
+            instantiateActivity(mAuthorizeSuccess);
+            mActivityController.create().start().resume();
+
+            Intent browserIntent = mShadowActivity.getNextStartedActivity();
+            assertThat(browserIntent.getData()).isEqualTo(Uri.parse(CUSTOM_URL));
+            assertThat(browserIntent.getPackage()).isEqualTo(CHROME);
+            assertThat(browserIntent.getExtras().getBinder(CustomTabsIntent.EXTRA_SESSION))
+                    .isNotNull();
+            assertThat(mActivity.mServiceBound).isFalse();
+        } finally {
+            CustomTabsWarmup.release();
+        }
+    }
+
     @Test
     public void testAuthorizeCancel() {
         instantiateActivity(mAuthorizeSuccess);
@@ -24,7 +24,10 @@ public class OktaAuthenticationActivityMock extends OktaAuthenticationActivity {
         return CHROME;
     }
 
+    boolean mServiceBound;
+
     protected void bindServiceAndStart(@NonNull final String browserPackage) {
+        mServiceBound = true;
         onServiceConnected(browserPackage, null);
     }
 }
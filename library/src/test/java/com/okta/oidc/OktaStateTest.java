@@ -15,6 +15,9 @@
 package com.okta.oidc;
 
 import android.content.Context;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
 
 import androidx.test.platform.app.InstrumentationRegistry;
 
@@ -34,10 +37,26 @@ import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static com.okta.oidc.util.TestValues.ACCESS_TOKEN;
 import static com.okta.oidc.util.TestValues.CUSTOM_URL;
+import static com.okta.oidc.util.TestValues.ID_TOKEN;
+import static com.okta.oidc.util.TestValues.REFRESH_TOKEN;
+import static com.okta.oidc.util.TestValues.VALID_EXPIRES_IN;
+import static com.okta.oidc.util.TestValues.VALID_SCOPES;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 27)
@@ -45,13 +64,30 @@ public class OktaStateTest {
     private OktaState mOktaState;
     private OktaStorageMock mOktaStorageMock;
     private OktaRepository mOktaRepository;
+    private List<String> mSavedKeys;
+    private int mTransactions;
     Context mContext;
 
 
     @Before
     public void setUp() throws Exception {
         mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
-        mOktaStorageMock = new OktaStorageMock(mContext, false);
+        mSavedKeys = new ArrayList<>();
+        mOktaStorageMock = new OktaStorageMock(mContext, false) {
+            @Override
+            public void save(@NonNull String key, @NonNull String value) {
+                mSavedKeys.add(key);
+                super.save(key, value);
+            }
+
+            @Override
+            public void apply(@NonNull Map<String, String> values,
+                              @NonNull Collection<String> deletes) {
+                mTransactions++;
+                mSavedKeys.addAll(values.keySet());
+                super.apply(values, deletes);
+            }
+        };
         mOktaRepository = new OktaRepository(mOktaStorageMock, mContext, new EncryptionManagerStub(),false, false);
         mOktaState = new OktaState(mOktaRepository);
     }
@@ -99,4 +135,219 @@ public class OktaStateTest {
         assertNotNull(mOktaState.getProviderConfiguration());
 
     }
+
+    @Test
+    public void saveTokenResponseRewritesOnlyChangedRecords()
+            throws OktaRepository.EncryptionException {
+        TokenResponse signedIn = TestValues.getTokenResponse();
+        signedIn.setCreationTime(1000);
+        mOktaState.save(signedIn);
+        assertEquals(2, mSavedKeys.size());
+        assertEquals(1, mTransactions);
+
+        //A refresh issues a new access token at a later time and keeps the refresh token.
+        mSavedKeys.clear();
+        mTransactions = 0;
+        TokenResponse refreshed = newTokenResponse("NEW_ACCESS_TOKEN", REFRESH_TOKEN);
+        refreshed.setCreationTime(2000);
+        mOktaState.save(refreshed);
+        assertEquals(1, mSavedKeys.size());
+        assertEquals(1, mTransactions);
+        assertEquals(refreshed.persist(), mOktaState.getTokenResponse().persist());
+
+        //A rotated refresh token is written in the same transaction as the session.
+        mSavedKeys.clear();
+        mTransactions = 0;
+        TokenResponse rotated = newTokenResponse("ROTATED_ACCESS_TOKEN", "ROTATED_REFRESH_TOKEN");
+        rotated.setCreationTime(3000);
+        mOktaState.save(rotated);
+        assertEquals(2, mSavedKeys.size());
+        assertEquals(1, mTransactions);
+        assertEquals(rotated.persist(), new OktaState(mOktaRepository).getTokenResponse()
+                .persist());
+
+        mSavedKeys.clear();
+        mOktaState.save(mOktaState.getTokenResponse());
+        assertTrue(mSavedKeys.isEmpty());
+    }
+
+    private static TokenResponse newTokenResponse(String accessToken, String refreshToken) {
+        return TokenResponse.RESTORE.restore(TestValues.generatePayloadTokenResponse(accessToken,
+                ID_TOKEN, refreshToken, Integer.toString(VALID_EXPIRES_IN),
+                TextUtils.join(" ", VALID_SCOPES)));
+    }
+
+    @Test
+    public void saveTokenResponseRewritesRecordsChangedByAnotherState()
+            throws OktaRepository.EncryptionException {
+        OktaState other = new OktaState(new OktaRepository(mOktaStorageMock, mContext,
+                new EncryptionManagerStub(), false, false));
+        mOktaState.save(newTokenResponse("first", "first refresh"));
+        other.save(newTokenResponse("second", "second refresh"));
+        mOktaState.save(newTokenResponse("third", "first refresh"));
+
+        TokenResponse restored = new OktaState(mOktaRepository).getTokenResponse();
+        assertEquals("third", restored.getAccessToken());
+        assertEquals("first refresh", restored.getRefreshToken());
+    }
+
+    @Test
+    public void saveTokenResponseRemovesMissingRefreshToken()
+            throws OktaRepository.EncryptionException {
+        mOktaState.save(TestValues.getTokenResponse());
+        TokenResponse withoutRefreshToken = TokenResponse.RESTORE.restore(
+                "{\"access_token\"=\"" + ACCESS_TOKEN + "\", \"id_token\"=\"" + ID_TOKEN +
+                        "\", \"expires_in\"=\"" + VALID_EXPIRES_IN + "\"}");
+        mOktaState.save(withoutRefreshToken);
+
+        TokenResponse expected = mOktaState.getTokenResponse();
+        assertNull(expected.getRefreshToken());
+        assertEquals(withoutRefreshToken.persist(), expected.persist());
+    }
+
+    @Test
+    public void getLegacyTokenResponse() throws OktaRepository.EncryptionException {
+        TokenResponse tokenResponse = TestValues.getTokenResponse();
+        mOktaRepository.save(tokenResponse);
+        assertTrue(mOktaState.hasTokenResponse());
+        assertEquals(tokenResponse.persist(), mOktaState.getTokenResponse().persist());
+
+        mOktaState.save(tokenResponse);
+        assertFalse(mOktaRepository.contains(TokenResponse.RESTORE));
+        assertTrue(mOktaState.hasTokenResponse());
+        assertEquals(tokenResponse.persist(), mOktaState.getTokenResponse().persist());
+
+        mOktaState.delete(TokenResponse.RESTORE.getKey());
+        assertFalse(mOktaState.hasTokenResponse());
+        assertNull(mOktaState.getTokenResponse());
+    }
+
+    @Test
+    public void backgroundPersistence() throws OktaRepository.EncryptionException {
+        OktaState oktaState = new OktaState(mOktaRepository, true);
+        TokenResponse tokenResponse = TestValues.getTokenResponse();
+        ProviderConfiguration providerConfiguration =
+                TestValues.getProviderConfiguration(CUSTOM_URL);
+        oktaState.save(tokenResponse);
+        oktaState.save(providerConfiguration);
+        assertTrue(oktaState.hasTokenResponse());
+        assertSame(tokenResponse, oktaState.getTokenResponse());
+        assertSame(providerConfiguration, oktaState.getProviderConfiguration());
+
+        oktaState.delete(providerConfiguration);
+        assertNull(oktaState.getProviderConfiguration());
+        oktaState.save(providerConfiguration);
+        oktaState.flush();
+
+        OktaState restored = new OktaState(mOktaRepository);
+        assertEquals(tokenResponse.persist(), restored.getTokenResponse().persist());
+        assertEquals(providerConfiguration.persist(),
+                restored.getProviderConfiguration().persist());
+
+        oktaState.delete(tokenResponse);
+        assertFalse(oktaState.hasTokenResponse());
+        oktaState.flush();
+        assertFalse(restored.hasTokenResponse());
+    }
+
+    @Test
+    public void backgroundPersistenceReportsFailure() throws OktaRepository.EncryptionException {
+        OktaRepository repository = new OktaRepository(mOktaStorageMock, mContext,
+                new EncryptionManagerStub(false), true, false);
+        OktaState oktaState = new OktaState(repository, true);
+        TokenResponse tokenResponse = TestValues.getTokenResponse();
+        oktaState.save(tokenResponse);
+        assertSame(tokenResponse, oktaState.getTokenResponse());
+        try {
+            oktaState.flush();
+            fail("Expected the background write to fail");
+        } catch (OktaRepository.EncryptionException e) {
+            assertEquals(OktaRepository.EncryptionException.HARDWARE_BACKED_ERROR, e.getType());
+        }
+        //Pending value stays authoritative for this state.
+        assertSame(tokenResponse, oktaState.getTokenResponse());
+        assertFalse(new OktaState(repository).hasTokenResponse());
+    }
+
+    @Test
+    public void backgroundPersistenceKeepsValueAfterEarlierFailure()
+            throws OktaRepository.EncryptionException {
+        boolean[] fail = {true};
+        OktaStorageMock storage = new OktaStorageMock(mContext, false) {
+            @Override
+            public void save(@NonNull String key, @NonNull String value) {
+                if (fail[0]) {
+                    throw new IllegalStateException("Storage unavailable");
+                }
+                super.save(key, value);
+            }
+        };
+        OktaRepository repository = new OktaRepository(storage, mContext,
+                new EncryptionManagerStub(), false, false);
+        OktaState oktaState = new OktaState(repository, true);
+        oktaState.save(TestValues.getProviderConfiguration(CUSTOM_URL));
+        oktaState.awaitPendingWrites();
+
+        fail[0] = false;
+        TokenResponse tokenResponse = TestValues.getTokenResponse();
+        try {
+            oktaState.save(tokenResponse);
+            fail("Expected the earlier failure");
+        } catch (IllegalStateException e) {
+            assertEquals("Storage unavailable", e.getMessage());
+        }
+        oktaState.flush();
+        assertEquals(tokenResponse.persist(),
+                new OktaState(repository).getTokenResponse().persist());
+    }
+
+    @Test
+    public void isTokenResponseReadable() throws OktaRepository.EncryptionException {
+        boolean[] validKeys = {true};
+        int[] keyChecks = {0};
+        OktaRepository repository = new OktaRepository(mOktaStorageMock, mContext,
+                new EncryptionManagerStub() {
+                    @Override
+                    public String decrypt(String value) throws GeneralSecurityException {
+                        if (!validKeys[0]) {
+                            throw new InvalidKeyException("Key permanently invalidated");
+                        }
+                        return super.decrypt(value);
+                    }
+
+                    @Override
+                    public boolean isValidKeys() {
+                        keyChecks[0]++;
+                        return validKeys[0];
+                    }
+                }, false, false);
+        OktaState oktaState = new OktaState(repository);
+        assertNull(oktaState.isTokenResponseReadable());
+
+        oktaState.save(TestValues.getTokenResponse());
+        assertTrue(oktaState.isTokenResponseReadable());
+        assertTrue(oktaState.isTokenResponseReadable());
+        //The key validity is cached for a few seconds or until a key fails.
+        assertEquals(1, keyChecks[0]);
+
+        OktaState restored = new OktaState(repository);
+        assertNull(restored.isTokenResponseReadable());
+        assertNotNull(restored.getTokenResponse());
+        assertTrue(restored.isTokenResponseReadable());
+
+        validKeys[0] = false;
+        try {
+            new OktaState(repository).getTokenResponse();
+            fail("Expected invalid keys");
+        } catch (OktaRepository.EncryptionException e) {
+            assertEquals(OktaRepository.EncryptionException.INVALID_KEYS_ERROR, e.getType());
+        }
+        assertFalse(oktaState.isTokenResponseReadable());
+        validKeys[0] = true;
+        //Unknown until read again, recreated keys can't decrypt the records.
+        assertNull(oktaState.isTokenResponseReadable());
+
+        oktaState.delete(TokenResponse.RESTORE.getKey());
+        assertFalse(oktaState.isTokenResponseReadable());
+    }
 }
@@ -24,6 +24,7 @@ import com.google.gson.Gson;
 import com.okta.oidc.OIDCConfig;
 import com.okta.oidc.Okta;
 import com.okta.oidc.OktaState;
+import com.okta.oidc.Tokens;
 import com.okta.oidc.clients.web.SyncWebAuthClient;
 import com.okta.oidc.net.ConnectionParameters;
 import com.okta.oidc.net.OktaHttpClient;
@@ -35,13 +36,16 @@ import com.okta.oidc.net.request.RefreshTokenRequest;
 import com.okta.oidc.net.request.RevokeTokenRequest;
 import com.okta.oidc.net.response.IntrospectInfo;
 import com.okta.oidc.net.response.TokenResponse;
+import com.okta.oidc.storage.OktaAccountStore;
 import com.okta.oidc.storage.OktaRepository;
 import com.okta.oidc.storage.OktaStorage;
 import com.okta.oidc.storage.SharedPreferenceStorage;
 import com.okta.oidc.util.AuthorizationException;
 import com.okta.oidc.util.CodeVerifierUtil;
+import com.okta.oidc.util.DateUtil;
 import com.okta.oidc.util.EncryptionManagerStub;
 import com.okta.oidc.util.MockEndPoint;
+import com.okta.oidc.util.OktaStorageMock;
 import com.okta.oidc.util.HttpClientFactory;
 import com.okta.oidc.util.TestValues;
 
@@ -56,22 +60,33 @@ import org.junit.runner.RunWith;
 import org.robolectric.ParameterizedRobolectricTestRunner;
 import org.robolectric.annotation.Config;
 
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
 import okhttp3.mockwebserver.RecordedRequest;
 
 import static com.okta.oidc.util.JsonStrings.TOKEN_RESPONSE;
 import static com.okta.oidc.util.JsonStrings.TOKEN_SUCCESS;
 import static com.okta.oidc.util.TestValues.ACCESS_TOKEN;
+import static com.okta.oidc.util.TestValues.CUSTOM_NONCE;
 import static com.okta.oidc.util.TestValues.CUSTOM_STATE;
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -158,6 +173,96 @@ public class SyncSessionClientImplTest {
         assertNull(mSyncSessionClientImpl.getTokens());
     }
 
+    @Test
+    public void saveAndSwitchAccount()
+            throws AuthorizationException, OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(new OktaStorageMock(mContext, false),
+                mContext, new EncryptionManagerStub(), false, 2);
+        assertNull(mSyncSessionClientImpl.saveAccount(store));
+
+        OktaAccountStore.Account first = saveAccount(store, "first", idToken("first"));
+        OktaAccountStore.Account second = saveAccount(store, "second", idToken("second"));
+        mOktaState.save(tokenResponse("second refreshed", idToken("second")));
+        mSyncSessionClientImpl.switchAccount(store, first);
+
+        assertEquals("first", mSyncSessionClientImpl.getTokens().getAccessToken());
+        assertEquals(first, store.getActiveAccount());
+        assertEquals("second refreshed", store.getTokens(second).getAccessToken());
+    }
+
+    @Test
+    public void refreshTokenUpdatesAccountStore()
+            throws AuthorizationException, OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(new OktaStorageMock(mContext, false),
+                mContext, new EncryptionManagerStub(), false, 2);
+        OktaAccountStore.Account account = saveAccount(store, "first", idToken("first"));
+        mEndPoint.enqueueTokenSuccess(idToken("first"));
+
+        Tokens tokens = mSyncSessionClientImpl.refreshToken();
+
+        assertEquals(tokens.getRefreshToken(), store.getTokens(account).getRefreshToken());
+        assertEquals(tokens.getAccessToken(), store.getTokens(account).getAccessToken());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void switchAccountOfOtherIssuer() throws AuthorizationException {
+        OktaAccountStore store = new OktaAccountStore(new OktaStorageMock(mContext, false),
+                mContext, new EncryptionManagerStub(), false, 2);
+        mSyncSessionClientImpl.switchAccount(store,
+                new OktaAccountStore.Account(null, mConfig.getClientId(), "sub"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void switchAccountOfOtherClient() throws AuthorizationException {
+        OktaAccountStore store = new OktaAccountStore(new OktaStorageMock(mContext, false),
+                mContext, new EncryptionManagerStub(), false, 2);
+        mSyncSessionClientImpl.switchAccount(store,
+                new OktaAccountStore.Account(mProviderConfig.issuer, "other", "sub"));
+    }
+
+    private OktaAccountStore.Account saveAccount(OktaAccountStore store, String accessToken,
+                                                 String idToken)
+            throws AuthorizationException, OktaRepository.EncryptionException {
+        mOktaState.save(tokenResponse(accessToken, idToken));
+        return mSyncSessionClientImpl.saveAccount(store);
+    }
+
+    private String idToken(String subject) {
+        return Jwts.builder()
+                .setIssuer(mProviderConfig.issuer)
+                .setAudience(mConfig.getClientId())
+                .setSubject(subject)
+                .claim("nonce", CUSTOM_NONCE)
+                .setExpiration(DateUtil.getTomorrow())
+                .setIssuedAt(DateUtil.getNow())
+                .signWith(Keys.keyPairFor(SignatureAlgorithm.RS256).getPrivate(),
+                        SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+    private static TokenResponse tokenResponse(String accessToken, String idToken) {
+        return TokenResponse.RESTORE.restore(TestValues.generatePayloadTokenResponse(
+                accessToken, idToken, TestValues.REFRESH_TOKEN, TestValues.EXPIRES_IN, "openid"));
+    }
+
+    @Test
+    public void migrateToInBatches()
+            throws AuthorizationException, OktaRepository.EncryptionException {
+        mOktaState.save(mTokenResponse);
+        List<Integer> progress = new ArrayList<>();
+        int[] total = new int[1];
+
+        mSyncSessionClientImpl.migrateTo(new EncryptionManagerStub(), 1, (migrated, count) -> {
+            progress.add(migrated);
+            total[0] = count;
+        });
+
+        assertTrue(progress.size() > 1);
+        assertEquals(total[0], (int) progress.get(progress.size() - 1));
+        assertEquals(ACCESS_TOKEN, mSyncSessionClientImpl.getTokens().getAccessToken());
+        assertEquals(mProviderConfig.issuer, mOktaState.getProviderConfiguration().issuer);
+    }
+
     @Test
     public void isLoggedIn_success() throws AuthorizationException, OktaRepository.EncryptionException {
         mOktaState.save(TestValues.getTokenResponse());
@@ -168,6 +273,28 @@ public class SyncSessionClientImplTest {
         assertNotNull(mSyncSessionClientImpl.getTokens());
     }
 
+    @Test
+    public void isLoggedIn_decryptsOnce() throws OktaRepository.EncryptionException {
+        mOktaState.save(TestValues.getTokenResponse());
+        int[] decrypts = {0};
+        mOktaState.setEncryptionManager(new EncryptionManagerStub() {
+            @Override
+            public String decrypt(String value) throws GeneralSecurityException {
+                decrypts[0]++;
+                return super.decrypt(value);
+            }
+        });
+
+        assertTrue(mSyncSessionClientImpl.isAuthenticated());
+        int count = decrypts[0];
+        assertTrue(count > 0);
+        assertTrue(mSyncSessionClientImpl.isAuthenticated());
+        assertEquals(count, decrypts[0]);
+
+        mSyncSessionClientImpl.clear();
+        assertFalse(mSyncSessionClientImpl.isAuthenticated());
+    }
+
     @Test
     public void isLoggedIn_false() throws AuthorizationException {
         boolean result = mSyncSessionClientImpl.isAuthenticated();
@@ -295,6 +422,84 @@ public class SyncSessionClientImplTest {
         assertNull(response);
     }
 
+    @Test
+    public void validateTokenOnDevice() throws AuthorizationException, InterruptedException {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        String token = TestValues.getAccessToken(keyPair, mProviderConfig.issuer,
+                mConfig.getClientId(), DateUtil.getTomorrow());
+        mEndPoint.enqueueJwksSuccess(TestValues.getJwks(keyPair));
+        IntrospectInfo info = mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ACCESS_TOKEN, false);
+        assertTrue(info.isActive());
+        assertEquals(mConfig.getClientId(), info.getClientId());
+        assertEquals("openid profile offline_access", info.getScope());
+        assertEquals("/" + TestValues.JWKS_ENDPOINT, mEndPoint.takeRequest().getPath());
+        //kept until the token expires
+        assertSame(info, mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ACCESS_TOKEN, false));
+        assertEquals(1, mEndPoint.getRequestCount());
+        //a result validated on the device is not used when introspection is asked for
+        mEndPoint.enqueueIntrospectSuccess();
+        IntrospectInfo introspected = mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ACCESS_TOKEN, true);
+        assertNotSame(info, introspected);
+        assertThat(mEndPoint.takeRequest().getPath(),
+                containsString("/" + TestValues.INTROSPECT_ENDPOINT));
+        assertSame(introspected, mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ACCESS_TOKEN, true));
+        //results are kept per token type
+        assertFalse(mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ID_TOKEN, false).isActive());
+        assertEquals(2, mEndPoint.getRequestCount());
+    }
+
+    @Test
+    public void validateTokenOnDeviceInactive() throws AuthorizationException {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        mEndPoint.enqueueJwksSuccess(TestValues.getJwks(keyPair));
+        String expired = TestValues.getAccessToken(keyPair, mProviderConfig.issuer,
+                mConfig.getClientId(), DateUtil.getYesterday());
+        assertFalse(mSyncSessionClientImpl.validateToken(expired,
+                TokenTypeHint.ACCESS_TOKEN, false).isActive());
+        String otherClient = TestValues.getAccessToken(keyPair, mProviderConfig.issuer,
+                "other_client", DateUtil.getTomorrow());
+        assertFalse(mSyncSessionClientImpl.validateToken(otherClient,
+                TokenTypeHint.ACCESS_TOKEN, false).isActive());
+        String noClient = TestValues.getAccessToken(keyPair, mProviderConfig.issuer, null,
+                DateUtil.getTomorrow());
+        assertFalse(mSyncSessionClientImpl.validateToken(noClient,
+                TokenTypeHint.ACCESS_TOKEN, false).isActive());
+        String otherKey = TestValues.getAccessToken(Keys.keyPairFor(SignatureAlgorithm.RS256),
+                mProviderConfig.issuer, mConfig.getClientId(), DateUtil.getTomorrow());
+        assertFalse(mSyncSessionClientImpl.validateToken(otherKey,
+                TokenTypeHint.ACCESS_TOKEN, false).isActive());
+        assertEquals(1, mEndPoint.getRequestCount());
+    }
+
+    @Test
+    public void validateTokenOnDeviceWithoutIssuer() throws AuthorizationException,
+            OktaRepository.EncryptionException {
+        KeyPair keyPair = Keys.keyPairFor(SignatureAlgorithm.RS256);
+        mEndPoint.enqueueJwksSuccess(TestValues.getJwks(keyPair));
+        String token = TestValues.getAccessToken(keyPair, mProviderConfig.issuer,
+                mConfig.getClientId(), DateUtil.getTomorrow());
+        mProviderConfig.issuer = null;
+        mOktaState.save(mProviderConfig);
+        assertFalse(mSyncSessionClientImpl.validateToken(token,
+                TokenTypeHint.ACCESS_TOKEN, false).isActive());
+    }
+
+    @Test
+    public void validateTokenIntrospectsOpaqueToken() throws AuthorizationException,
+            InterruptedException {
+        mEndPoint.enqueueIntrospectSuccess();
+        IntrospectInfo info = mSyncSessionClientImpl.validateToken(ACCESS_TOKEN,
+                TokenTypeHint.REFRESH_TOKEN, false);
+        assertTrue(info.isActive());
+        assertThat(mEndPoint.takeRequest().getPath(),
+                containsString("/" + TestValues.INTROSPECT_ENDPOINT));
+    }
+
     @Test
     public void authorizedRequest() throws InterruptedException, AuthorizationException,
             JSONException, OktaRepository.EncryptionException {
@@ -24,18 +24,21 @@ import androidx.fragment.app.FragmentActivity;
 import androidx.test.platform.app.InstrumentationRegistry;
 
 import com.google.gson.Gson;
+import com.okta.oidc.AuthenticationPayload;
 import com.okta.oidc.AuthenticationResultHandler;
 import com.okta.oidc.AuthorizationStatus;
 import com.okta.oidc.OIDCConfig;
 import com.okta.oidc.Okta;
 import com.okta.oidc.OktaResultFragment;
 import com.okta.oidc.OktaState;
+import com.okta.oidc.clients.State;
 import com.okta.oidc.net.OktaHttpClient;
 import com.okta.oidc.net.request.ConfigurationRequest;
 import com.okta.oidc.net.request.ProviderConfiguration;
 import com.okta.oidc.net.request.RevokeTokenRequest;
 import com.okta.oidc.net.request.TokenRequest;
 import com.okta.oidc.net.request.web.AuthorizeRequest;
+import com.okta.oidc.net.request.web.WebRequest;
 import com.okta.oidc.net.response.TokenResponse;
 import com.okta.oidc.net.response.web.AuthorizeResponse;
 import com.okta.oidc.results.Result;
@@ -64,6 +67,8 @@ import org.robolectric.annotation.Config;
 
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 
 import okhttp3.mockwebserver.RecordedRequest;
@@ -71,6 +76,12 @@ import okhttp3.mockwebserver.RecordedRequest;
 import static android.app.Activity.RESULT_OK;
 import static com.okta.oidc.AuthenticationResultHandler.StateResult;
 import static com.okta.oidc.AuthenticationResultHandler.handler;
+import static com.okta.oidc.clients.BaseAuth.FAILED_REVOKE_ACCESS_TOKEN;
+import static com.okta.oidc.clients.BaseAuth.FAILED_REVOKE_REFRESH_TOKEN;
+import static com.okta.oidc.clients.BaseAuth.REMOVE_TOKENS;
+import static com.okta.oidc.clients.BaseAuth.REVOKE_ACCESS_TOKEN;
+import static com.okta.oidc.clients.BaseAuth.REVOKE_REFRESH_TOKEN;
+import static com.okta.oidc.clients.BaseAuth.SUCCESS;
 import static com.okta.oidc.util.JsonStrings.PROVIDER_CONFIG;
 import static com.okta.oidc.util.JsonStrings.TOKEN_RESPONSE;
 import static com.okta.oidc.util.TestValues.CUSTOM_CODE;
@@ -257,6 +268,37 @@ public class SyncWebAuthClientTest {
         Assert.assertTrue(result.getError().getCause() instanceof NullPointerException);
     }
 
+    @Test
+    public void signOutRevokesTokensConcurrently() throws Exception {
+        mOktaState.save(mTokenResponse);
+        mEndPoint.enqueueReturnSuccessEmptyBody();
+        mEndPoint.enqueueReturnSuccessEmptyBody();
+        int status = mSyncWebAuth.signOut(Robolectric.setupActivity(FragmentActivity.class),
+                REVOKE_ACCESS_TOKEN | REVOKE_REFRESH_TOKEN);
+
+        Set<String> paths = new HashSet<>();
+        paths.add(mEndPoint.takeRequest().getPath());
+        paths.add(mEndPoint.takeRequest().getPath());
+        Assert.assertTrue(paths.contains("/revoke?client_id=CLIENT_ID&token=" +
+                mTokenResponse.getAccessToken()));
+        Assert.assertTrue(paths.contains("/revoke?client_id=CLIENT_ID&token=" +
+                mTokenResponse.getRefreshToken()));
+        assertEquals(SUCCESS, status);
+    }
+
+    @Test
+    public void signOutRevokeFailures() throws Exception {
+        mOktaState.save(mTokenResponse);
+        mEndPoint.enqueueReturnInvalidClient();
+        mEndPoint.enqueueReturnInvalidClient();
+        int status = mSyncWebAuth.signOut(Robolectric.setupActivity(FragmentActivity.class),
+                REVOKE_ACCESS_TOKEN | REVOKE_REFRESH_TOKEN | REMOVE_TOKENS);
+
+        assertEquals(FAILED_REVOKE_ACCESS_TOKEN, status & FAILED_REVOKE_ACCESS_TOKEN);
+        assertEquals(FAILED_REVOKE_REFRESH_TOKEN, status & FAILED_REVOKE_REFRESH_TOKEN);
+        assertEquals(status, mSyncWebAuth.getSignOutStatus());
+    }
+
     @Test
     public void signInEmailAuthenticated() throws AuthorizationException {
         AuthorizeResponse response = AuthorizeResponse.
@@ -286,4 +328,48 @@ public class SyncWebAuthClientTest {
 
         assertFalse(mSyncWebAuth.isVerificationFlow(response));
     }
+
+    @Test
+    public void prepareSignInCreatesRequestForNextSignIn() {
+        AuthenticationPayload payload = new AuthenticationPayload.Builder()
+                .setLoginHint(TestValues.LOGIN_HINT)
+                .build();
+        Result result = mSyncWebAuth.prepareSignIn(
+                Robolectric.setupActivity(FragmentActivity.class), payload);
+        Assert.assertTrue(result.isSuccess());
+
+        AuthenticationPayload equalPayload = new AuthenticationPayload.Builder()
+                .copyPayload(payload)
+                .build();
+        WebRequest request = mSyncWebAuth.takePreparedRequest(mProviderConfig, equalPayload);
+        assertNotNull(request);
+        assertEquals(TestValues.LOGIN_HINT, request.toUri().getQueryParameter("login_hint"));
+        assertNull(mSyncWebAuth.takePreparedRequest(mProviderConfig, equalPayload));
+    }
+
+    @Test
+    public void prepareSignInKeepsStateOfRunningSignIn() {
+        mOktaState.setCurrentState(State.SIGN_IN_REQUEST);
+        Result result = mSyncWebAuth.prepareSignIn(
+                Robolectric.setupActivity(FragmentActivity.class), null);
+        Assert.assertTrue(result.isCancel());
+        assertEquals(State.SIGN_IN_REQUEST, mOktaState.getCurrentState());
+
+        mOktaState.setCurrentState(State.IDLE);
+        Assert.assertTrue(mSyncWebAuth.prepareSignIn(
+                Robolectric.setupActivity(FragmentActivity.class), null).isSuccess());
+        assertFalse(mSyncWebAuth.isInProgress());
+    }
+
+    @Test
+    public void prepareSignInIgnoredForOtherPayload() {
+        Result result = mSyncWebAuth.prepareSignIn(
+                Robolectric.setupActivity(FragmentActivity.class), null);
+        Assert.assertTrue(result.isSuccess());
+
+        AuthenticationPayload payload = new AuthenticationPayload.Builder()
+                .setLoginHint(TestValues.LOGIN_HINT)
+                .build();
+        assertNull(mSyncWebAuth.takePreparedRequest(mProviderConfig, payload));
+    }
 }
@@ -37,6 +37,7 @@ import java.net.URLEncoder;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import okhttp3.mockwebserver.MockResponse;
@@ -54,6 +55,7 @@ import static java.net.HttpURLConnection.HTTP_OK;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 27)
@@ -183,6 +185,51 @@ public class ConnectionParametersTest {
         Assert.assertTrue(postbody.contains("nonce=nonce"));
     }
 
+    @Test
+    public void getEncodedPostParametersMatchesUrlEncoder() throws Exception {
+        Map<String, String> params = new LinkedHashMap<>();
+        params.put("redirect_uri", REDIRECT_URI);
+        params.put("scope", "openid profile email");
+        params.put("login_hint", "j\u00f6rg+\u20ac@example.com");
+        params.put("emoji", "\ud83d\ude00 ~!*()'");
+        params.put("unpaired", "a\ud800b");
+        params.put("", "");
+        ConnectionParameters parameters = new ParameterBuilder()
+                .setRequestMethod(RequestMethod.POST)
+                .setPostParameters(params)
+                .create();
+        StringBuilder expected = new StringBuilder();
+        for (Map.Entry<String, String> entry : parameters.postParameters().entrySet()) {
+            if (expected.length() > 0) {
+                expected.append('&');
+            }
+            expected.append(URLEncoder.encode(entry.getKey(), DEFAULT_ENCODING))
+                    .append('=')
+                    .append(URLEncoder.encode(entry.getValue(), DEFAULT_ENCODING));
+        }
+        assertEquals(expected.toString(),
+                new String(parameters.getEncodedPostParameters(), DEFAULT_ENCODING));
+    }
+
+    @Test
+    public void testPostBodyHasFixedLength() throws Exception {
+        mServer.enqueue(new MockResponse());
+        URL url = mServer.url("/").url();
+        ConnectionParameters parameters = new ParameterBuilder()
+                .setRequestMethod(RequestMethod.POST)
+                .setPostParameter("client_id", CLIENT_ID)
+                .setPostParameter("redirect_uri", REDIRECT_URI)
+                .create();
+        byte[] body = parameters.getEncodedPostParameters();
+        HttpClientImpl httpClient = new HttpClientImpl();
+        httpClient.connect(Uri.parse(url.toString()), parameters);
+        assertEquals(HTTP_OK, httpClient.getResponseCode());
+        RecordedRequest recordedRequest = mServer.takeRequest();
+        assertEquals(String.valueOf(body.length), recordedRequest.getHeader("Content-Length"));
+        assertNull(recordedRequest.getHeader("Transfer-Encoding"));
+        assertEquals(new String(body, DEFAULT_ENCODING), recordedRequest.getBody().readUtf8());
+    }
+
     @Test
     public void testBuilderWithTimeOut() throws Exception {
         mServer.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
@@ -44,6 +44,7 @@ import static com.okta.oidc.util.TestValues.LOGIN_HINT;
 import static com.okta.oidc.util.TestValues.PROMPT;
 import static com.okta.oidc.util.TestValues.SCOPES;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 27)
@@ -152,6 +153,33 @@ public class AuthorizeRequestTest {
         assertEquals(uri.getQueryParameter("state"), CUSTOM_STATE);
     }
 
+    @Test
+    public void toUriDoesNotChangeRequest() {
+        String json = mRequest.persist();
+        Uri uri = mRequest.toUri();
+        assertEquals(mRequest.persist(), json);
+        assertEquals(mRequest.toUri(), uri);
+        assertNull(uri.getQueryParameter("authorize_endpoint"));
+    }
+
+    @Test
+    public void toUriWithDifferentClients() throws AuthorizationException {
+        AuthorizeRequest other = new AuthorizeRequest.Builder()
+                .authorizeEndpoint(mConfig.getDiscoveryUri().toString() + "?custom=value")
+                .redirectUri(mConfig.getRedirectUri().toString())
+                .scope("openid")
+                .clientId("other_client")
+                .create();
+        Uri uri = mRequest.toUri();
+        Uri otherUri = other.toUri();
+        assertEquals(uri.getQueryParameter("client_id"), CLIENT_ID);
+        assertEquals(otherUri.getQueryParameter("client_id"), "other_client");
+        assertEquals(otherUri.getQueryParameter("custom"), "value");
+        assertEquals(otherUri.getQueryParameter("scope"), "openid");
+        assertEquals(otherUri.getQueryParameter("state"), other.getState());
+        assertEquals(mRequest.toUri(), uri);
+    }
+
     @Test
     public void getKey() {
         assertEquals(mRequest.getKey(), "WebRequest");
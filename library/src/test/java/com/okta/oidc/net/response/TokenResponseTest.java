@@ -37,7 +37,9 @@ import static com.okta.oidc.util.TestValues.REFRESH_TOKEN;
 import static com.okta.oidc.util.TestValues.SCOPES;
 import static com.okta.oidc.util.TestValues.TYPE_BEARER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 27)
@@ -111,6 +113,33 @@ public class TokenResponseTest {
         assertEquals(TokenResponse.MISSING_EXPIRES_IN_ERROR, exception.getMessage());
     }
 
+    @Test
+    public void getExpiresAtIsComputedOnce() {
+        long creationTime = 1_000_000L;
+        mToken.setCreationTime(creationTime, 30);
+        long expiresAt = creationTime + (Long.parseLong(EXPIRES_IN) - 30) * 1000;
+        assertEquals(expiresAt, mToken.getExpiresAt());
+        assertEquals(expiresAt, mToken.getExpiresAt());
+        assertFalse(mToken.isAccessTokenExpired(expiresAt));
+        assertTrue(mToken.isAccessTokenExpired(expiresAt + 1));
+
+        TokenResponse restored = RESTORE.restore(mToken.persist());
+        assertEquals(expiresAt, restored.getExpiresAt());
+    }
+
+    @Test
+    public void getExpiresAtWithoutCreationTime() {
+        assertEquals(-1, mToken.getExpiresAt());
+        assertTrue(mToken.isAccessTokenExpired(0));
+    }
+
+    @Test
+    public void getExpiresAtPersistedWithCreationTimeOnly() {
+        TokenResponse legacy = new Gson().fromJson(TOKEN_RESPONSE.replaceFirst("\\{",
+                "{\"expiresAt\":1000,"), TokenResponse.class);
+        assertEquals(1000 + Long.parseLong(EXPIRES_IN) * 1000, legacy.getExpiresAt());
+    }
+
     @Test
     public void persist() {
         String json = mToken.persist();
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.security.keystore.KeyPermanentlyInvalidatedException;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.ProviderException;
+
+import javax.crypto.BadPaddingException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class KeystoreRetryPolicyTest {
+    @Test
+    public void delayGrowsUpToMaximum() {
+        KeystoreRetryPolicy policy = new KeystoreRetryPolicy.Builder()
+                .maxAttempts(10)
+                .initialDelay(10)
+                .maxDelay(100)
+                .create();
+        ProviderException error = new ProviderException();
+        assertDelay(5, 10, policy.getRetryDelay(1, error));
+        assertDelay(10, 20, policy.getRetryDelay(2, error));
+        assertDelay(40, 80, policy.getRetryDelay(4, error));
+        assertDelay(50, 100, policy.getRetryDelay(5, error));
+        assertDelay(50, 100, policy.getRetryDelay(9, error));
+        assertEquals(-1, policy.getRetryDelay(10, error));
+    }
+
+    @Test
+    public void decidesByErrorType() {
+        KeystoreRetryPolicy policy = new KeystoreRetryPolicy.Builder()
+                .noRetry(BadPaddingException.class)
+                .create();
+        assertTrue(policy.getRetryDelay(1, new ProviderException()) >= 0);
+        assertEquals(-1, policy.getRetryDelay(1, new BadPaddingException()));
+        assertEquals(-1, policy.getRetryDelay(1, new KeyPermanentlyInvalidatedException()));
+        assertEquals(-1, KeystoreRetryPolicy.NONE.getRetryDelay(1, new ProviderException()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNoAttempts() {
+        new KeystoreRetryPolicy.Builder().maxAttempts(0);
+    }
+
+    private static void assertDelay(long min, long max, long delay) {
+        assertTrue("delay " + delay, delay >= min && delay <= max);
+    }
+}
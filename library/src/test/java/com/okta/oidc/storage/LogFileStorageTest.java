@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class LogFileStorageTest {
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mFile = new File(context.getFilesDir(), "LogFileStorageTest");
+        mFile.delete();
+    }
+
+    @Test
+    public void saveGetDelete() {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("key", "value");
+        storage.save("other", "other value");
+        storage.delete("other");
+
+        assertEquals("value", storage.get("key"));
+        assertNull(storage.get("other"));
+        LogFileStorage restored = new LogFileStorage(mFile);
+        assertEquals("value", restored.get("key"));
+        assertNull(restored.get("other"));
+    }
+
+    @Test
+    public void applyBatch() {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("old", "value");
+        Map<String, String> values = new HashMap<>();
+        values.put("first", "1");
+        values.put("second", "2");
+        storage.apply(values, Collections.singletonList("old"));
+
+        LogFileStorage restored = new LogFileStorage(mFile);
+        assertNull(restored.get("old"));
+        assertEquals("1", restored.get("first"));
+        assertEquals("2", restored.get("second"));
+    }
+
+    @Test
+    public void discardTornRecord() throws IOException {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("key", "value");
+        long length = mFile.length();
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+
+        LogFileStorage restored = new LogFileStorage(mFile);
+        assertEquals("value", restored.get("key"));
+        assertEquals(length, mFile.length());
+        restored.save("next", "value");
+        assertEquals("value", new LogFileStorage(mFile).get("next"));
+    }
+
+    @Test
+    public void appendAfterTornRecord() throws IOException {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("key", "value");
+        LogFileStorage restored = new LogFileStorage(mFile);
+        assertEquals("value", restored.get("key"));
+        //A torn record left by an append that failed after the file was read.
+        try (FileOutputStream out = new FileOutputStream(mFile, true)) {
+            out.write(new byte[]{0, 0, 0, 100, 1, 2, 3});
+        }
+
+        restored.save("next", "value");
+        assertEquals("value", new LogFileStorage(mFile).get("next"));
+    }
+
+    @Test
+    public void doNotWriteUnreadableFile() throws IOException {
+        byte[] content = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(content);
+        }
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("key", "value");
+        storage.compact();
+
+        assertEquals("value", storage.get("key"));
+        assertEquals(content.length, mFile.length());
+    }
+
+    @Test
+    public void discardCorruptedRecord() throws IOException {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        storage.save("key", "value");
+        storage.save("corrupted", "value");
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            file.seek(file.length() - 1);
+            file.write('X');
+        }
+
+        LogFileStorage restored = new LogFileStorage(mFile);
+        assertEquals("value", restored.get("key"));
+        assertNull(restored.get("corrupted"));
+    }
+
+    @Test
+    public void compactWhenMostlyGarbage() {
+        LogFileStorage storage = new LogFileStorage(mFile);
+        String value = new String(new char[1024]).replace('\0', 'x');
+        for (int i = 0; i < 100; i++) {
+            storage.save("key", value + i);
+        }
+
+        assertTrue(storage.getFileSize() <= LogFileStorage.MIN_COMPACTION_SIZE);
+        assertEquals(storage.getFileSize(), mFile.length());
+        assertEquals(value + 99, new LogFileStorage(mFile).get("key"));
+    }
+}
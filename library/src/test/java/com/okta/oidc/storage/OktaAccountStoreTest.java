@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.storage;
+
+import android.content.Context;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.okta.oidc.net.response.TokenResponse;
+import com.okta.oidc.util.EncryptionManagerStub;
+import com.okta.oidc.util.OktaStorageMock;
+import com.okta.oidc.util.TestValues;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import static com.okta.oidc.util.TestValues.CLIENT_ID;
+import static com.okta.oidc.util.TestValues.CUSTOM_NONCE;
+import static com.okta.oidc.util.TestValues.CUSTOM_URL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class OktaAccountStoreTest {
+    private static final String OTHER_ISSUER = "https://com.okta.other/";
+
+    private Context mContext;
+    private OktaStorageMock mStorage;
+    private CountingEncryptionManager mEncryptionManager;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mStorage = new OktaStorageMock(mContext, false);
+        mEncryptionManager = new CountingEncryptionManager();
+    }
+
+    @Test
+    public void saveAndSwitchAccounts() throws OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(mStorage, mContext, mEncryptionManager,
+                false, 2);
+        TokenResponse first = getTokenResponse(CUSTOM_URL, "first");
+        TokenResponse second = getTokenResponse(OTHER_ISSUER, "second");
+        OktaAccountStore.Account firstAccount = store.save(CUSTOM_URL, CLIENT_ID, first);
+        OktaAccountStore.Account secondAccount = store.save(OTHER_ISSUER, CLIENT_ID, second);
+
+        assertEquals("sub", firstAccount.getSubject());
+        assertEquals(Arrays.asList(firstAccount, secondAccount), store.getAccounts());
+        assertEquals(firstAccount, store.getActiveAccount());
+        assertEquals("first", store.getActiveTokens().getAccessToken());
+
+        store.switchTo(secondAccount);
+        assertEquals("second", store.getActiveTokens().getAccessToken());
+
+        OktaAccountStore restored = new OktaAccountStore(mStorage, mContext,
+                mEncryptionManager, false, 2);
+        assertEquals(Arrays.asList(firstAccount, secondAccount), restored.getAccounts());
+        assertEquals(secondAccount, restored.getActiveAccount());
+        assertEquals("second", restored.getActiveTokens().getAccessToken());
+        assertEquals("first", restored.getTokens(firstAccount).getAccessToken());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedSession() throws OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(mStorage, mContext, mEncryptionManager,
+                false, 1);
+        OktaAccountStore.Account firstAccount = store.save(CUSTOM_URL, CLIENT_ID,
+                getTokenResponse(CUSTOM_URL, "first"));
+        OktaAccountStore.Account secondAccount = store.save(OTHER_ISSUER, CLIENT_ID,
+                getTokenResponse(OTHER_ISSUER, "second"));
+        int decrypts = mEncryptionManager.mDecrypts;
+
+        assertEquals("second", store.getTokenResponse(secondAccount).getAccessToken());
+        assertEquals(decrypts, mEncryptionManager.mDecrypts);
+        assertEquals("first", store.getTokenResponse(firstAccount).getAccessToken());
+        assertEquals(decrypts + 1, mEncryptionManager.mDecrypts);
+    }
+
+    @Test
+    public void removeAccount() throws OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(mStorage, mContext, mEncryptionManager,
+                false, 2);
+        OktaAccountStore.Account account = store.save(CUSTOM_URL, CLIENT_ID,
+                getTokenResponse(CUSTOM_URL, "first"));
+        store.remove(account);
+
+        assertTrue(store.getAccounts().isEmpty());
+        assertNull(store.getActiveAccount());
+        assertNull(store.getTokenResponse(account));
+        assertNull(new OktaAccountStore(mStorage, mContext, mEncryptionManager, false, 2)
+                .getTokenResponse(account));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void switchToUnknownAccount() throws OktaRepository.EncryptionException {
+        OktaAccountStore store = new OktaAccountStore(mStorage, mContext, mEncryptionManager,
+                false, 2);
+        store.switchTo(new OktaAccountStore.Account(CUSTOM_URL, CLIENT_ID, "sub"));
+    }
+
+    private static TokenResponse getTokenResponse(String issuer, String accessToken) {
+        return TokenResponse.RESTORE.restore(TestValues.generatePayloadTokenResponse(
+                accessToken, TestValues.getJwt(issuer, CUSTOM_NONCE, CLIENT_ID),
+                TestValues.REFRESH_TOKEN, TestValues.EXPIRES_IN, "openid"));
+    }
+
+    private static class CountingEncryptionManager extends EncryptionManagerStub {
+        private int mDecrypts;
+
+        @Override
+        public String decrypt(String value) throws GeneralSecurityException {
+            mDecrypts++;
+            return super.decrypt(value);
+        }
+    }
+}
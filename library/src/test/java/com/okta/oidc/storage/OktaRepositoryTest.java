@@ -16,9 +16,11 @@
 package com.okta.oidc.storage;
 
 import android.content.Context;
+import android.security.keystore.KeyPermanentlyInvalidatedException;
 
 import androidx.test.platform.app.InstrumentationRegistry;
 
+import com.okta.oidc.storage.security.KeyValidityWatcher;
 import com.okta.oidc.util.EncryptedPersistableMock;
 import com.okta.oidc.util.EncryptionManagerStub;
 import com.okta.oidc.util.OktaStorageMock;
@@ -30,14 +32,28 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
 
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
 import java.security.NoSuchAlgorithmException;
+import java.security.ProviderException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static junit.framework.TestCase.assertEquals;
 import static junit.framework.TestCase.assertNull;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 @RunWith(RobolectricTestRunner.class)
 @Config(sdk = 27)
@@ -172,4 +188,362 @@ public class OktaRepositoryTest {
         assertNotEquals(valueFromCache, persistable.getData() +
                 EncryptionManagerStub.STUPID_SALT);
     }
+
+    @Test
+    public void migrateReEncryptsRecords() throws OktaRepository.EncryptionException {
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                mSoftwareEncryption, false, true);
+        PersistableMock persistable = TestValues.getNotEncryptedPersistable();
+        repository.save(persistable);
+        EncryptionManagerStub migrated = new MigratedEncryptionManager();
+
+        OktaRepository.MigrationResult result = repository.migrate(migrated,
+                Arrays.asList(persistable.getKey(), "missing"), 0, null);
+
+        assertEquals(2, result.getMigrated());
+        assertEquals(1, result.getSkipped());
+        assertNull(mOktaStorageSoftware.get(getHashed(mSoftwareEncryption, persistable)));
+        assertEquals(persistable.getData() + MigratedEncryptionManager.SALT,
+                mOktaStorageSoftware.get(getHashed(migrated, persistable)));
+        assertEquals(persistable.getData(), repository.get(PersistableMock.RESTORE).getData());
+    }
+
+    @Test
+    public void migrateResumesAfterFailedBatch() throws OktaRepository.EncryptionException {
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                mSoftwareEncryption, false, false);
+        PersistableMock persistable = TestValues.getNotEncryptedPersistable();
+        EncryptedPersistableMock encrypted = TestValues.getEncryptedPersistable();
+        repository.save(persistable);
+        repository.save(encrypted);
+        EncryptionManagerStub migrated = new MigratedEncryptionManager();
+        List<String> keys = Arrays.asList(persistable.getKey(), encrypted.getKey());
+        try {
+            repository.migrate(migrated, keys, 1, (count, total) -> {
+                if (count == 1) {
+                    throw new IllegalStateException("interrupted");
+                }
+            });
+            fail("migration should be interrupted");
+        } catch (IllegalStateException e) {
+            assertEquals("interrupted", e.getMessage());
+        }
+        List<Integer> progress = new ArrayList<>();
+        OktaRepository.MigrationResult result = repository.migrate(migrated, keys, 1,
+                (count, total) -> progress.add(count));
+
+        assertEquals(Arrays.asList(1, 2), progress);
+        assertEquals(2, result.getMigrated());
+        assertEquals(persistable.getData() + MigratedEncryptionManager.SALT,
+                mOktaStorageSoftware.get(getHashed(migrated, persistable)));
+        assertEquals(encrypted.getData() + MigratedEncryptionManager.SALT,
+                mOktaStorageSoftware.get(getHashed(migrated, encrypted)));
+        assertEquals(persistable.getData(), repository.get(PersistableMock.RESTORE).getData());
+        assertEquals(encrypted.getData(),
+                repository.get(EncryptedPersistableMock.RESTORE).getData());
+    }
+
+    @Test
+    public void concurrentSaveAndGetWithThreadSafeManager() throws Exception {
+        EncryptionManagerStub threadSafe = new EncryptionManagerStub(false) {
+            @Override
+            public boolean isThreadSafe() {
+                return true;
+            }
+        };
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                threadSafe, false, true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<PersistableMock>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String data = "data" + i;
+            futures.add(executor.submit(() -> {
+                repository.save(PersistableMock.RESTORE.restore(data));
+                return repository.get(PersistableMock.RESTORE);
+            }));
+        }
+        for (Future<PersistableMock> future : futures) {
+            assertNotNull(future.get().getData());
+        }
+        executor.shutdown();
+
+        repository.save(PersistableMock.RESTORE.restore("last"));
+        String stored = mOktaStorageSoftware.get(getHashed(threadSafe,
+                TestValues.getNotEncryptedPersistable()));
+        assertEquals("last" + EncryptionManagerStub.STUPID_SALT, stored);
+        assertEquals("last", repository.get(PersistableMock.RESTORE).getData());
+        assertEquals("last", repository.cacheStorage.get(threadSafe.getHashed(
+                PersistableMock.RESTORE.getKey())));
+    }
+
+    @Test
+    public void validKeysAreRecheckedAfterExpiry() {
+        boolean[] validKeys = {true};
+        int[] keyChecks = {0};
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                new EncryptionManagerStub(false) {
+                    @Override
+                    public boolean isValidKeys() {
+                        keyChecks[0]++;
+                        return validKeys[0];
+                    }
+                }, false, false);
+        assertTrue(repository.isValidKeys());
+        assertTrue(repository.isValidKeys());
+        assertEquals(1, keyChecks[0]);
+
+        validKeys[0] = false;
+        ShadowSystemClock.advanceBy(OktaRepository.VALID_KEYS_TTL_MS, TimeUnit.MILLISECONDS);
+        assertFalse(repository.isValidKeys());
+        assertFalse(repository.isValidKeys());
+        assertEquals(3, keyChecks[0]);
+    }
+
+    @Test
+    public void interruptedMigrationKeepsRecordsReadable()
+            throws OktaRepository.EncryptionException {
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                mSoftwareEncryption, false, false);
+        PersistableMock persistable = TestValues.getNotEncryptedPersistable();
+        EncryptedPersistableMock encrypted = TestValues.getEncryptedPersistable();
+        repository.save(persistable);
+        repository.save(encrypted);
+        //Same record keys as the current manager, different encryption.
+        EncryptionManagerStub migrated = new EncryptionManagerStub() {
+            @Override
+            public String encrypt(String value) {
+                return value + MigratedEncryptionManager.SALT;
+            }
+
+            @Override
+            public String decrypt(String value) {
+                return value.replace(MigratedEncryptionManager.SALT, "");
+            }
+        };
+        List<String> keys = Arrays.asList(persistable.getKey(), encrypted.getKey());
+        try {
+            repository.migrate(migrated, keys, 1, (count, total) -> {
+                if (count == 1) {
+                    throw new IllegalStateException("interrupted");
+                }
+            });
+            fail("migration should be interrupted");
+        } catch (IllegalStateException e) {
+            assertEquals("interrupted", e.getMessage());
+        }
+
+        OktaRepository restarted = new OktaRepository(mOktaStorageSoftware, mContext,
+                mSoftwareEncryption, false, false);
+        assertEquals(persistable.getData(), restarted.get(PersistableMock.RESTORE).getData());
+        assertEquals(encrypted.getData(),
+                restarted.get(EncryptedPersistableMock.RESTORE).getData());
+
+        restarted.migrate(migrated, keys, 1, null);
+        assertEquals(persistable.getData() + MigratedEncryptionManager.SALT,
+                mOktaStorageSoftware.get(getHashed(migrated, persistable)));
+        assertEquals(persistable.getData(), restarted.get(PersistableMock.RESTORE).getData());
+        assertEquals(encrypted.getData(),
+                restarted.get(EncryptedPersistableMock.RESTORE).getData());
+    }
+
+    @Test
+    public void getFailsFastWithKnownInvalidKeys() throws Exception {
+        boolean[] validKeys = {true};
+        int[] decrypts = {0};
+        EncryptionManagerStub manager = new EncryptionManagerStub(false) {
+            @Override
+            public String decrypt(String value) throws GeneralSecurityException {
+                decrypts[0]++;
+                return super.decrypt(value);
+            }
+
+            @Override
+            public boolean isValidKeys() {
+                return validKeys[0];
+            }
+        };
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                manager, false, false);
+        repository.save(TestValues.getNotEncryptedPersistable());
+        try {
+            validKeys[0] = false;
+            KeyValidityWatcher.watch(mContext, manager);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!KeyValidityWatcher.isKnownInvalid(manager)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            try {
+                repository.get(PersistableMock.RESTORE);
+                fail("Expected invalid keys");
+            } catch (OktaRepository.EncryptionException e) {
+                assertEquals(OktaRepository.EncryptionException.INVALID_KEYS_ERROR, e.getType());
+            }
+            assertEquals(0, decrypts[0]);
+
+            //Keys recreated by other means are picked up by the next check.
+            validKeys[0] = true;
+            KeyValidityWatcher.check();
+            deadline = System.currentTimeMillis() + 5000;
+            while (KeyValidityWatcher.isKnownInvalid(manager)
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertNotNull(repository.get(PersistableMock.RESTORE));
+            assertEquals(1, decrypts[0]);
+        } finally {
+            KeyValidityWatcher.unwatch(manager);
+        }
+    }
+
+    @Test
+    public void retriesTransientKeystoreErrors() throws OktaRepository.EncryptionException {
+        int[] failures = {2};
+        EncryptionManagerStub manager = new EncryptionManagerStub(false) {
+            @Override
+            public String decrypt(String value) throws GeneralSecurityException {
+                if (failures[0]-- > 0) {
+                    throw new ProviderException("Keystore operation failed");
+                }
+                return super.decrypt(value);
+            }
+        };
+        List<String> events = new ArrayList<>();
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                manager, false, false);
+        repository.setRetryPolicy(new KeystoreRetryPolicy.Builder()
+                .initialDelay(0)
+                .listener(new RecordingListener(events))
+                .create());
+        repository.save(TestValues.getNotEncryptedPersistable());
+
+        assertNotNull(repository.get(PersistableMock.RESTORE));
+        assertEquals(Arrays.asList("retry 1", "retry 2", "recovered 3"), events);
+
+        events.clear();
+        failures[0] = 3;
+        try {
+            repository.get(PersistableMock.RESTORE);
+            fail("Expected the keystore error");
+        } catch (ProviderException e) {
+            assertEquals(Arrays.asList("retry 1", "retry 2", "failure 3"), events);
+        }
+    }
+
+    @Test
+    public void doesNotRetryInvalidatedKeys() {
+        int[] decrypts = {0};
+        EncryptionManagerStub manager = new EncryptionManagerStub(false) {
+            @Override
+            public String decrypt(String value) throws GeneralSecurityException {
+                decrypts[0]++;
+                throw new KeyPermanentlyInvalidatedException();
+            }
+        };
+        List<String> events = new ArrayList<>();
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                manager, false, false);
+        repository.setRetryPolicy(new KeystoreRetryPolicy.Builder()
+                .listener(new RecordingListener(events))
+                .create());
+        try {
+            repository.save(TestValues.getNotEncryptedPersistable());
+            repository.get(PersistableMock.RESTORE);
+            fail("Expected invalid keys");
+        } catch (OktaRepository.EncryptionException e) {
+            assertEquals(OktaRepository.EncryptionException.INVALID_KEYS_ERROR, e.getType());
+        }
+        assertEquals(1, decrypts[0]);
+        assertEquals(Collections.singletonList("failure 1"), events);
+    }
+
+    @Test
+    public void keyedHashFailureIsNotIgnored() {
+        EncryptionManagerStub manager = new EncryptionManagerStub(false) {
+            @Override
+            public String getHashed(String value) throws NoSuchAlgorithmException {
+                throw new NoSuchAlgorithmException("hash key unavailable");
+            }
+
+            @Override
+            public boolean isKeyedHash() {
+                return true;
+            }
+        };
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                manager, false, false);
+        Persistable persistable = TestValues.getNotEncryptedPersistable();
+        try {
+            repository.save(persistable);
+            fail("Expected the record key to fail");
+        } catch (OktaRepository.EncryptionException e) {
+            assertEquals(OktaRepository.EncryptionException.ENCRYPT_ERROR, e.getType());
+        }
+        //never written under the unhashed key
+        assertNull(mOktaStorageSoftware.get(persistable.getKey()));
+        assertFalse(repository.contains(PersistableMock.RESTORE));
+    }
+
+    @Test
+    public void noEncryptionManagerUsesRawKey() throws OktaRepository.EncryptionException {
+        OktaRepository repository = new OktaRepository(mOktaStorageSoftware, mContext,
+                null, false, false);
+        PersistableMock persistable = TestValues.getNotEncryptedPersistable();
+        repository.save(persistable);
+
+        assertEquals(persistable.getData(), mOktaStorageSoftware.get(persistable.getKey()));
+        assertEquals(persistable.getData(), repository.get(PersistableMock.RESTORE).getData());
+    }
+
+    private static String getHashed(EncryptionManagerStub manager, Persistable persistable) {
+        try {
+            return manager.getHashed(persistable.getKey());
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class RecordingListener implements KeystoreRetryPolicy.Listener {
+        private final List<String> mEvents;
+
+        RecordingListener(List<String> events) {
+            mEvents = events;
+        }
+
+        @Override
+        public void onRetry(int attempt, long delayMillis, Exception error) {
+            mEvents.add("retry " + attempt);
+        }
+
+        @Override
+        public void onRecovered(int attempts) {
+            mEvents.add("recovered " + attempts);
+        }
+
+        @Override
+        public void onFailure(int attempts, Exception error) {
+            mEvents.add("failure " + attempts);
+        }
+    }
+
+    //Encryption manager with a different key and hash, like a manager using new keys.
+    private static class MigratedEncryptionManager extends EncryptionManagerStub {
+        static final String SALT = "migratedSalt";
+
+        @Override
+        public String encrypt(String value) {
+            return value + SALT;
+        }
+
+        @Override
+        public String decrypt(String value) {
+            return value.replace(SALT, "");
+        }
+
+        @Override
+        public String getHashed(String value)
+                throws NoSuchAlgorithmException, UnsupportedEncodingException {
+            return super.getHashed(SALT + value);
+        }
+    }
 }
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+package com.okta.oidc.storage.security;
+
+import com.okta.oidc.util.EncryptionManagerStub;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class EncryptionManagerFactoryTest {
+    @Test
+    public void createWithoutExecutor_createsOnCallingThread() {
+        EncryptionManager manager = new EncryptionManagerStub();
+        Future<EncryptionManager> future =
+                EncryptionManagerFactory.createEncryptionManager(null, () -> manager);
+        assertThat(future.isDone()).isTrue();
+        assertThat(EncryptionManagerFactory.getEncryptionManager(future)).isSameAs(manager);
+    }
+
+    @Test
+    public void createWithoutExecutor_throwsFromCreate() {
+        try {
+            EncryptionManagerFactory.createEncryptionManager(null, () -> {
+                throw new IllegalStateException("KeyStore is null");
+            });
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("KeyStore is null");
+        }
+    }
+
+    @Test
+    public void createWithExecutor_defersUntilExecuted() {
+        EncryptionManager manager = new EncryptionManagerStub();
+        List<Runnable> tasks = new ArrayList<>();
+        Future<EncryptionManager> future =
+                EncryptionManagerFactory.createEncryptionManager(tasks::add, () -> manager);
+        assertThat(future.isDone()).isFalse();
+        assertThat(tasks).hasSize(1);
+
+        tasks.get(0).run();
+        assertThat(EncryptionManagerFactory.getEncryptionManager(future)).isSameAs(manager);
+    }
+
+    @Test
+    public void createWithExecutor_waitsForBackgroundThread() throws Exception {
+        EncryptionManager manager = new EncryptionManagerStub();
+        Future<EncryptionManager> future = EncryptionManagerFactory.createEncryptionManager(
+                command -> new Thread(command).start(), () -> {
+                    Thread.sleep(50);
+                    return manager;
+                });
+        Thread.currentThread().interrupt();
+        assertThat(EncryptionManagerFactory.getEncryptionManager(future)).isSameAs(manager);
+        assertThat(Thread.interrupted()).isTrue();
+    }
+
+    @Test
+    public void createWithExecutor_rethrowsFailureOnUse() {
+        List<Runnable> tasks = new ArrayList<>();
+        Future<EncryptionManager> future = EncryptionManagerFactory.createEncryptionManager(
+                tasks::add, () -> {
+                    throw new IllegalStateException("KeyStore is null");
+                });
+        tasks.get(0).run();
+        try {
+            EncryptionManagerFactory.getEncryptionManager(future);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertThat(e).hasMessage("KeyStore is null");
+        }
+    }
+}
@@ -91,6 +91,33 @@ public class CodeVerifierUtilTest {
         }
     }
 
+    @Test
+    public void deriveCodeVerifierChallenge_reusedDigest_matchesRfc7636Vector() {
+        String verifier = "dBjftJeZ4CVP-mB92K27uhbUJU1p1r_wW1gFWFOEjXk";
+        for (int i = 0; i < 3; i++) {
+            assertThat(CodeVerifierUtil.deriveCodeVerifierChallenge(verifier))
+                .isEqualTo("E9Melhoa2OwvFrEMTJguCHaoeK1t8URWbuGJSstw-cM");
+        }
+    }
+
+    @Test
+    public void takeParameters_returnsValidUniqueParameters() {
+        CodeVerifierUtil.setPregenerateParameters(true);
+        try {
+            CodeVerifierUtil.PkceParameters first = CodeVerifierUtil.takeParameters();
+            CodeVerifierUtil.PkceParameters second = CodeVerifierUtil.takeParameters();
+            CodeVerifierUtil.checkCodeVerifier(first.codeVerifier);
+            assertThat(first.codeChallenge)
+                .isEqualTo(CodeVerifierUtil.deriveCodeVerifierChallenge(first.codeVerifier));
+            assertThat(first.codeChallengeMethod).isEqualTo("S256");
+            assertThat(first.state).isNotEqualTo(first.nonce);
+            assertThat(second.codeVerifier).isNotEqualTo(first.codeVerifier);
+            assertThat(second.state).isNotEqualTo(first.state);
+        } finally {
+            CodeVerifierUtil.setPregenerateParameters(false);
+        }
+    }
+
     private String createString(int length) {
         char[] strChars = new char[length];
         for (int i = 0; i < strChars.length; i++) {
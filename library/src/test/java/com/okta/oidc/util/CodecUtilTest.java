@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2019, Okta, Inc. and/or its affiliates. All rights reserved.
+ * The Okta software accompanied by this notice is provided pursuant to the Apache License,
+ * Version 2.0 (the "License.")
+ *
+ * You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *
+ * See the License for the specific language governing permissions and limitations under the
+ * License.
+ */
+
+package com.okta.oidc.util;
+
+import android.util.Base64;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static junit.framework.Assert.fail;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 27)
+public class CodecUtilTest {
+    private static final int[][] FLAGS = {
+            {0, Base64.NO_WRAP},
+            {CodecUtil.URL_SAFE, Base64.NO_WRAP | Base64.URL_SAFE},
+            {CodecUtil.NO_PADDING, Base64.NO_WRAP | Base64.NO_PADDING},
+            {CodecUtil.URL_SAFE | CodecUtil.NO_PADDING,
+                    Base64.NO_WRAP | Base64.NO_PADDING | Base64.URL_SAFE}
+    };
+
+    @Test
+    public void encodeBase64_matchesFramework() {
+        Random random = new Random(0);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            for (int[] flags : FLAGS) {
+                String expected = Base64.encodeToString(data, flags[1]);
+                assertThat(CodecUtil.encodeBase64(data, flags[0])).isEqualTo(expected);
+                assertThat(CodecUtil.base64Length(length, flags[0]))
+                        .isEqualTo(expected.length());
+                StringBuilder builder = new StringBuilder("prefix");
+                CodecUtil.appendBase64(data, 0, length, builder, flags[0]);
+                assertThat(builder.toString()).isEqualTo("prefix" + expected);
+            }
+        }
+    }
+
+    @Test
+    public void decodeBase64_matchesFramework() {
+        Random random = new Random(0);
+        for (int length = 0; length < 300; length++) {
+            byte[] data = new byte[length];
+            random.nextBytes(data);
+            for (int[] flags : FLAGS) {
+                String encoded = "," + Base64.encodeToString(data, flags[1]) + ",";
+                byte[] buffer = new byte[CodecUtil.maxDecodedLength(encoded.length() - 2)];
+                int decoded = CodecUtil.decodeBase64(encoded, 1, encoded.length() - 1,
+                        buffer, 0);
+                assertThat(decoded).isEqualTo(length);
+                assertThat(CodecUtil.decodeBase64(encoded, 1, encoded.length() - 1))
+                        .isEqualTo(data);
+            }
+        }
+    }
+
+    @Test
+    public void decodeBase64_invalidCharacter_throwsException() {
+        try {
+            CodecUtil.decodeBase64("ab*d", 0, 4);
+            fail("expected exception not thrown");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("bad base-64");
+        }
+    }
+
+    @Test
+    public void decodeBase64_danglingCharacter_throwsException() {
+        try {
+            CodecUtil.decodeBase64("abcde", 0, 5);
+            fail("expected exception not thrown");
+        } catch (IllegalArgumentException ex) {
+            assertThat(ex.getMessage()).isEqualTo("bad base-64");
+        }
+    }
+
+    @Test
+    public void toHex_matchesFormat() {
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        StringBuilder expected = new StringBuilder();
+        for (byte b : data) {
+            expected.append(String.format("%02X", b));
+        }
+        assertThat(CodecUtil.toHex(data)).isEqualTo(expected.toString());
+        StringBuilder builder = new StringBuilder();
+        CodecUtil.appendHex(data, builder);
+        assertThat(builder.toString()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    public void encodeBase32_matchesRfc4648Vectors() {
+        String[] inputs = {"", "f", "fo", "foo", "foob", "fooba", "foobar"};
+        String[] expected = {"", "MY", "MZXQ", "MZXW6", "MZXW6YQ", "MZXW6YTB", "MZXW6YTBOI"};
+        for (int i = 0; i < inputs.length; i++) {
+            byte[] data = inputs[i].getBytes();
+            assertThat(CodecUtil.encodeBase32(data, 0, data.length)).isEqualTo(expected[i]);
+        }
+        byte[] data = "xfoobar".getBytes();
+        assertThat(CodecUtil.encodeBase32(data, 1, 5)).isEqualTo("MZXW6YTB");
+    }
+}
@@ -92,6 +92,14 @@ public class MockEndPoint {
         return mServer.takeRequest();
     }
 
+    public int getRequestCount() {
+        return mServer.getRequestCount();
+    }
+
+    public void enqueueJwksSuccess(String keys) {
+        mServer.enqueue(jsonResponse(HTTP_OK, keys));
+    }
+
     public MockResponse enqueueUserInfoSuccess() {
         return enqueueUserInfoSuccess(0);
     }
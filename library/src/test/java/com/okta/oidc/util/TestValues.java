@@ -33,7 +33,9 @@ import com.okta.oidc.net.response.TokenResponse;
 import com.okta.oidc.net.response.web.AuthorizeResponse;
 import com.okta.oidc.net.response.web.LogoutResponse;
 
+import java.math.BigInteger;
 import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
@@ -78,6 +80,7 @@ public class TestValues {
     public static final String END_SESSION_ENDPOINT = "logout";
     public static final String USERINFO_ENDPOINT = "userinfo";
     public static final String JWKS_ENDPOINT = "keys";
+    public static final String SIGNING_KEY_ID = "SIGNING_KEY_ID";
 
     public static final String ERROR = "error";
     public static final String ERROR_DESCRIPTION = "error_description";
@@ -171,6 +174,34 @@ public class TestValues {
                 .compact();
     }
 
+    public static String getAccessToken(KeyPair keyPair, String issuer, String clientId,
+                                        Date expiredDate) {
+        return Jwts.builder()
+                .setHeaderParam("kid", SIGNING_KEY_ID)
+                .claim("cid", clientId)
+                .claim("scp", Arrays.asList(SCOPES))
+                .setAudience("api://default")
+                .setIssuer(issuer)
+                .setSubject("sub")
+                .setExpiration(expiredDate)
+                .setIssuedAt(DateUtil.getNow())
+                .signWith(keyPair.getPrivate(), SignatureAlgorithm.RS256)
+                .compact();
+    }
+
+    public static String getJwks(KeyPair keyPair) {
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        return "{\"keys\":[{\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\"," +
+                "\"kid\":\"" + SIGNING_KEY_ID + "\"," +
+                "\"n\":\"" + toBase64(key.getModulus()) + "\"," +
+                "\"e\":\"" + toBase64(key.getPublicExponent()) + "\"}]}";
+    }
+
+    private static String toBase64(BigInteger value) {
+        byte[] bytes = value.toByteArray();
+        return CodecUtil.encodeBase64(bytes, CodecUtil.URL_SAFE | CodecUtil.NO_PADDING);
+    }
+
     public static AuthorizeRequest getAuthorizeRequest(OIDCConfig config, String verifier)
             throws AuthorizationException {
         return new AuthorizeRequest.Builder().codeVerifier(verifier)